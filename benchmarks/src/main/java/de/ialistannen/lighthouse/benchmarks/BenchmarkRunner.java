@@ -0,0 +1,48 @@
+package de.ialistannen.lighthouse.benchmarks;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks like the JMH main class, but writes the results as JSON to {@code target/jmh-result.json} by
+ * default, so runs of different versions can be compared. All JMH command line options are supported, {@code -rf} and
+ * {@code -rff} override the defaults.
+ */
+public class BenchmarkRunner {
+
+  private static final Path DEFAULT_RESULT = Path.of("target", "jmh-result.json");
+
+  public static void main(String[] args) throws Exception {
+    CommandLineOptions commandLine;
+    try {
+      commandLine = new CommandLineOptions(args);
+    } catch (CommandLineOptionException e) {
+      System.err.println("Error parsing command line: " + e.getMessage());
+      System.exit(1);
+      return;
+    }
+    if (commandLine.shouldHelp() || commandLine.shouldList() || commandLine.shouldListWithParams()
+      || commandLine.shouldListProfilers() || commandLine.shouldListResultFormats()) {
+      // Informational options do not run anything, JMH handles them
+      org.openjdk.jmh.Main.main(args);
+      return;
+    }
+
+    ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLine);
+    if (!commandLine.getResultFormat().hasValue()) {
+      options.resultFormat(ResultFormatType.JSON);
+    }
+    if (!commandLine.getResult().hasValue()) {
+      Files.createDirectories(DEFAULT_RESULT.getParent());
+      options.result(DEFAULT_RESULT.toString());
+    }
+
+    new Runner(options.build()).run();
+  }
+}
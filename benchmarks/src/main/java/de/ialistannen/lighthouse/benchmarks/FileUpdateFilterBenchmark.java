@@ -0,0 +1,125 @@
+package de.ialistannen.lighthouse.benchmarks;
+
+import de.ialistannen.lighthouse.model.ImageIdentifier;
+import de.ialistannen.lighthouse.model.LighthouseContainerUpdate;
+import de.ialistannen.lighthouse.model.LighthouseImageUpdate;
+import de.ialistannen.lighthouse.storage.FileUpdateFilter;
+import de.ialistannen.lighthouse.updates.FilterException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Loading, filtering against and committing to a database of known updates.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-DLOG_LEVEL=WARN")
+@State(Scope.Benchmark)
+public class FileUpdateFilterBenchmark {
+
+  @Param({"100000"})
+  public int knownUpdates;
+
+  private Path directory;
+  private Path snapshot;
+  private List<LighthouseContainerUpdate> cycleUpdates;
+  private FileUpdateFilter loadedFilter;
+  private int commitCounter;
+
+  @Setup(Level.Trial)
+  public void createDatabase() throws IOException, FilterException {
+    directory = Files.createTempDirectory("lighthouse-benchmark");
+    snapshot = directory.resolve("known-images.json");
+
+    FileUpdateFilter filter = newFilter();
+    List<LighthouseContainerUpdate> known = new ArrayList<>(knownUpdates);
+    for (int i = 0; i < knownUpdates; i++) {
+      known.add(update("known-" + i));
+    }
+    filter.filter(known);
+    filter.commit();
+    filter.compact();
+
+    // A typical cycle: mostly already known updates and a few new ones
+    cycleUpdates = new ArrayList<>(known.subList(0, 200));
+    for (int i = 0; i < 10; i++) {
+      cycleUpdates.add(update("new-" + i));
+    }
+  }
+
+  @Setup(Level.Iteration)
+  public void loadFilter() throws FilterException {
+    loadedFilter = newFilter();
+    loadedFilter.filter(List.of());
+  }
+
+  @TearDown(Level.Trial)
+  public void deleteDatabase() throws IOException {
+    try (Stream<Path> files = Files.walk(directory)) {
+      for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+        Files.delete(file);
+      }
+    }
+  }
+
+  private FileUpdateFilter newFilter() {
+    return new FileUpdateFilter(snapshot, Duration.ofDays(30), _ -> true);
+  }
+
+  private static LighthouseContainerUpdate update(String id) {
+    return new LighthouseContainerUpdate(
+      List.of("container-" + id),
+      new LighthouseImageUpdate(
+        "sha256:local-" + id,
+        List.of("example/" + id + ":latest"),
+        "sha256:remote-" + id,
+        new ImageIdentifier("example/base", "latest"),
+        Optional.empty()
+      ),
+      false,
+      Map.of()
+    );
+  }
+
+  @Benchmark
+  public Object load() throws FilterException {
+    // The first filter call loads the snapshot
+    return newFilter().filter(List.of());
+  }
+
+  @Benchmark
+  public Object filter() throws FilterException {
+    return loadedFilter.filter(cycleUpdates);
+  }
+
+  @Benchmark
+  public void filterAndCommit() throws FilterException {
+    // Unique updates, so every commit appends to the journal like a real cycle with new updates does
+    loadedFilter.filter(List.of(update("committed-" + commitCounter++)));
+    loadedFilter.commit();
+  }
+}
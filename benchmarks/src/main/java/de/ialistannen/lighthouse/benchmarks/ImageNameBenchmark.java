@@ -0,0 +1,95 @@
+package de.ialistannen.lighthouse.benchmarks;
+
+import de.ialistannen.lighthouse.model.ImageIdentifier;
+import de.ialistannen.lighthouse.registry.DockerLibraryHelper;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Image name handling, which happens for every container and registry request of a cycle.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-DLOG_LEVEL=WARN")
+@State(Scope.Benchmark)
+public class ImageNameBenchmark {
+
+  private static final String[] IMAGES = {
+    "nginx",
+    "nginx:stable-alpine",
+    "docker.io/nginx:1.27",
+    "index.docker.io/library/postgres:16",
+    "library/redis:7",
+    "grafana/grafana:11.2.0",
+    "docker.io/linuxserver/jellyfin:latest",
+    "ghcr.io/i-al-istannen/lighthouse:latest",
+    "quay.io/prometheus/node-exporter:v1.8.2",
+    "registry.example.com:5000/team/service/api:2024-10-01",
+    "localhost:5000/test",
+    "mcr.microsoft.com/dotnet/aspnet:8.0",
+  };
+
+  private DockerLibraryHelper libraryHelper;
+
+  @Setup
+  public void setup() {
+    libraryHelper = new DockerLibraryHelper(Set.of(
+      "alpine", "busybox", "caddy", "debian", "eclipse-temurin", "golang", "httpd", "mariadb", "memcached", "mongo",
+      "mysql", "nextcloud", "nginx", "node", "postgres", "python", "rabbitmq", "redis", "traefik", "ubuntu"
+    ));
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(12)
+  public void normalizeImageName(Blackhole blackhole) {
+    for (String image : IMAGES) {
+      blackhole.consume(libraryHelper.normalizeImageName(image));
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(12)
+  public void getFriendlyImageName(Blackhole blackhole) {
+    for (String image : IMAGES) {
+      blackhole.consume(libraryHelper.getFriendlyImageName(image));
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(12)
+  public void getScopeForImage(Blackhole blackhole) {
+    for (String image : IMAGES) {
+      blackhole.consume(libraryHelper.getScopeForImage(image));
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(12)
+  public void imageIdentifierFromString(Blackhole blackhole) {
+    for (String image : IMAGES) {
+      blackhole.consume(ImageIdentifier.fromString(image));
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(12)
+  public void friendlyImageIdentifier(Blackhole blackhole) {
+    for (String image : IMAGES) {
+      blackhole.consume(ImageIdentifier.fromString(image).friendly(libraryHelper));
+    }
+  }
+}
@@ -0,0 +1,71 @@
+package de.ialistannen.lighthouse.benchmarks;
+
+import de.ialistannen.lighthouse.updates.ImageUpdateChecker;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Checking whether a container image is built on its base image by comparing layer digests.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-DLOG_LEVEL=WARN")
+@State(Scope.Benchmark)
+public class LayerCheckBenchmark {
+
+  @Param({"10", "100", "1000"})
+  public int baseLayers;
+
+  private List<String> base;
+  private List<String> upToDate;
+  private List<String> outdated;
+
+  @Setup
+  public void setup() {
+    Random random = new Random(42);
+    base = layers(random, baseLayers);
+
+    upToDate = new ArrayList<>(base);
+    upToDate.addAll(layers(random, 10));
+
+    // A rebuilt base image changes its last layers, so the mismatch is found late
+    outdated = new ArrayList<>(base.subList(0, baseLayers - 1));
+    outdated.addAll(layers(random, 11));
+  }
+
+  private static List<String> layers(Random random, int count) {
+    List<String> layers = new ArrayList<>(count);
+    byte[] digest = new byte[32];
+    for (int i = 0; i < count; i++) {
+      random.nextBytes(digest);
+      layers.add("sha256:" + HexFormat.of().formatHex(digest));
+    }
+    return layers;
+  }
+
+  @Benchmark
+  public boolean upToDate() {
+    return ImageUpdateChecker.containsAllLayers(upToDate, base);
+  }
+
+  @Benchmark
+  public boolean outdated() {
+    return ImageUpdateChecker.containsAllLayers(outdated, base);
+  }
+}
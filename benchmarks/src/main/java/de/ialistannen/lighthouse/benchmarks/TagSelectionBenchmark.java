@@ -0,0 +1,56 @@
+package de.ialistannen.lighthouse.benchmarks;
+
+import de.ialistannen.lighthouse.updates.ImageUpdateChecker;
+import de.ialistannen.lighthouse.versioning.VersionParser;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Selecting the newest tag as done by the tag check, with and without the keep and ignore label filters.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-DLOG_LEVEL=WARN")
+@State(Scope.Benchmark)
+public class TagSelectionBenchmark {
+
+  @Param({"semver", "regex:v?(?<major>\\d+)\\.(?<minor>\\d+)\\.(?<patch>\\d+)(?<build>.*)"})
+  public String strategy;
+
+  @Param({"false", "true"})
+  public boolean filtered;
+
+  @Param({"10000"})
+  public int tagCount;
+
+  private VersionParser parser;
+  private List<String> tags;
+  private String keepRegex;
+  private String ignoreRegex;
+
+  @Setup
+  public void setup() {
+    parser = VersionParser.fromString(strategy);
+    tags = Tags.realistic(tagCount);
+    keepRegex = filtered ? ".*-alpine.*" : null;
+    ignoreRegex = filtered ? ".*alpine3\\..*" : null;
+  }
+
+  @Benchmark
+  public Object newestTag() {
+    return ImageUpdateChecker.newestTag(tags, parser, keepRegex, ignoreRegex);
+  }
+}
@@ -0,0 +1,50 @@
+package de.ialistannen.lighthouse.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates tag lists shaped like those of popular images: semantic versions in several variants, plus some tags
+ * that are no versions at all.
+ */
+final class Tags {
+
+  private static final String[] VARIANTS = {"", "-alpine", "-bookworm", "-slim", "-alpine3.20", "-perl"};
+  private static final String[] OTHER_TAGS = {"latest", "stable", "mainline", "edge", "nightly", "sha-"};
+
+  private Tags() {
+    throw new UnsupportedOperationException("No instantiation");
+  }
+
+  /**
+   * @param count how many tags to generate
+   * @return the tags in random (but reproducible) order
+   */
+  static List<String> realistic(int count) {
+    Random random = new Random(42);
+    List<String> tags = new ArrayList<>(count);
+    while (tags.size() < count) {
+      int kind = random.nextInt(20);
+      if (kind == 0) {
+        String other = OTHER_TAGS[random.nextInt(OTHER_TAGS.length)];
+        tags.add(other.equals("sha-") ? other + Long.toHexString(random.nextLong()) : other);
+        continue;
+      }
+      int major = random.nextInt(30);
+      int minor = random.nextInt(40);
+      int patch = random.nextInt(25);
+      String variant = VARIANTS[random.nextInt(VARIANTS.length)];
+      String version = switch (kind % 4) {
+        case 0 -> major + "";
+        case 1 -> major + "." + minor;
+        case 2 -> "v" + major + "." + minor + "." + patch;
+        default -> major + "." + minor + "." + patch;
+      };
+      tags.add(version + variant);
+    }
+    Collections.shuffle(tags, random);
+    return tags;
+  }
+}
@@ -0,0 +1,59 @@
+package de.ialistannen.lighthouse.benchmarks;
+
+import de.ialistannen.lighthouse.versioning.VersionParser;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Parsing every tag of an image with both version parser implementations. Unparseable tags are part of the set, as
+ * rejecting them (by exception) is a large part of the cost in practice.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-DLOG_LEVEL=WARN")
+@State(Scope.Benchmark)
+public class VersionParserBenchmark {
+
+  @Param({
+    "semver",
+    "regex:v?(?<major>\\d+)\\.(?<minor>\\d+)\\.(?<patch>\\d+)(?<build>.*)"
+  })
+  public String strategy;
+
+  @Param({"10000", "50000"})
+  public int tagCount;
+
+  private VersionParser parser;
+  private List<String> tags;
+
+  @Setup
+  public void setup() {
+    parser = VersionParser.fromString(strategy);
+    tags = Tags.realistic(tagCount);
+  }
+
+  @Benchmark
+  public void parseAll(Blackhole blackhole) {
+    for (String tag : tags) {
+      try {
+        blackhole.consume(parser.parse(tag));
+      } catch (IllegalArgumentException e) {
+        blackhole.consume(e);
+      }
+    }
+  }
+}
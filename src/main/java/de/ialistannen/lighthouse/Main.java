@@ -5,39 +5,88 @@ import com.cronutils.model.CronType;
 import com.cronutils.model.definition.CronDefinitionBuilder;
 import com.cronutils.parser.CronParser;
 import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.api.exception.NotFoundException;
+import com.github.dockerjava.api.model.Container;
 import com.github.dockerjava.core.DefaultDockerClientConfig;
 import com.github.dockerjava.core.DockerClientBuilder;
+import com.github.dockerjava.core.DockerClientConfig;
+import com.github.dockerjava.jaxrs.JerseyDockerHttpClient;
 import de.ialistannen.lighthouse.auth.DockerRegistryAuth;
 import de.ialistannen.lighthouse.cli.CliArguments;
 import de.ialistannen.lighthouse.cli.CliArgumentsParser;
+import de.ialistannen.lighthouse.http.ControlRoutes;
+import de.ialistannen.lighthouse.http.EventStream;
+import de.ialistannen.lighthouse.http.HistoryRoutes;
+import de.ialistannen.lighthouse.http.LighthouseHttpServer;
+import de.ialistannen.lighthouse.http.MetricsRoutes;
 import de.ialistannen.lighthouse.metadata.DockerHubMetadataFetcher;
+import de.ialistannen.lighthouse.metrics.Counter;
+import de.ialistannen.lighthouse.metrics.Histogram;
+import de.ialistannen.lighthouse.metrics.InstrumentedDockerHttpClient;
+import de.ialistannen.lighthouse.metrics.MetricsRegistry;
 import de.ialistannen.lighthouse.model.BaseImageUpdateStrategy;
 import de.ialistannen.lighthouse.model.EnrollmentMode;
 import de.ialistannen.lighthouse.model.LighthouseContainerUpdate;
 import de.ialistannen.lighthouse.model.LighthouseTagUpdate;
+import de.ialistannen.lighthouse.notifier.CompositeNotifier;
 import de.ialistannen.lighthouse.notifier.DiscordBotNotifier;
 import de.ialistannen.lighthouse.notifier.DiscordWebhookNotifier;
+import de.ialistannen.lighthouse.notifier.ErrorAggregator;
+import de.ialistannen.lighthouse.notifier.NotificationDispatcher;
 import de.ialistannen.lighthouse.notifier.Notifier;
 import de.ialistannen.lighthouse.notifier.NtfyNotifier;
+import de.ialistannen.lighthouse.notifier.UpdateDetailProvider;
 import de.ialistannen.lighthouse.registry.DockerLibraryHelper;
 import de.ialistannen.lighthouse.registry.DockerRegistry;
 import de.ialistannen.lighthouse.storage.FileUpdateFilter;
+import de.ialistannen.lighthouse.storage.HistoryDetailProvider;
+import de.ialistannen.lighthouse.storage.LatencyPercentiles;
+import de.ialistannen.lighthouse.storage.UpdateCadenceTracker;
+import de.ialistannen.lighthouse.storage.UpdateHistory;
+import de.ialistannen.lighthouse.timing.AdaptiveIntervalProvider;
+import de.ialistannen.lighthouse.timing.CheckScheduler;
+import de.ialistannen.lighthouse.timing.CheckSpreader;
 import de.ialistannen.lighthouse.timing.CronRunner;
+import de.ialistannen.lighthouse.timing.IntervalProvider;
+import de.ialistannen.lighthouse.timing.Schedule;
 import de.ialistannen.lighthouse.updater.DiscordBotUpdateListener;
 import de.ialistannen.lighthouse.updater.DockerUpdater;
+import de.ialistannen.lighthouse.updater.NativeRebuildEngine;
 import de.ialistannen.lighthouse.updater.NtfyUpdateListener;
+import de.ialistannen.lighthouse.updater.PreBuilder;
+import de.ialistannen.lighthouse.updater.PrePuller;
+import de.ialistannen.lighthouse.updater.RebuildEngine;
+import de.ialistannen.lighthouse.updater.RollingUpdatePolicy;
+import de.ialistannen.lighthouse.updater.ScriptRebuildEngine;
+import de.ialistannen.lighthouse.updater.StagedImages;
+import de.ialistannen.lighthouse.updater.UpdateJobQueue;
 import de.ialistannen.lighthouse.updater.UpdateListener;
+import de.ialistannen.lighthouse.updates.ContainerStates;
 import de.ialistannen.lighthouse.updates.ContainerUpdateChecker;
 import de.ialistannen.lighthouse.updates.ImageUpdateChecker;
+import de.ialistannen.lighthouse.updates.UpdateCoalescer;
+import de.ialistannen.lighthouse.util.DurationParser;
 import de.ialistannen.lighthouse.util.LighthouseDetector;
+import de.ialistannen.lighthouse.util.TimeWindow;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.http.HttpClient;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
 import javax.security.auth.login.LoginException;
 import net.dv8tion.jda.api.JDA;
 import net.dv8tion.jda.api.JDABuilder;
@@ -60,18 +109,61 @@ public class Main {
     EnrollmentMode enrollmentMode = arguments.requireLabel() ? EnrollmentMode.OPT_IN : EnrollmentMode.OPT_OUT;
 
     HttpClient httpClient = HttpClient.newBuilder().build();
-
-    DefaultDockerClientConfig.Builder config = DefaultDockerClientConfig.createDefaultConfigBuilder();
-    DockerClient dockerClient = DockerClientBuilder.getInstance(config.build()).build();
+    MetricsRegistry metrics = new MetricsRegistry();
+
+    DockerClientConfig config = DefaultDockerClientConfig.createDefaultConfigBuilder().build();
+    DockerClient dockerClient = DockerClientBuilder.getInstance(config)
+      .withDockerHttpClient(new InstrumentedDockerHttpClient(
+        new JerseyDockerHttpClient.Builder()
+          .dockerHost(config.getDockerHost())
+          .sslConfig(config.getSSLConfig())
+          .build(),
+        metrics
+      ))
+      .build();
 
     verifyLighthouseInstanceCount(dockerClient);
 
     DockerLibraryHelper libraryHelper = new DockerLibraryHelper(httpClient);
-    DockerRegistry dockerRegistry = new DockerRegistry(libraryHelper, httpClient, authsFromArgs(arguments));
+    DockerRegistry dockerRegistry = new DockerRegistry(
+      libraryHelper,
+      httpClient,
+      authsFromArgs(arguments),
+      metrics
+    );
     DockerHubMetadataFetcher metadataFetcher = new DockerHubMetadataFetcher(libraryHelper, httpClient);
 
+    UpdateHistory history = new UpdateHistory(
+      Path.of("data/update-history.jsonl"),
+      arguments.historyRetention().map(DurationParser::parse).orElse(Duration.ofDays(90))
+    );
+    history.load();
+    registerLatencyMetrics(metrics, history);
+
+    StagedImages stagedImages = new StagedImages(dockerClient, Duration.ofDays(7), metrics);
+    Optional<PrePuller> prePuller = buildPrePuller(arguments, dockerClient);
+    Optional<PreBuilder> preBuilder = buildPreBuilder(arguments, dockerClient, stagedImages, prePuller);
+    List<UpdateDetailProvider> detailProviders = new ArrayList<>();
+    detailProviders.add(new HistoryDetailProvider(history));
+    prePuller.ifPresent(detailProviders::add);
+    preBuilder.ifPresent(detailProviders::add);
+
     JDA jda = buildJda(arguments);
-    Notifier notifier = buildNotifier(arguments, httpClient, jda);
+    NotificationDispatcher notifier = new NotificationDispatcher(
+      buildNotifiers(arguments, httpClient, jda, UpdateDetailProvider.combine(detailProviders), metrics),
+      100,
+      metrics
+    );
+    ErrorAggregator errors = new ErrorAggregator(notifier);
+    preBuilder.ifPresent(it -> it.start(notifier));
+
+    CheckSpreader checkSpreader = new CheckSpreader(
+      arguments.spreadChecks().map(DurationParser::parse).orElse(Duration.ZERO),
+      arguments.hostname().orElseGet(() -> Objects.requireNonNullElse(System.getenv("HOSTNAME"), ""))
+    );
+
+    UpdateCadenceTracker cadenceTracker = new UpdateCadenceTracker(Path.of("data/update-cadence.json"));
+    cadenceTracker.load();
 
     ImageUpdateChecker imageUpdateChecker = new ImageUpdateChecker(
       dockerClient,
@@ -80,7 +172,10 @@ public class Main {
       enrollmentMode,
       libraryHelper,
       arguments.baseImageUpdate().orElse(BaseImageUpdateStrategy.ONLY_PULL_UNKNOWN),
-      notifier
+      errors,
+      checkSpreader,
+      cadenceTracker,
+      metrics
     );
     ContainerUpdateChecker containerUpdateChecker = new ContainerUpdateChecker(
       dockerClient,
@@ -88,34 +183,171 @@ public class Main {
       enrollmentMode
     );
 
-    UpdateListener updateListener = buildUpdateListener(arguments, httpClient, notifier, dockerClient, jda);
+    Optional<UpdateJobQueue> jobQueue = buildJobQueue(
+      arguments,
+      dockerClient,
+      history,
+      stagedImages,
+      notifier,
+      metrics
+    );
+    UpdateListener updateListener = buildUpdateListener(arguments, httpClient, notifier, jda, jobQueue);
 
-    FileUpdateFilter updateFilter = new FileUpdateFilter(Path.of("data/known-images.json"));
+    FileUpdateFilter updateFilter = new FileUpdateFilter(
+      Path.of("data/known-images.json"),
+      arguments.knownUpdateTtl().map(DurationParser::parse).orElse(Duration.ofDays(30)),
+      image -> imageExists(dockerClient, image)
+    );
+    updateFilter.startCompaction();
+
+    CheckScheduler checkScheduler = new CheckScheduler(
+      Schedule.ofCron(cronTime),
+      buildIntervalProvider(arguments, cadenceTracker, imageUpdateChecker)
+    );
+
+    UpdateCoalescer updateCoalescer = new UpdateCoalescer(
+      arguments.coalesceWindow().map(DurationParser::parse).orElse(Duration.ZERO)
+    );
+
+    Histogram phases = metrics.histogram(
+      "lighthouse_check_phase_seconds",
+      "Time spent in the phases of a check cycle",
+      "phase"
+    );
+    Counter checkedContainers = metrics.counter("lighthouse_containers_checked_total", "Containers that were checked");
+    Counter outdatedContainers = metrics.counter(
+      "lighthouse_updates_found_total",
+      "Container updates found by checks, before filtering already notified ones"
+    );
+
+    ContainerStates containerStates = new ContainerStates(history);
+    EventStream events = new EventStream();
+
+    CronRunner runner = new CronRunner(
+      checkScheduler.withWakeups(updateCoalescer::nextFlush),
+      errors,
+      metrics,
+      forced -> {
+        Instant cycleStart = Instant.now();
+        events.publish("cycle-started", Map.of("forced", forced));
+        List<Container> containers;
+        try (var _ = phases.labels("list").startTimer()) {
+          containers = dockerClient.listContainersCmd().withShowAll(true).exec();
+        }
+        Set<String> dueContainers = checkScheduler.takeDue(containers, cycleStart, forced);
+        if (dueContainers.isEmpty() && !updateCoalescer.hasDueFlush(cycleStart)) {
+          LOGGER.info("No containers are due for a check");
+          return;
+        }
+        Predicate<Container> isDue = container -> dueContainers.contains(container.getId());
+        Set<String> dueNames = containers.stream()
+          .filter(isDue)
+          .flatMap(it -> Arrays.stream(it.getNames()))
+          .map(it -> it.substring(1))
+          .collect(Collectors.toSet());
+        // Explicitly requested checks should finish quickly, so they are not spread out
+        if (checkSpreader.isEnabled() && !forced) {
+          checkSpreader.startCycle(
+            cycleStart,
+            imageUpdateChecker.plannedRegistryLookups(isDue, arguments.checkTagUpdates())
+          );
+        }
 
-    new CronRunner(
-      cronTime,
-      notifier,
-      () -> {
         LOGGER.info("Checking for updates...");
-        List<LighthouseContainerUpdate> updates = containerUpdateChecker.check();
-        List<LighthouseTagUpdate> tagUpdates = arguments.checkTagUpdates()
-          ? imageUpdateChecker.checkTags()
-          : List.of();
+        events.publish("cycle-checking", Map.of("containers", dueNames));
+        List<LighthouseContainerUpdate> updates = containerUpdateChecker.check(isDue);
+        checkedContainers.add(dueContainers.size());
+        outdatedContainers.add(updates.size());
+        containerStates.record(cycleStart, dueNames, updates);
+        history.recordCycle(cycleStart, Instant.now(), updates);
+        cadenceTracker.save();
+        List<LighthouseTagUpdate> tagUpdates = List.of();
+        if (arguments.checkTagUpdates()) {
+          try (var _ = phases.labels("tag check").startTimer()) {
+            tagUpdates = imageUpdateChecker.checkTags(isDue);
+          }
+        }
 
         if (!arguments.alwaysNotify()) {
           updates = updateFilter.filter(updates);
           tagUpdates = updateFilter.filterTags(tagUpdates);
         }
+        List<LighthouseContainerUpdate> readyUpdates = updateCoalescer.coalesce(
+          updates,
+          dueNames::contains,
+          cycleStart
+        );
+        if (!arguments.alwaysNotify()) {
+          // Filter again, so only what is sent now is marked as notified when committing: Held back updates must not be
+          // marked, and flushed ones from earlier cycles must be
+          readyUpdates = updateFilter.filter(readyUpdates);
+        }
+        updates = readyUpdates;
 
-        notifier.notify(updates);
-        updateListener.onUpdatesFound(updates);
-
-        notifier.notifyTags(tagUpdates);
-
-        // AFTER notify was successful!
+        // Queue before notifying, so the notification already knows the pull state
+        if (prePuller.isPresent()) {
+          prePuller.get().schedule(updates);
+        }
+        if (preBuilder.isPresent()) {
+          preBuilder.get().schedule(updates);
+        }
+        events.publish("cycle-notifying", Map.of("updates", updates.size(), "tagUpdates", tagUpdates.size()));
+        try (var _ = phases.labels("notify").startTimer()) {
+          // Listeners act on the last notification, so cycles without one (e.g. everything known or held back) must
+          // not replace it
+          if (!updates.isEmpty()) {
+            notifier.notify(updates);
+            updateListener.onUpdatesFound(updates);
+          }
+
+          notifier.notifyTags(tagUpdates);
+
+          // AFTER notify was successful! Senders give up after two minutes per notification, so this also covers the
+          // update and tag notifications queued behind a slow error notification.
+          notifier.awaitDelivery(Duration.ofMinutes(10));
+        }
         updateFilter.commit();
       }
-    ).runUntilSingularity();
+    );
+    runner.onCycleFinished(run -> events.publish("cycle-finished", run));
+
+    if (arguments.httpPort().isPresent()) {
+      LighthouseHttpServer httpServer = new LighthouseHttpServer(arguments.httpPort().get(), arguments.httpToken());
+      new HistoryRoutes(history).register(httpServer);
+      new MetricsRoutes(metrics).register(httpServer);
+      new ControlRoutes(runner, containerStates, jobQueue, events).register(httpServer);
+      httpServer.start();
+    }
+
+    runner.runUntilSingularity();
+  }
+
+  private static void registerLatencyMetrics(MetricsRegistry metrics, UpdateHistory history) {
+    metrics.gauge(
+      "lighthouse_detection_latency_seconds",
+      "Time from upstream pushing an update until it was detected, over the last 30 days",
+      List.of("quantile"),
+      () -> latencyQuantiles(history.detectionLatency(Instant.now().minus(Duration.ofDays(30))))
+    );
+    metrics.gauge(
+      "lighthouse_apply_latency_seconds",
+      "Time from detecting an update until it was applied, over the last 30 days",
+      List.of("quantile"),
+      () -> latencyQuantiles(history.applyLatency(Instant.now().minus(Duration.ofDays(30))))
+    );
+  }
+
+  private static Map<List<String>, Long> latencyQuantiles(Optional<LatencyPercentiles> percentiles) {
+    if (percentiles.isEmpty()) {
+      return Map.of();
+    }
+    LatencyPercentiles it = percentiles.get();
+    Map<List<String>, Long> result = new LinkedHashMap<>();
+    result.put(List.of("0.5"), it.p50().toSeconds());
+    result.put(List.of("0.9"), it.p90().toSeconds());
+    result.put(List.of("0.99"), it.p99().toSeconds());
+    result.put(List.of("1"), it.max().toSeconds());
+    return result;
   }
 
   private static void verifyLighthouseInstanceCount(DockerClient dockerClient) {
@@ -139,6 +371,32 @@ public class Main {
     }
   }
 
+  private static IntervalProvider buildIntervalProvider(
+    CliArguments arguments,
+    UpdateCadenceTracker cadenceTracker,
+    ImageUpdateChecker imageUpdateChecker
+  ) {
+    if (arguments.adaptiveCheckMax().isEmpty()) {
+      return IntervalProvider.none();
+    }
+    Duration min = arguments.adaptiveCheckMin().map(DurationParser::parse).orElse(Duration.ofHours(1));
+    Duration max = DurationParser.parse(arguments.adaptiveCheckMax().get());
+    if (min.compareTo(max) > 0) {
+      throw die("The adaptive check minimum must not be greater than the maximum");
+    }
+
+    return new AdaptiveIntervalProvider(cadenceTracker, imageUpdateChecker, min, max);
+  }
+
+  private static boolean imageExists(DockerClient dockerClient, String image) {
+    try {
+      dockerClient.inspectImageCmd(image).exec();
+      return true;
+    } catch (NotFoundException e) {
+      return false;
+    }
+  }
+
   private static JDA buildJda(CliArguments arguments) {
     if (arguments.useWebhookNotifier()) {
       return null;
@@ -151,17 +409,101 @@ public class Main {
     }
   }
 
+  private static Optional<PrePuller> buildPrePuller(CliArguments arguments, DockerClient dockerClient) {
+    if (!arguments.prePull()) {
+      return Optional.empty();
+    }
+    return Optional.of(newPrePuller(arguments, dockerClient));
+  }
+
+  private static PrePuller newPrePuller(CliArguments arguments, DockerClient dockerClient) {
+    if (arguments.prePullConcurrency().orElse(2) < 1) {
+      throw die("Pre-pull concurrency must be at least 1");
+    }
+    return new PrePuller(
+      dockerClient,
+      arguments.prePullWindow().map(TimeWindow::parse),
+      arguments.prePullConcurrency().orElse(2)
+    );
+  }
+
+  private static Optional<PreBuilder> buildPreBuilder(
+    CliArguments arguments,
+    DockerClient dockerClient,
+    StagedImages stagedImages,
+    Optional<PrePuller> prePuller
+  ) {
+    if (!arguments.preBuild()) {
+      return Optional.empty();
+    }
+    if (!arguments.nativeRebuild()) {
+      throw die("Pre-building images requires --native-rebuild");
+    }
+    PreBuilder preBuilder = new PreBuilder(
+      new NativeRebuildEngine(dockerClient, stagedImages),
+      stagedImages,
+      // Builds pull their base images within the pre-pull limits, even if nothing is pre-pulled on its own
+      prePuller.orElseGet(() -> newPrePuller(arguments, dockerClient))
+    );
+    return Optional.of(preBuilder);
+  }
+
+  private static Notifier buildNotifiers(
+    CliArguments arguments,
+    HttpClient httpClient,
+    JDA jda,
+    UpdateDetailProvider detailProvider,
+    MetricsRegistry metrics
+  ) throws URISyntaxException {
+    Notifier primary = buildNotifier(arguments, httpClient, jda, detailProvider);
+    if (arguments.extraDiscordWebhooks().isEmpty() && arguments.extraNtfyUrls().isEmpty()) {
+      return primary;
+    }
+
+    Duration timeout = arguments.notifierTimeout().map(DurationParser::parse).orElse(Duration.ofMinutes(1));
+    String primaryName = arguments.useWebhookNotifier()
+      ? (arguments.ntfy() ? "ntfy" : "discord-webhook")
+      : "discord-bot";
+
+    CompositeNotifier notifier = new CompositeNotifier(metrics).addBackend(primaryName, primary, timeout);
+    for (int i = 0; i < arguments.extraDiscordWebhooks().size(); i++) {
+      notifier.addBackend(
+        "extra-discord-webhook-" + (i + 1),
+        new DiscordWebhookNotifier(
+          httpClient,
+          new URI(arguments.extraDiscordWebhooks().get(i)),
+          arguments.mention(),
+          arguments.mentionText(),
+          arguments.hostname(),
+          detailProvider
+        ),
+        timeout
+      );
+    }
+    for (int i = 0; i < arguments.extraNtfyUrls().size(); i++) {
+      notifier.addBackend(
+        "extra-ntfy-" + (i + 1),
+        new NtfyNotifier(httpClient, new URI(arguments.extraNtfyUrls().get(i)), arguments.hostname(), detailProvider),
+        timeout
+      );
+    }
+
+    return notifier;
+  }
+
   private static Notifier buildNotifier(
     CliArguments arguments,
     HttpClient httpClient,
-    JDA jda
+    JDA jda,
+    UpdateDetailProvider detailProvider
   ) throws URISyntaxException {
     if (arguments.useWebhookNotifier()) {
       if (arguments.ntfy()) {
         return new NtfyNotifier(
           httpClient,
           new URI(arguments.webhookUrlOrToken()),
-          arguments.hostname()
+          arguments.hostname(),
+          detailProvider
         );
       }
       return new DiscordWebhookNotifier(
@@ -169,7 +511,8 @@ public class Main {
         new URI(arguments.webhookUrlOrToken()),
         arguments.mention(),
         arguments.mentionText(),
-        arguments.hostname()
+        arguments.hostname(),
+        detailProvider
       );
     }
 
@@ -192,7 +535,8 @@ public class Main {
         channel,
         arguments.mention(),
         arguments.mentionText(),
-        arguments.hostname()
+        arguments.hostname(),
+        detailProvider
       );
     } catch (LoginException e) {
       LOGGER.error("Failed to login", e);
@@ -201,13 +545,17 @@ public class Main {
   }
 
   private static UpdateListener buildUpdateListener(
-    CliArguments arguments, HttpClient httpClient, Notifier notifier, DockerClient client, JDA jda
+    CliArguments arguments,
+    HttpClient httpClient,
+    Notifier notifier,
+    JDA jda,
+    Optional<UpdateJobQueue> jobQueue
   ) throws URISyntaxException {
     if (arguments.useWebhookNotifier()) {
       if (arguments.ntfy()) {
         NtfyUpdateListener listener = new NtfyUpdateListener(
           httpClient,
-          buildUpdater(arguments, client),
+          jobQueue.orElseThrow(),
           notifier,
           new URI(arguments.webhookUrlOrToken()),
           arguments.hostname()
@@ -218,23 +566,83 @@ public class Main {
       return ignored -> {
       };
     }
-    DiscordBotUpdateListener listener = new DiscordBotUpdateListener(
-      buildUpdater(arguments, client),
-      notifier
-    );
+    DiscordBotUpdateListener listener = new DiscordBotUpdateListener(jobQueue.orElseThrow(), notifier);
     jda.addEventListener(listener);
     return listener;
   }
 
-  private static DockerUpdater buildUpdater(CliArguments arguments, DockerClient client) {
-    if (arguments.updaterEntrypoint().isEmpty()) {
+  /**
+   * Builds the queue applying updates, if updating is possible with the configured notifier. Only the discord bot and
+   * ntfy can receive update requests, plain discord webhooks can not.
+   */
+  private static Optional<UpdateJobQueue> buildJobQueue(
+    CliArguments arguments,
+    DockerClient client,
+    UpdateHistory history,
+    StagedImages stagedImages,
+    Notifier notifier,
+    MetricsRegistry metrics
+  ) throws IOException {
+    if (arguments.useWebhookNotifier() && !arguments.ntfy()) {
+      return Optional.empty();
+    }
+    UpdateJobQueue jobQueue = new UpdateJobQueue(
+      buildUpdater(arguments, client, history, stagedImages, metrics),
+      history,
+      notifier,
+      Path.of("data/update-jobs.json")
+    );
+    jobQueue.resume();
+    return Optional.of(jobQueue);
+  }
+
+  private static DockerUpdater buildUpdater(
+    CliArguments arguments,
+    DockerClient client,
+    UpdateHistory history,
+    StagedImages stagedImages,
+    MetricsRegistry metrics
+  ) {
+    if (arguments.updaterEntrypoint().isEmpty() && !arguments.nativeRebuild()) {
       throw die("Entrypoint must be given when using the updater");
     }
+    if (arguments.updaterConcurrency().orElse(4) < 1) {
+      throw die("Updater concurrency must be at least 1");
+    }
 
-    String entrypoint = arguments.updaterEntrypoint().get();
     String updaterImage = arguments.updaterDockerImage().orElse("docker");
+    Optional<RebuildEngine> scriptEngine = arguments.updaterEntrypoint().map(entrypoint -> new ScriptRebuildEngine(
+      client,
+      arguments.updaterMounts(),
+      entrypoint,
+      updaterImage
+    ));
+    RebuildEngine engine = arguments.nativeRebuild()
+      ? new NativeRebuildEngine(client, stagedImages)
+      : scriptEngine.orElseThrow();
+
+    return new DockerUpdater(
+      client,
+      engine,
+      scriptEngine,
+      history,
+      arguments.updaterConcurrency().orElse(4),
+      buildRollingUpdatePolicy(arguments),
+      metrics
+    );
+  }
 
-    return new DockerUpdater(client, arguments.updaterMounts(), entrypoint, updaterImage);
+  private static Optional<RollingUpdatePolicy> buildRollingUpdatePolicy(CliArguments arguments) {
+    if (arguments.rollingUpdateBatchSize().isEmpty()) {
+      return Optional.empty();
+    }
+    if (arguments.rollingUpdateBatchSize().get() < 1) {
+      throw die("Rolling update batch size must be at least 1");
+    }
+    return Optional.of(new RollingUpdatePolicy(
+      arguments.rollingUpdateBatchSize().get(),
+      arguments.rollingUpdateHealthTimeout().map(DurationParser::parse).orElse(Duration.ofMinutes(2))
+    ));
   }
 
   private static RuntimeException die(String msg) {
@@ -13,11 +13,35 @@ public interface CliArguments {
 
   @Option(
     names = "--check-times",
-    description = "Check times in cron syntax (https://crontab.guru). Default: '23 08 * * *'",
+    description = "Check times in cron syntax (https://crontab.guru), unless overwritten by a container's "
+      + "'lighthouse.check-interval' label. Default: '23 08 * * *'",
     paramLabel = "CRONTAB"
   )
   Optional<String> checkTimes();
 
+  @Option(
+    names = "--spread-checks",
+    description = "Spread the registry lookups of a check over this time window instead of sending them all at once. "
+      + "Notifications are sent at the end of the window. Default: '0' (disabled)",
+    paramLabel = "DURATION"
+  )
+  Optional<String> spreadChecks();
+
+  @Option(
+    names = "--adaptive-check-max",
+    description = "Enables adaptive check intervals: Containers without a 'lighthouse.check-interval' label are "
+      + "checked more often if their base image changes often and less often if it is stable, but at least this often",
+    paramLabel = "DURATION"
+  )
+  Optional<String> adaptiveCheckMax();
+
+  @Option(
+    names = "--adaptive-check-min",
+    description = "The shortest interval adaptive checks may use. Default: '1h'",
+    paramLabel = "DURATION"
+  )
+  Optional<String> adaptiveCheckMin();
+
   @Option(names = "--mention", description = "Discord mention (e.g. '<@userid>')", paramLabel = "MENTION")
   Optional<String> mention();
 
@@ -50,6 +74,43 @@ public interface CliArguments {
   @Option(names = "--notify-again", description = "Notify you more than once about an image update. Default: false")
   boolean alwaysNotify();
 
+  @Option(
+    names = "--coalesce-window",
+    description = "Hold back new updates of an image for this long, so several builds in quick succession result in "
+      + "a single notification. Can be overwritten by a container's 'lighthouse.coalesce-window' label. Default: '0'",
+    paramLabel = "DURATION"
+  )
+  Optional<String> coalesceWindow();
+
+  @Option(
+    names = "--known-update-ttl",
+    description = "How long to remember notified updates whose local image no longer exists. Default: '30d'",
+    paramLabel = "DURATION"
+  )
+  Optional<String> knownUpdateTtl();
+
+  @Option(
+    names = "--history-retention",
+    description = "How long to keep the update history. Default: '90d'",
+    paramLabel = "DURATION"
+  )
+  Optional<String> historyRetention();
+
+  @Option(
+    names = "--http-port",
+    description = "Serve the HTTP API (e.g. update history) on this port. Disabled by default",
+    paramLabel = "PORT"
+  )
+  Optional<Integer> httpPort();
+
+  @Option(
+    names = "--http-token",
+    description = "Require this token as 'Authorization: Bearer <token>' for all HTTP requests. Without it, "
+      + "requests that change state (POST) are rejected. Default: no token",
+    paramLabel = "TOKEN"
+  )
+  Optional<String> httpToken();
+
   @Option(
     names = "--bot-updater-docker-image",
     description = "The name of the image to use for updating containers. Default: 'library/docker'",
@@ -63,12 +124,90 @@ public interface CliArguments {
   @Option(names = "--bot-updater-entrypoint", description = "The binary to call in the updater container")
   Optional<String> updaterEntrypoint();
 
+  @Option(
+    names = "--pre-pull",
+    description = "Pull new base images in the background after notifying, so updating only needs to rebuild. "
+      + "Default: false"
+  )
+  boolean prePull();
+
+  @Option(
+    names = "--pre-pull-window",
+    description = "Only start pre-pulls within this daily time window, e.g. '01:00-06:00'. Default: any time",
+    paramLabel = "HH:MM-HH:MM"
+  )
+  Optional<String> prePullWindow();
+
+  @Option(
+    names = "--pre-pull-concurrency",
+    description = "How many base images to pre-pull at the same time. Default: 2",
+    paramLabel = "COUNT"
+  )
+  Optional<Integer> prePullConcurrency();
+
+  @Option(
+    names = "--native-rebuild",
+    description = "Rebuild and recreate containers directly through docker, using their compose labels, instead of "
+      + "running the updater entrypoint. The entrypoint is then only used to update lighthouse itself. Default: false"
+  )
+  boolean nativeRebuild();
+
+  @Option(
+    names = "--pre-build",
+    description = "Build the new images of updated containers in the background at low priority, so updating only "
+      + "needs to swap the container. Requires --native-rebuild. Default: false"
+  )
+  boolean preBuild();
+
+  @Option(
+    names = "--bot-updater-concurrency",
+    description = "How many compose projects to rebuild at the same time. Default: 4",
+    paramLabel = "COUNT"
+  )
+  Optional<Integer> updaterConcurrency();
+
+  @Option(
+    names = "--rolling-update-batch-size",
+    description = "Replace the containers of a compose project this many at a time, waiting for each batch to become "
+      + "healthy. Stops at the first failure. Default: all at once",
+    paramLabel = "COUNT"
+  )
+  Optional<Integer> rollingUpdateBatchSize();
+
+  @Option(
+    names = "--rolling-update-health-timeout",
+    description = "How long to wait for a batch to become healthy during a rolling update. Default: '2m'",
+    paramLabel = "DURATION"
+  )
+  Optional<String> rollingUpdateHealthTimeout();
+
   @Option(names = "--bot-channel-id", description = "The channel id the bot should send updates to")
   Optional<String> botChannelId();
 
   @Option(names = "--ntfy", description = "Use ntfy to send notifications and receive update requests. Default: false")
   boolean ntfy();
 
+  @Option(
+    names = "--extra-discord-webhook",
+    description = "Additionally send notifications to this discord webhook. Can be given multiple times",
+    paramLabel = "URL"
+  )
+  List<String> extraDiscordWebhooks();
+
+  @Option(
+    names = "--extra-ntfy",
+    description = "Additionally send notifications to this ntfy topic URL. Can be given multiple times",
+    paramLabel = "URL"
+  )
+  List<String> extraNtfyUrls();
+
+  @Option(
+    names = "--notifier-timeout",
+    description = "How long to wait for each notifier when sending to several of them. Default: '1m'",
+    paramLabel = "DURATION"
+  )
+  Optional<String> notifierTimeout();
+
   @Option(
     names = "--check-tag-updates",
     description = "Enable checking for tag/version updates. Requires 'lighthouse.tag-updates' label on containers. Default: false"
@@ -0,0 +1,162 @@
+package de.ialistannen.lighthouse.http;
+
+import de.ialistannen.lighthouse.model.LighthouseContainerUpdate;
+import de.ialistannen.lighthouse.timing.CronRunner;
+import de.ialistannen.lighthouse.timing.CronRunner.RunInfo;
+import de.ialistannen.lighthouse.updater.UpdateJobQueue;
+import de.ialistannen.lighthouse.updater.UpdateJobQueue.Job;
+import de.ialistannen.lighthouse.updates.ContainerStates;
+import de.ialistannen.lighthouse.updates.ContainerStates.ContainerState;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Exposes the state of Lighthouse and allows triggering checks and updates over HTTP. Everything is served from
+ * memory, so polling these routes never causes a check.
+ */
+public class ControlRoutes {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ControlRoutes.class);
+
+  private final CronRunner runner;
+  private final ContainerStates containerStates;
+  private final Optional<UpdateJobQueue> jobQueue;
+  private final EventStream events;
+
+  /**
+   * @param runner the runner of the check cycle
+   * @param containerStates the results of the last checks
+   * @param jobQueue the queue to enqueue updates in, empty if no updater is configured
+   * @param events the stream to publish update progress to
+   */
+  public ControlRoutes(
+    CronRunner runner,
+    ContainerStates containerStates,
+    Optional<UpdateJobQueue> jobQueue,
+    EventStream events
+  ) {
+    this.runner = runner;
+    this.containerStates = containerStates;
+    this.jobQueue = jobQueue;
+    this.events = events;
+  }
+
+  /**
+   * Registers the routes:
+   * <ul>
+   *   <li>{@code GET /status}: the last and next cycle and the running update jobs</li>
+   *   <li>{@code GET /containers}: the result of the last check of every container</li>
+   *   <li>{@code POST /check}: requests a check, merged with one that is already pending</li>
+   *   <li>{@code POST /update?containers=a,b}: updates the given outdated containers, or all if none are given</li>
+   *   <li>{@code GET /events}: server-sent events about cycles and update progress</li>
+   * </ul>
+   *
+   * @param server the server to register them on
+   */
+  public void register(LighthouseHttpServer server) {
+    server.getJson("/status", _ -> status());
+    server.getJson("/containers", _ -> containerStates.states().stream().map(ContainerView::of).toList());
+    server.postJson("/check", _ -> {
+      runner.triggerNow();
+      return Map.of("status", "queued");
+    });
+    server.postJson("/update", this::update);
+    events.register(server, "/events");
+  }
+
+  private StatusView status() {
+    List<ContainerState> states = containerStates.states();
+    return new StatusView(
+      runner.lastRun().orElse(null),
+      runner.nextRun().orElse(null),
+      states.size(),
+      (int) states.stream().filter(it -> it.update().isPresent()).count(),
+      jobQueue.map(UpdateJobQueue::jobs).orElse(List.of()).stream().map(JobView::of).toList()
+    );
+  }
+
+  private Map<String, Object> update(Map<String, String> parameters) {
+    UpdateJobQueue queue = jobQueue.orElseThrow(() -> new IllegalStateException("No updater is configured"));
+
+    List<LighthouseContainerUpdate> updates;
+    String containers = parameters.getOrDefault("containers", "");
+    if (containers.isBlank()) {
+      updates = containerStates.outdated();
+    } else {
+      Set<String> names = Arrays.stream(containers.split(","))
+        .map(String::strip)
+        .collect(Collectors.toSet());
+      updates = new ArrayList<>();
+      for (String name : names) {
+        LighthouseContainerUpdate update = containerStates.update(name)
+          .orElseThrow(() -> new IllegalArgumentException("Container '" + name + "' is not known to be outdated"));
+        if (!updates.contains(update)) {
+          updates.add(update);
+        }
+      }
+    }
+    if (updates.isEmpty()) {
+      throw new IllegalStateException("No container is outdated");
+    }
+
+    List<String> names = updates.stream().flatMap(it -> it.names().stream()).toList();
+    LOGGER.info("Update of {} requested over HTTP", names);
+    queue.submit(
+        updates,
+        line -> events.publish("update-status", Map.of("containers", names, "message", line)),
+        line -> events.publish("update-progress", Map.of("containers", names, "line", line))
+      )
+      .thenRun(() -> events.publish("update-finished", Map.of("containers", names)))
+      .exceptionally(throwable -> {
+        LOGGER.warn("Update requested over HTTP failed", throwable);
+        events.publish("update-failed", Map.of("containers", names, "error", String.valueOf(throwable.getMessage())));
+        return null;
+      });
+
+    return Map.of("status", "queued", "containers", names);
+  }
+
+  private record StatusView(
+    RunInfo lastRun,
+    Instant nextRun,
+    int knownContainers,
+    int outdatedContainers,
+    List<JobView> jobs
+  ) {
+
+  }
+
+  private record JobView(String id, List<String> containers, Instant queuedAt) {
+
+    static JobView of(Job job) {
+      return new JobView(job.id(), job.containerNames(), job.queuedAt());
+    }
+  }
+
+  private record ContainerView(
+    String name,
+    Instant lastChecked,
+    boolean outdated,
+    String baseImage,
+    String remoteDigest
+  ) {
+
+    static ContainerView of(ContainerState state) {
+      return new ContainerView(
+        state.name(),
+        state.lastChecked(),
+        state.update().isPresent(),
+        state.update().map(it -> it.imageUpdate().imageIdentifier().nameWithTag()).orElse(null),
+        state.update().map(it -> it.imageUpdate().remoteManifestDigest()).orElse(null)
+      );
+    }
+  }
+}
@@ -0,0 +1,114 @@
+package de.ialistannen.lighthouse.http;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.sun.net.httpserver.HttpExchange;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Broadcasts events to all connected clients as server-sent events.
+ * <p>
+ * Events are written on a separate thread, so a slow client never holds up the check cycle publishing them. Clients
+ * receive a comment every {@link #KEEPALIVE_INTERVAL}, which also detects and drops disconnected clients.
+ */
+public class EventStream {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(EventStream.class);
+  private static final Duration KEEPALIVE_INTERVAL = Duration.ofSeconds(30);
+
+  private final ObjectMapper objectMapper;
+  private final List<HttpExchange> clients;
+  private final ScheduledExecutorService writer;
+
+  public EventStream() {
+    this.objectMapper = new ObjectMapper()
+      .registerModule(new JavaTimeModule())
+      .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+    this.clients = new CopyOnWriteArrayList<>();
+    this.writer = Executors.newSingleThreadScheduledExecutor(
+      Thread.ofPlatform().daemon().name("event-stream").factory()
+    );
+    this.writer.scheduleWithFixedDelay(
+      () -> broadcast(": keepalive\n\n"),
+      KEEPALIVE_INTERVAL.toSeconds(),
+      KEEPALIVE_INTERVAL.toSeconds(),
+      TimeUnit.SECONDS
+    );
+  }
+
+  /**
+   * Registers the stream on a path.
+   *
+   * @param server the server
+   * @param path the exact path
+   */
+  public void register(LighthouseHttpServer server, String path) {
+    server.route(path, exchange -> {
+      if (!exchange.getRequestURI().getPath().equals(path)) {
+        try (exchange) {
+          LighthouseHttpServer.sendText(exchange, 404, "Not found");
+        }
+        return;
+      }
+      if (!exchange.getRequestMethod().equals("GET")) {
+        try (exchange) {
+          LighthouseHttpServer.sendText(exchange, 405, "Method not allowed");
+        }
+        return;
+      }
+      exchange.getResponseHeaders().set("Content-Type", "text/event-stream; charset=utf-8");
+      exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+      // Length 0 means chunked, the response stays open until the client goes away
+      exchange.sendResponseHeaders(200, 0);
+      clients.add(exchange);
+      LOGGER.debug("Event stream client {} connected", exchange.getRemoteAddress());
+    });
+  }
+
+  /**
+   * Sends an event to all connected clients.
+   *
+   * @param event the event name
+   * @param data the data, serialized as JSON
+   */
+  public void publish(String event, Object data) {
+    if (clients.isEmpty()) {
+      return;
+    }
+    String json;
+    try {
+      json = objectMapper.writeValueAsString(data);
+    } catch (JsonProcessingException e) {
+      LOGGER.warn("Failed to serialize {} event", event, e);
+      return;
+    }
+    writer.execute(() -> broadcast("event: " + event + "\ndata: " + json + "\n\n"));
+  }
+
+  private void broadcast(String message) {
+    byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+    for (HttpExchange client : clients) {
+      try {
+        OutputStream body = client.getResponseBody();
+        body.write(bytes);
+        body.flush();
+      } catch (IOException e) {
+        LOGGER.debug("Event stream client {} disconnected", client.getRemoteAddress());
+        clients.remove(client);
+        client.close();
+      }
+    }
+  }
+}
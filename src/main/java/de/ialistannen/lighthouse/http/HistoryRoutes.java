@@ -0,0 +1,73 @@
+package de.ialistannen.lighthouse.http;
+
+import de.ialistannen.lighthouse.storage.LatencyPercentiles;
+import de.ialistannen.lighthouse.storage.UpdateHistory;
+import de.ialistannen.lighthouse.storage.UpdateHistory.HistoryEntry;
+import de.ialistannen.lighthouse.util.DurationParser;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Exposes the {@link UpdateHistory} over HTTP.
+ */
+public class HistoryRoutes {
+
+  private static final Duration DEFAULT_LOOKBACK = Duration.ofDays(7);
+
+  private final UpdateHistory history;
+
+  public HistoryRoutes(UpdateHistory history) {
+    this.history = history;
+  }
+
+  /**
+   * Registers the history routes:
+   * <ul>
+   *   <li>{@code /history?image=nginx:stable&since=7d}: detected updates, optionally for a single base image</li>
+   *   <li>{@code /history/churn?since=30d}: distinct remote digests per base image</li>
+   *   <li>{@code /history/cycles?since=1d}: finished check cycles</li>
+   *   <li>{@code /history/latency?since=30d}: percentiles of the detection and apply delay</li>
+   * </ul>
+   *
+   * @param server the server to register them on
+   */
+  public void register(LighthouseHttpServer server) {
+    server.getJson("/history", this::entries);
+    server.getJson("/history/churn", parameters -> history.churnByBaseImage(since(parameters)));
+    server.getJson("/history/cycles", parameters -> history.cycles(since(parameters), Instant.now()));
+    server.getJson("/history/latency", parameters -> new LatencyView(
+      history.detectionLatency(since(parameters)).orElse(null),
+      history.applyLatency(since(parameters)).orElse(null)
+    ));
+  }
+
+  private List<EntryView> entries(Map<String, String> parameters) {
+    Instant now = Instant.now();
+    String image = parameters.get("image");
+    List<HistoryEntry> entries = image == null
+      ? history.entriesBetween(since(parameters), now)
+      : history.entriesForImage(image, since(parameters), now);
+
+    return entries.stream()
+      .map(it -> new EntryView(it, it.outdatedFor(now).toSeconds()))
+      .toList();
+  }
+
+  private static Instant since(Map<String, String> parameters) {
+    Duration lookback = parameters.containsKey("since")
+      ? DurationParser.parse(parameters.get("since"))
+      : DEFAULT_LOOKBACK;
+
+    return Instant.now().minus(lookback);
+  }
+
+  private record EntryView(HistoryEntry entry, long outdatedSeconds) {
+
+  }
+
+  private record LatencyView(LatencyPercentiles detection, LatencyPercentiles apply) {
+
+  }
+}
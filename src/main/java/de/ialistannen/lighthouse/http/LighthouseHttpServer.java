@@ -0,0 +1,236 @@
+package de.ialistannen.lighthouse.http;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A small embedded HTTP server exposing Lighthouse's state.
+ * <p>
+ * If a token is configured, every request must carry it as {@code Authorization: Bearer <token>}. Without one, only
+ * reading requests are allowed, as anyone who can reach the port could otherwise trigger updates.
+ */
+public class LighthouseHttpServer {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(LighthouseHttpServer.class);
+
+  private final HttpServer server;
+  private final ObjectMapper objectMapper;
+  private final Optional<String> token;
+
+  /**
+   * @param port the port to listen on
+   * @param token the token requests must carry, if any
+   * @throws IOException if the port can not be bound
+   */
+  public LighthouseHttpServer(int port, Optional<String> token) throws IOException {
+    this.token = token;
+    this.server = HttpServer.create(new InetSocketAddress(port), 0);
+    this.server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+    this.objectMapper = new ObjectMapper()
+      .registerModule(new JavaTimeModule())
+      .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+  }
+
+  public void start() {
+    server.start();
+    LOGGER.info("Listening for HTTP requests on {}", server.getAddress());
+  }
+
+  /**
+   * Registers a raw handler for a path prefix.
+   *
+   * @param path the path prefix
+   * @param handler the handler
+   */
+  public void route(String path, HttpHandler handler) {
+    server.createContext(path, exchange -> {
+      if (!isAuthorized(exchange)) {
+        try (exchange) {
+          exchange.getResponseHeaders().set("WWW-Authenticate", "Bearer");
+          sendText(exchange, 401, "Unauthorized");
+        }
+        return;
+      }
+      if (token.isEmpty() && !isReadOnly(exchange)) {
+        try (exchange) {
+          sendText(exchange, 403, "Requests that change state require --http-token to be set");
+        }
+        return;
+      }
+      handler.handle(exchange);
+    });
+  }
+
+  private static boolean isReadOnly(HttpExchange exchange) {
+    return exchange.getRequestMethod().equals("GET") || exchange.getRequestMethod().equals("HEAD");
+  }
+
+  private boolean isAuthorized(HttpExchange exchange) {
+    if (token.isEmpty()) {
+      return true;
+    }
+    String header = exchange.getRequestHeaders().getFirst("Authorization");
+    if (header == null) {
+      return false;
+    }
+    // Constant time, so the token can not be guessed byte by byte
+    return MessageDigest.isEqual(
+      header.getBytes(StandardCharsets.UTF_8),
+      ("Bearer " + token.get()).getBytes(StandardCharsets.UTF_8)
+    );
+  }
+
+  /**
+   * Registers a handler for GET requests whose result is sent as JSON. {@link IllegalArgumentException}s are reported
+   * as bad requests.
+   *
+   * @param path the exact path
+   * @param route the route
+   */
+  public void getJson(String path, JsonRoute route) {
+    jsonRoute("GET", 200, path, route);
+  }
+
+  /**
+   * Registers a handler for POST requests whose result is sent as JSON with status 202 (accepted).
+   * {@link IllegalArgumentException}s are reported as bad requests, {@link IllegalStateException}s as conflicts.
+   *
+   * @param path the exact path
+   * @param route the route
+   */
+  public void postJson(String path, JsonRoute route) {
+    jsonRoute("POST", 202, path, route);
+  }
+
+  private void jsonRoute(String method, int successStatus, String path, JsonRoute route) {
+    route(path, exchange -> {
+      try (exchange) {
+        if (!exchange.getRequestURI().getPath().equals(path)) {
+          sendText(exchange, 404, "Not found");
+          return;
+        }
+        if (!exchange.getRequestMethod().equals(method)) {
+          sendText(exchange, 405, "Method not allowed");
+          return;
+        }
+        // Errors are answered within the try-with-resources block, as its catch clauses run after closing the exchange
+        byte[] body;
+        try {
+          body = objectMapper.writeValueAsBytes(route.handle(queryParameters(exchange)));
+        } catch (IllegalArgumentException e) {
+          sendText(exchange, 400, e.getMessage());
+          return;
+        } catch (IllegalStateException e) {
+          sendText(exchange, 409, e.getMessage());
+          return;
+        } catch (Exception e) {
+          LOGGER.warn("Error handling request to {}", exchange.getRequestURI(), e);
+          sendText(exchange, 500, "Internal server error");
+          return;
+        }
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        send(exchange, successStatus, body);
+      }
+    });
+  }
+
+  /**
+   * Sends a JSON response.
+   *
+   * @param exchange the exchange
+   * @param status the status code
+   * @param body the body to serialize
+   * @throws IOException if sending fails
+   */
+  public void sendJson(HttpExchange exchange, int status, Object body) throws IOException {
+    exchange.getResponseHeaders().set("Content-Type", "application/json");
+    send(exchange, status, objectMapper.writeValueAsBytes(body));
+  }
+
+  /**
+   * Sends a plain text response.
+   *
+   * @param exchange the exchange
+   * @param status the status code
+   * @param body the body
+   * @throws IOException if sending fails
+   */
+  public static void sendText(HttpExchange exchange, int status, String body) throws IOException {
+    sendText(exchange, status, "text/plain; charset=utf-8", body);
+  }
+
+  /**
+   * Sends a text response with a custom content type.
+   *
+   * @param exchange the exchange
+   * @param status the status code
+   * @param contentType the content type, including the charset
+   * @param body the body, encoded as UTF-8
+   * @throws IOException if sending fails
+   */
+  public static void sendText(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+    exchange.getResponseHeaders().set("Content-Type", contentType);
+    send(exchange, status, body.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static void send(HttpExchange exchange, int status, byte[] body) throws IOException {
+    exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+    if (body.length > 0) {
+      try (OutputStream outputStream = exchange.getResponseBody()) {
+        outputStream.write(body);
+      }
+    }
+  }
+
+  /**
+   * @param exchange the exchange
+   * @return the decoded query parameters. Only the last value of repeated parameters is kept.
+   */
+  public static Map<String, String> queryParameters(HttpExchange exchange) {
+    Map<String, String> result = new HashMap<>();
+    String query = exchange.getRequestURI().getRawQuery();
+    if (query == null || query.isEmpty()) {
+      return result;
+    }
+
+    for (String part : query.split("&")) {
+      String[] keyValue = part.split("=", 2);
+      result.put(
+        URLDecoder.decode(keyValue[0], StandardCharsets.UTF_8),
+        keyValue.length > 1 ? URLDecoder.decode(keyValue[1], StandardCharsets.UTF_8) : ""
+      );
+    }
+
+    return result;
+  }
+
+  /**
+   * A route answering with a JSON body.
+   */
+  @FunctionalInterface
+  public interface JsonRoute {
+
+    /**
+     * @param queryParameters the decoded query parameters
+     * @return the object to serialize as response
+     * @throws Exception if anything goes wrong
+     */
+    Object handle(Map<String, String> queryParameters) throws Exception;
+  }
+}
@@ -0,0 +1,50 @@
+package de.ialistannen.lighthouse.http;
+
+import de.ialistannen.lighthouse.metrics.MetricsRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Exposes the {@link MetricsRegistry} for Prometheus.
+ */
+public class MetricsRoutes {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(MetricsRoutes.class);
+  private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+  private final MetricsRegistry metrics;
+
+  public MetricsRoutes(MetricsRegistry metrics) {
+    this.metrics = metrics;
+  }
+
+  /**
+   * Registers {@code /metrics}, serving all metrics in the Prometheus text format.
+   *
+   * @param server the server to register it on
+   */
+  public void register(LighthouseHttpServer server) {
+    server.route("/metrics", exchange -> {
+      try (exchange) {
+        if (!exchange.getRequestURI().getPath().equals("/metrics")) {
+          LighthouseHttpServer.sendText(exchange, 404, "Not found");
+          return;
+        }
+        if (!exchange.getRequestMethod().equals("GET")) {
+          LighthouseHttpServer.sendText(exchange, 405, "Method not allowed");
+          return;
+        }
+        // Errors are answered within the try-with-resources block, as its catch clauses run after closing the exchange
+        String body;
+        try {
+          body = metrics.scrape();
+        } catch (RuntimeException e) {
+          LOGGER.warn("Error serving metrics", e);
+          LighthouseHttpServer.sendText(exchange, 500, "Internal server error");
+          return;
+        }
+        LighthouseHttpServer.sendText(exchange, 200, CONTENT_TYPE, body);
+      }
+    });
+  }
+}
@@ -0,0 +1,53 @@
+package de.ialistannen.lighthouse.metrics;
+
+import de.ialistannen.lighthouse.metrics.MetricsRegistry.MetricFamily;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A monotonically increasing count, e.g. of failed requests.
+ */
+public class Counter extends MetricFamily {
+
+  private final Map<List<String>, LongAdder> children;
+
+  Counter(String name, String help, List<String> labelNames) {
+    super(name, help, labelNames);
+    this.children = new ConcurrentHashMap<>();
+  }
+
+  /**
+   * Increments the counter by one.
+   *
+   * @param labelValues the values of the labels, in the order they were declared in
+   */
+  public void increment(String... labelValues) {
+    add(1, labelValues);
+  }
+
+  /**
+   * @param amount the amount to add
+   * @param labelValues the values of the labels, in the order they were declared in
+   */
+  public void add(long amount, String... labelValues) {
+    children.computeIfAbsent(checkLabels(labelValues), _ -> new LongAdder()).add(amount);
+  }
+
+  @Override
+  String type() {
+    return "counter";
+  }
+
+  @Override
+  void write(StringBuilder output) {
+    for (var entry : children.entrySet()) {
+      output.append(name())
+        .append(MetricsRegistry.formatLabels(labelNames(), entry.getKey(), null, null))
+        .append(' ')
+        .append(entry.getValue().sum())
+        .append('\n');
+    }
+  }
+}
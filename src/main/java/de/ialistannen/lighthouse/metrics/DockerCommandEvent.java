@@ -0,0 +1,37 @@
+package de.ialistannen.lighthouse.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A docker API call, recorded with Java Flight Recorder. The duration ends when the response headers arrived.
+ */
+@Name("lighthouse.DockerCommand")
+@Label("Docker Command")
+@Category({"Lighthouse", "Docker"})
+public class DockerCommandEvent extends jdk.jfr.Event {
+
+  @Label("Command")
+  @Description("The method and path with ids replaced, e.g. GET /images/{id}/json")
+  public String command;
+
+  @Label("Path")
+  @Description("The full request path, including the image or container")
+  public String path;
+
+  @Label("Status")
+  @Description("The HTTP status, -1 if no response was received")
+  public int status;
+
+  @Label("Request Bytes")
+  @DataAmount
+  public long requestBytes;
+
+  @Label("Response Bytes")
+  @Description("The announced size of the response body, -1 if unknown or streamed")
+  @DataAmount
+  public long responseBytes;
+}
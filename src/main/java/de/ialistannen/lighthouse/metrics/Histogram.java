@@ -0,0 +1,117 @@
+package de.ialistannen.lighthouse.metrics;
+
+import de.ialistannen.lighthouse.metrics.MetricsRegistry.MetricFamily;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A latency histogram in seconds with fixed buckets from 5ms to 5 minutes.
+ */
+public class Histogram extends MetricFamily {
+
+  private static final double[] BUCKETS = {
+    0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60, 300
+  };
+
+  private final Map<List<String>, Child> children;
+
+  Histogram(String name, String help, List<String> labelNames) {
+    super(name, help, labelNames);
+    this.children = new ConcurrentHashMap<>();
+  }
+
+  /**
+   * @param labelValues the values of the labels, in the order they were declared in
+   * @return the histogram for the given labels
+   */
+  public Child labels(String... labelValues) {
+    return children.computeIfAbsent(checkLabels(labelValues), _ -> new Child());
+  }
+
+  @Override
+  String type() {
+    return "histogram";
+  }
+
+  @Override
+  void write(StringBuilder output) {
+    for (var entry : children.entrySet()) {
+      Child child = entry.getValue();
+      long cumulative = 0;
+      for (int i = 0; i <= BUCKETS.length; i++) {
+        cumulative += child.buckets[i].sum();
+        String bound = i < BUCKETS.length
+          ? MetricsRegistry.formatValue(BUCKETS[i])
+          : MetricsRegistry.formatValue(Double.POSITIVE_INFINITY);
+        output.append(name())
+          .append("_bucket")
+          .append(MetricsRegistry.formatLabels(labelNames(), entry.getKey(), "le", bound))
+          .append(' ')
+          .append(cumulative)
+          .append('\n');
+      }
+      String labels = MetricsRegistry.formatLabels(labelNames(), entry.getKey(), null, null);
+      output.append(name()).append("_sum").append(labels).append(' ').append(child.sum.sum()).append('\n');
+      output.append(name()).append("_count").append(labels).append(' ').append(cumulative).append('\n');
+    }
+  }
+
+  /**
+   * The histogram for one set of label values.
+   */
+  public static class Child {
+
+    private final LongAdder[] buckets;
+    private final DoubleAdder sum;
+
+    private Child() {
+      this.buckets = new LongAdder[BUCKETS.length + 1];
+      for (int i = 0; i < buckets.length; i++) {
+        buckets[i] = new LongAdder();
+      }
+      this.sum = new DoubleAdder();
+    }
+
+    /**
+     * @param seconds the observed duration in seconds
+     */
+    public void observe(double seconds) {
+      int bucket = 0;
+      while (bucket < BUCKETS.length && seconds > BUCKETS[bucket]) {
+        bucket++;
+      }
+      buckets[bucket].increment();
+      sum.add(seconds);
+    }
+
+    /**
+     * @param startNanos the {@link System#nanoTime()} the measured operation started at
+     */
+    public void observeSince(long startNanos) {
+      observe((System.nanoTime() - startNanos) / 1e9);
+    }
+
+    /**
+     * Starts timing an operation, which is observed when the returned timer is closed.
+     *
+     * @return the timer
+     */
+    public Timer startTimer() {
+      long start = System.nanoTime();
+      return () -> observeSince(start);
+    }
+  }
+
+  /**
+   * A running measurement, for use in try-with-resources.
+   */
+  @FunctionalInterface
+  public interface Timer extends AutoCloseable {
+
+    @Override
+    void close();
+  }
+}
@@ -0,0 +1,116 @@
+package de.ialistannen.lighthouse.metrics;
+
+import com.github.dockerjava.transport.DockerHttpClient;
+import java.io.IOException;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Measures the latency of every docker API call and records it as a {@link DockerCommandEvent}. For streaming calls
+ * (attach, pull, build, ...) this is the time until the response headers arrived.
+ */
+public class InstrumentedDockerHttpClient implements DockerHttpClient {
+
+  private static final Pattern API_VERSION = Pattern.compile("^/v[0-9.]+");
+  // Second path segments that are operations instead of ids
+  private static final Set<String> COLLECTION_OPERATIONS = Set.of("json", "create", "prune", "search", "load", "get");
+  // Last path segments that are operations on a single object instead of the last part of an image name
+  private static final Set<String> OBJECT_OPERATIONS = Set.of(
+    "json", "start", "stop", "restart", "kill", "pause", "unpause", "wait", "attach", "ws", "logs", "top", "changes",
+    "export", "stats", "resize", "update", "rename", "exec", "archive", "history", "push", "tag", "get", "connect",
+    "disconnect", "enable", "disable", "upgrade", "set"
+  );
+
+  private final DockerHttpClient delegate;
+  private final Histogram latency;
+  private final Counter failures;
+
+  public InstrumentedDockerHttpClient(DockerHttpClient delegate, MetricsRegistry metrics) {
+    this.delegate = delegate;
+    this.latency = metrics.histogram(
+      "lighthouse_docker_request_seconds",
+      "Latency of docker API calls until the response headers arrived",
+      "command"
+    );
+    this.failures = metrics.counter(
+      "lighthouse_docker_request_failures_total",
+      "Docker API calls that failed or returned an error status",
+      "command"
+    );
+  }
+
+  @Override
+  public Response execute(Request request) {
+    String command = command(request.method(), request.path());
+    DockerCommandEvent event = new DockerCommandEvent();
+    event.begin();
+    long start = System.nanoTime();
+    Response response = null;
+    try {
+      response = delegate.execute(request);
+      if (response.getStatusCode() >= 400) {
+        failures.increment(command);
+      }
+      return response;
+    } catch (RuntimeException e) {
+      failures.increment(command);
+      throw e;
+    } finally {
+      latency.labels(command).observeSince(start);
+      event.end();
+      if (event.shouldCommit()) {
+        event.command = command;
+        event.path = request.path();
+        event.status = response == null ? -1 : response.getStatusCode();
+        event.requestBytes = request.bodyBytes() == null ? 0 : request.bodyBytes().length;
+        event.responseBytes = response == null ? -1 : contentLength(response);
+        event.commit();
+      }
+    }
+  }
+
+  private static long contentLength(Response response) {
+    String header = response.getHeader("Content-Length");
+    if (header == null) {
+      return -1;
+    }
+    try {
+      return Long.parseLong(header.strip());
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  /**
+   * Maps a request to a low cardinality command name, replacing ids and image names with a placeholder. For example,
+   * {@code GET /v1.41/containers/abc123/json?all=1} becomes {@code GET /containers/{id}/json} and
+   * {@code DELETE /images/library/nginx} becomes {@code DELETE /images/{id}}.
+   *
+   * @param method the HTTP method
+   * @param path the request path
+   * @return the command name
+   */
+  static String command(String method, String path) {
+    int queryStart = path.indexOf('?');
+    if (queryStart >= 0) {
+      path = path.substring(0, queryStart);
+    }
+    path = API_VERSION.matcher(path).replaceFirst("");
+
+    String[] segments = path.replaceFirst("^/", "").split("/");
+    if (segments.length < 2 || (segments.length == 2 && COLLECTION_OPERATIONS.contains(segments[1]))) {
+      return method + " " + (path.isEmpty() ? "/" : path);
+    }
+    String last = segments[segments.length - 1];
+    if (segments.length >= 3 && OBJECT_OPERATIONS.contains(last)) {
+      return method + " /" + segments[0] + "/{id}/" + last;
+    }
+    // Image names can contain slashes, so everything after the resource (up to a known operation) is the id
+    return method + " /" + segments[0] + "/{id}";
+  }
+
+  @Override
+  public void close() throws IOException {
+    delegate.close();
+  }
+}
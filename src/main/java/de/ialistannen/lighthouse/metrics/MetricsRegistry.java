@@ -0,0 +1,190 @@
+package de.ialistannen.lighthouse.metrics;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * A minimal metrics registry rendering the Prometheus text exposition format.
+ * <p>
+ * Metrics are created once (usually in a constructor) and then updated lock-free from any thread. Creating a metric
+ * with a name that already exists returns the existing one, so several components can share a family.
+ */
+public class MetricsRegistry {
+
+  private final Map<String, MetricFamily> families;
+
+  public MetricsRegistry() {
+    this.families = new LinkedHashMap<>();
+  }
+
+  /**
+   * @param name the metric name, e.g. {@code lighthouse_registry_request_seconds}
+   * @param help the help text
+   * @param labelNames the names of the labels
+   * @return the histogram
+   */
+  public synchronized Histogram histogram(String name, String help, String... labelNames) {
+    return (Histogram) families.computeIfAbsent(name, _ -> new Histogram(name, help, List.of(labelNames)));
+  }
+
+  /**
+   * @param name the metric name, should end in {@code _total}
+   * @param help the help text
+   * @param labelNames the names of the labels
+   * @return the counter
+   */
+  public synchronized Counter counter(String name, String help, String... labelNames) {
+    return (Counter) families.computeIfAbsent(name, _ -> new Counter(name, help, List.of(labelNames)));
+  }
+
+  /**
+   * Registers a gauge whose values are computed on every scrape.
+   *
+   * @param name the metric name
+   * @param help the help text
+   * @param labelNames the names of the labels
+   * @param values computes the value per list of label values
+   */
+  public synchronized void gauge(
+    String name,
+    String help,
+    List<String> labelNames,
+    Supplier<Map<List<String>, ? extends Number>> values
+  ) {
+    families.put(name, new Gauge(name, help, labelNames, values));
+  }
+
+  /**
+   * @return all metrics in the Prometheus text format
+   */
+  public String scrape() {
+    List<MetricFamily> snapshot;
+    synchronized (this) {
+      snapshot = new ArrayList<>(families.values());
+    }
+    StringBuilder result = new StringBuilder();
+    for (MetricFamily family : snapshot) {
+      result.append("# HELP ").append(family.name()).append(' ').append(escapeHelp(family.help())).append('\n');
+      result.append("# TYPE ").append(family.name()).append(' ').append(family.type()).append('\n');
+      family.write(result);
+    }
+    return result.toString();
+  }
+
+  private static String escapeHelp(String help) {
+    return help.replace("\\", "\\\\").replace("\n", "\\n");
+  }
+
+  /**
+   * Formats a label set, e.g. <code>{host="docker.io",type="manifest"}</code>.
+   *
+   * @param names the label names
+   * @param values the label values
+   * @param extraName an additional label name (e.g. {@code le}), null for none
+   * @param extraValue the additional label value
+   * @return the formatted labels, empty if there are none
+   */
+  static String formatLabels(List<String> names, List<String> values, String extraName, String extraValue) {
+    if (names.isEmpty() && extraName == null) {
+      return "";
+    }
+    StringBuilder result = new StringBuilder("{");
+    for (int i = 0; i < names.size(); i++) {
+      if (i > 0) {
+        result.append(',');
+      }
+      result.append(names.get(i)).append("=\"").append(escapeLabel(values.get(i))).append('"');
+    }
+    if (extraName != null) {
+      if (!names.isEmpty()) {
+        result.append(',');
+      }
+      result.append(extraName).append("=\"").append(escapeLabel(extraValue)).append('"');
+    }
+    return result.append('}').toString();
+  }
+
+  private static String escapeLabel(String value) {
+    return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+  }
+
+  static String formatValue(double value) {
+    if (value == Double.POSITIVE_INFINITY) {
+      return "+Inf";
+    }
+    if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+      return Long.toString((long) value);
+    }
+    return Double.toString(value);
+  }
+
+  /**
+   * A named metric with all its labeled children.
+   */
+  abstract static class MetricFamily {
+
+    private final String name;
+    private final String help;
+    private final List<String> labelNames;
+
+    MetricFamily(String name, String help, List<String> labelNames) {
+      this.name = name;
+      this.help = help;
+      this.labelNames = labelNames;
+    }
+
+    String name() {
+      return name;
+    }
+
+    String help() {
+      return help;
+    }
+
+    List<String> labelNames() {
+      return labelNames;
+    }
+
+    List<String> checkLabels(String... values) {
+      if (values.length != labelNames.size()) {
+        throw new IllegalArgumentException(
+          "Metric %s expects labels %s, got %d value(s)".formatted(name, labelNames, values.length)
+        );
+      }
+      return List.of(values);
+    }
+
+    abstract String type();
+
+    abstract void write(StringBuilder output);
+  }
+
+  private static class Gauge extends MetricFamily {
+
+    private final Supplier<Map<List<String>, ? extends Number>> values;
+
+    Gauge(String name, String help, List<String> labelNames, Supplier<Map<List<String>, ? extends Number>> values) {
+      super(name, help, labelNames);
+      this.values = values;
+    }
+
+    @Override
+    String type() {
+      return "gauge";
+    }
+
+    @Override
+    void write(StringBuilder output) {
+      for (var entry : values.get().entrySet()) {
+        output.append(name())
+          .append(formatLabels(labelNames(), entry.getKey(), null, null))
+          .append(' ')
+          .append(formatValue(entry.getValue().doubleValue()))
+          .append('\n');
+      }
+    }
+  }
+}
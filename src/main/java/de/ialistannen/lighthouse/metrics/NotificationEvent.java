@@ -0,0 +1,26 @@
+package de.ialistannen.lighthouse.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * The delivery of a notification, recorded with Java Flight Recorder.
+ */
+@Name("lighthouse.Notification")
+@Label("Notification")
+@Category({"Lighthouse", "Notifier"})
+public class NotificationEvent extends jdk.jfr.Event {
+
+  @Label("Kind")
+  public String kind;
+
+  @Label("Items")
+  public int items;
+
+  @Label("Success")
+  public boolean success;
+
+  @Label("Error")
+  public String error;
+}
@@ -0,0 +1,36 @@
+package de.ialistannen.lighthouse.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A request to a docker registry, recorded with Java Flight Recorder.
+ */
+@Name("lighthouse.RegistryRequest")
+@Label("Registry Request")
+@Category({"Lighthouse", "Registry"})
+public class RegistryRequestEvent extends jdk.jfr.Event {
+
+  @Label("Image")
+  public String image;
+
+  @Label("Registry")
+  @Description("The host the request was sent to")
+  public String registry;
+
+  @Label("Type")
+  @Description("challenge, token, manifest or tags")
+  public String type;
+
+  @Label("Status")
+  @Description("The HTTP status, -1 if no response was received")
+  public int status;
+
+  @Label("Bytes")
+  @Description("The size of the response body, -1 if unknown")
+  @DataAmount
+  public long bytes;
+}
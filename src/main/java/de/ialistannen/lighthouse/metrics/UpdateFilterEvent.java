@@ -0,0 +1,28 @@
+package de.ialistannen.lighthouse.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Loading, committing or compacting the known updates on disk, recorded with Java Flight Recorder.
+ */
+@Name("lighthouse.UpdateFilter")
+@Label("Known Updates I/O")
+@Category({"Lighthouse", "Storage"})
+public class UpdateFilterEvent extends jdk.jfr.Event {
+
+  @Label("Operation")
+  public String operation;
+
+  @Label("Path")
+  public String path;
+
+  @Label("Entries")
+  public int entries;
+
+  @Label("Bytes")
+  @DataAmount
+  public long bytes;
+}
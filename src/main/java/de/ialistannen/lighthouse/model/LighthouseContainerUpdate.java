@@ -1,6 +1,7 @@
 package de.ialistannen.lighthouse.model;
 
 import java.util.List;
+import java.util.Map;
 
 /**
  * An update for a single container. This record stores the name(s) of the container and information about the update.
@@ -8,11 +9,13 @@ import java.util.List;
  * @param names the names of the container
  * @param imageUpdate the image update
  * @param isMyself whether this container is a lighthouse instance
+ * @param labels the labels of the container
  */
 public record LighthouseContainerUpdate(
   List<String> names,
   LighthouseImageUpdate imageUpdate,
-  boolean isMyself
+  boolean isMyself,
+  Map<String, String> labels
 ) {
 
 }
@@ -0,0 +1,199 @@
+package de.ialistannen.lighthouse.notifier;
+
+import de.ialistannen.lighthouse.metrics.Counter;
+import de.ialistannen.lighthouse.metrics.MetricsRegistry;
+import de.ialistannen.lighthouse.model.LighthouseContainerUpdate;
+import de.ialistannen.lighthouse.model.LighthouseTagUpdate;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sends every notification to several notifiers at once.
+ * <p>
+ * Each backend has its own thread, so a slow backend never delays the others. A backend not finishing within its
+ * timeout counts as failed for this notification, but keeps running in the background. A notification only fails if it
+ * failed for every backend, as retrying it would notify the working backends twice.
+ * <p>
+ * The result of the last delivery to each backend is exported as a metric.
+ */
+public class CompositeNotifier implements Notifier {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(CompositeNotifier.class);
+
+  private final List<Backend> backends;
+  private final Map<String, DeliveryResult> lastResults;
+  private final Counter deliveries;
+
+  public CompositeNotifier(MetricsRegistry metrics) {
+    this.backends = new ArrayList<>();
+    this.lastResults = new ConcurrentHashMap<>();
+    this.deliveries = metrics.counter(
+      "lighthouse_notifier_backend_deliveries_total",
+      "Notification deliveries per backend by result",
+      "backend",
+      "result"
+    );
+    metrics.gauge(
+      "lighthouse_notifier_backend_last_delivery_success",
+      "Whether the last delivery to a backend succeeded (1) or failed (0)",
+      List.of("backend"),
+      () -> lastResultMetric(it -> it.successful() ? 1 : 0)
+    );
+    metrics.gauge(
+      "lighthouse_notifier_backend_last_delivery_timestamp_seconds",
+      "When the last delivery to a backend started",
+      List.of("backend"),
+      () -> lastResultMetric(it -> it.time().getEpochSecond())
+    );
+  }
+
+  /**
+   * Adds a backend.
+   *
+   * @param name the name of the backend, used in logs and results
+   * @param notifier the notifier to delegate to
+   * @param timeout how long to wait for it
+   * @return this notifier
+   */
+  public CompositeNotifier addBackend(String name, Notifier notifier, Duration timeout) {
+    ExecutorService executor = Executors.newSingleThreadExecutor(
+      Thread.ofPlatform().daemon().name("notifier-" + name).factory()
+    );
+    backends.add(new Backend(name, notifier, timeout, executor));
+    return this;
+  }
+
+  @Override
+  public void notify(List<LighthouseContainerUpdate> updates) {
+    fanOut("updates", notifier -> notifier.notify(updates));
+  }
+
+  @Override
+  public void notifyTags(List<LighthouseTagUpdate> tagUpdates) {
+    fanOut("tag updates", notifier -> notifier.notifyTags(tagUpdates));
+  }
+
+  @Override
+  public void notify(Throwable e) {
+    fanOut("error", notifier -> notifier.notify(e));
+  }
+
+  /**
+   * @return the result of the last delivery per backend name
+   */
+  public Map<String, DeliveryResult> lastResults() {
+    Map<String, DeliveryResult> results = new LinkedHashMap<>();
+    for (Backend backend : backends) {
+      DeliveryResult result = lastResults.get(backend.name());
+      if (result != null) {
+        results.put(backend.name(), result);
+      }
+    }
+    return results;
+  }
+
+  private void fanOut(String description, Consumer<Notifier> action) {
+    // Timeouts start with the submission, so all backends are awaited at the same time
+    Instant start = Instant.now();
+    Map<Backend, CompletableFuture<Void>> futures = new LinkedHashMap<>();
+    for (Backend backend : backends) {
+      CompletableFuture<Void> future = CompletableFuture
+        .runAsync(() -> deliver(backend, action, Instant.now()), backend.executor())
+        .orTimeout(backend.timeout().toMillis(), TimeUnit.MILLISECONDS);
+      futures.put(backend, future);
+    }
+
+    try {
+      CompletableFuture.allOf(futures.values().toArray(CompletableFuture[]::new)).get();
+    } catch (ExecutionException e) {
+      // Inspected per backend below
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+
+    RuntimeException firstError = null;
+    int failed = 0;
+    for (var entry : futures.entrySet()) {
+      Backend backend = entry.getKey();
+      CompletableFuture<Void> future = entry.getValue();
+      if (future.isDone() && !future.isCompletedExceptionally()) {
+        continue;
+      }
+      Throwable cause = future.isDone() ? future.exceptionNow() : new InterruptedException("Interrupted");
+      if (cause instanceof TimeoutException) {
+        // The delivery keeps running and records its own result once it finishes
+        lastResults.put(backend.name(), DeliveryResult.failure(start, cause));
+        deliveries.increment(backend.name(), "timeout");
+      }
+      LOGGER.warn("Failed to deliver {} notification to {}", description, backend.name(), cause);
+      failed++;
+      if (firstError == null) {
+        firstError = new RuntimeException("Delivery to " + backend.name() + " failed", cause);
+      }
+    }
+
+    if (failed > 0 && failed == backends.size()) {
+      throw firstError;
+    }
+  }
+
+  private void deliver(Backend backend, Consumer<Notifier> action, Instant start) {
+    try {
+      action.accept(backend.notifier());
+      lastResults.put(backend.name(), DeliveryResult.success(start));
+      deliveries.increment(backend.name(), "success");
+    } catch (RuntimeException e) {
+      lastResults.put(backend.name(), DeliveryResult.failure(start, e));
+      deliveries.increment(backend.name(), "failure");
+      throw e;
+    }
+  }
+
+  private Map<List<String>, Number> lastResultMetric(Function<DeliveryResult, Number> value) {
+    Map<List<String>, Number> values = new LinkedHashMap<>();
+    lastResults().forEach((name, result) -> values.put(List.of(name), value.apply(result)));
+    return values;
+  }
+
+  private record Backend(String name, Notifier notifier, Duration timeout, ExecutorService executor) {
+
+  }
+
+  /**
+   * The outcome of delivering a notification to one backend.
+   *
+   * @param time when the delivery started
+   * @param duration how long the delivery took
+   * @param error the error message, if the delivery failed
+   */
+  public record DeliveryResult(Instant time, Duration duration, Optional<String> error) {
+
+    static DeliveryResult success(Instant start) {
+      return new DeliveryResult(start, Duration.between(start, Instant.now()), Optional.empty());
+    }
+
+    static DeliveryResult failure(Instant start, Throwable e) {
+      return new DeliveryResult(start, Duration.between(start, Instant.now()), Optional.of(String.valueOf(e)));
+    }
+
+    public boolean successful() {
+      return error.isEmpty();
+    }
+  }
+}
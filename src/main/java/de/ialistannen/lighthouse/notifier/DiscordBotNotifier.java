@@ -25,6 +25,10 @@ import net.dv8tion.jda.api.utils.messages.MessageCreateBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Sends notifications with a discord bot. Messages are sent blocking (JDA handles rate limits), so this should be used
+ * behind a {@link NotificationDispatcher}.
+ */
 public class DiscordBotNotifier extends ListenerAdapter implements Notifier {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(DiscordBotNotifier.class);
@@ -33,17 +37,20 @@ public class DiscordBotNotifier extends ListenerAdapter implements Notifier {
   private final Optional<String> mention;
   private final Optional<String> mentionText;
   private final Optional<String> hostname;
+  private final UpdateDetailProvider detailProvider;
 
   public DiscordBotNotifier(
     TextChannel channel,
     Optional<String> mention,
     Optional<String> mentionText,
-    Optional<String> hostname
+    Optional<String> hostname,
+    UpdateDetailProvider detailProvider
   ) throws LoginException {
     this.mention = mention;
     this.mentionText = mentionText;
     this.hostname = hostname;
     this.channel = channel;
+    this.detailProvider = detailProvider;
   }
 
   @Override
@@ -73,7 +80,7 @@ public class DiscordBotNotifier extends ListenerAdapter implements Notifier {
       return;
     }
 
-    channel.sendMessageEmbeds(embed).queue();
+    channel.sendMessageEmbeds(embed).complete();
   }
 
   private void sendMessage(MessageCreateBuilder messageBuilder, List<LighthouseContainerUpdate> updates) {
@@ -85,11 +92,11 @@ public class DiscordBotNotifier extends ListenerAdapter implements Notifier {
         messageBuilder
           .build()
       )
-      .queue();
+      .complete();
   }
 
   private String getFooter() {
-    return "Made with ❤️";
+    return "Made with ❤️" + detailProvider.footer().map(it -> " · " + it).orElse("");
   }
 
   @Override
@@ -131,7 +138,7 @@ public class DiscordBotNotifier extends ListenerAdapter implements Notifier {
       DiscordNotifierHelper.getExpandedMentionTextForTagUpdates(mention, mentionText, tagUpdates)
     ));
 
-    channel.sendMessage(messageBuilder.build()).queue();
+    channel.sendMessage(messageBuilder.build()).complete();
   }
 
   private EmbedBuilder buildTagUpdateEmbed(LighthouseTagUpdate tagUpdate) {
@@ -201,6 +208,9 @@ public class DiscordBotNotifier extends ListenerAdapter implements Notifier {
     });
 
     embedBuilder.addField(buildRemoteImageIdField(imageUpdate));
+    for (UpdateDetail detail : detailProvider.detailsFor(update)) {
+      embedBuilder.addField(new Field(detail.name(), detail.value(), false));
+    }
 
     hostname.ifPresent(embedBuilder::setAuthor);
 
@@ -243,10 +253,11 @@ public class DiscordBotNotifier extends ListenerAdapter implements Notifier {
   }
 
   private void sendActionRows(List<LighthouseContainerUpdate> updates) {
+    String notificationId = NotificationId.forUpdates(updates);
     MessageCreateBuilder messageBuilder = new MessageCreateBuilder().setContent("\u00A0");
 
     messageBuilder.addComponents(ActionRow.of(
-      StringSelectMenu.create("image-select-" + updates.hashCode())
+      StringSelectMenu.create("image-select-" + notificationId)
         .setMinValues(1)
         .setMaxValues(25)
         .addOptions(
@@ -258,12 +269,12 @@ public class DiscordBotNotifier extends ListenerAdapter implements Notifier {
     ));
     messageBuilder.addComponents(ActionRow.of(Button.of(
       ButtonStyle.PRIMARY,
-      "update-" + updates.hashCode(),
+      "update-" + notificationId,
       "Update selected!",
       Emoji.fromUnicode("🚀")
     )));
 
-    channel.sendMessage(messageBuilder.build()).queue();
+    channel.sendMessage(messageBuilder.build()).complete();
   }
 
   private static SelectOption containerUpdateToSelectOption(LighthouseContainerUpdate update) {
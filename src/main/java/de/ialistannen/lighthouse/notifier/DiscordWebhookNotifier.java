@@ -17,8 +17,6 @@ import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpRequest.BodyPublishers;
-import java.net.http.HttpResponse;
-import java.net.http.HttpResponse.BodyHandlers;
 import java.util.List;
 import java.util.Optional;
 import org.slf4j.Logger;
@@ -31,25 +29,28 @@ public class DiscordWebhookNotifier implements Notifier {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(DiscordWebhookNotifier.class);
 
-  private final HttpClient httpClient;
+  private final RateLimitedHttpSender sender;
   private final URI url;
   private final ObjectMapper objectMapper;
   private final Optional<String> mention;
   private final Optional<String> mentionText;
   private final Optional<String> hostname;
+  private final UpdateDetailProvider detailProvider;
 
   public DiscordWebhookNotifier(
     HttpClient httpClient,
     URI url,
     Optional<String> mention,
     Optional<String> mentionText,
-    Optional<String> hostname
+    Optional<String> hostname,
+    UpdateDetailProvider detailProvider
   ) {
-    this.httpClient = httpClient;
+    this.sender = new RateLimitedHttpSender(httpClient);
     this.url = url;
     this.mention = mention;
     this.mentionText = mentionText;
     this.hostname = hostname;
+    this.detailProvider = detailProvider;
     this.objectMapper = new ObjectMapper();
   }
 
@@ -137,11 +138,7 @@ public class DiscordWebhookNotifier implements Notifier {
 
       LOGGER.debug("Sending webhook {}", objectMapper.writeValueAsString(payload));
 
-      HttpResponse<String> response = httpClient.send(request, BodyHandlers.ofString());
-      if (response.statusCode() != 200 && response.statusCode() != 204) {
-        LOGGER.warn("Failed to notify (HTTP {}): {}", response.statusCode(), response.body());
-        throw new RuntimeException("Failed to notify (HTTP " + response.statusCode() + "): " + response.body());
-      }
+      sender.send(request);
     } catch (IOException | InterruptedException e) {
       LOGGER.warn("Failed to notify!", e);
       throw new RuntimeException("Failed to notify!", e);
@@ -187,6 +184,9 @@ public class DiscordWebhookNotifier implements Notifier {
     });
 
     fields.add(buildRemoteImageIdField(imageUpdate));
+    detailProvider.detailsFor(update).stream()
+      .map(this::buildDetailField)
+      .forEach(fields::add);
 
     embed.set("fields", fields);
 
@@ -233,9 +233,20 @@ public class DiscordWebhookNotifier implements Notifier {
     return remoteImageId;
   }
 
+  private ObjectNode buildDetailField(UpdateDetail detail) {
+    ObjectNode field = objectMapper.createObjectNode();
+    field.set("name", new TextNode(detail.name()));
+    field.set("value", new TextNode(detail.value()));
+
+    return field;
+  }
+
   private ObjectNode buildFooter() {
     ObjectNode footer = objectMapper.createObjectNode();
-    footer.set("text", new TextNode("Made with \u2764\uFE0F"));
+    footer.set(
+      "text",
+      new TextNode("Made with \u2764\uFE0F" + detailProvider.footer().map(it -> " \u00B7 " + it).orElse(""))
+    );
     return footer;
   }
 
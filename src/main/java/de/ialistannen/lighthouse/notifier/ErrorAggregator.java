@@ -0,0 +1,251 @@
+package de.ialistannen.lighthouse.notifier;
+
+import com.google.common.base.Throwables;
+import de.ialistannen.lighthouse.model.LighthouseContainerUpdate;
+import de.ialistannen.lighthouse.model.LighthouseTagUpdate;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Deduplicates and throttles error notifications.
+ * <p>
+ * Errors are grouped by a fingerprint of their type, registry and normalized message. Errors reported during a check
+ * cycle are collected and sent as one summary when the cycle ends. Errors outside a cycle are sent right away. A
+ * fingerprint that keeps failing is notified again only after an exponentially growing pause, with a count of how often
+ * it failed in the meantime.
+ * <p>
+ * Fingerprints not seen during a cycle are considered resolved, but only if their registry was part of the cycle (see
+ * {@link #markChecked(String)}). Most cycles only check some containers, and a registry that was not asked can not
+ * have recovered. Errors without a registry are resolved by every cycle.
+ */
+public class ErrorAggregator implements Notifier {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ErrorAggregator.class);
+  private static final Pattern HEX_PATTERN = Pattern.compile("[0-9a-fA-F]{12,}");
+  private static final Pattern NUMBER_PATTERN = Pattern.compile("\\d+");
+  private static final Duration INITIAL_SUPPRESSION = Duration.ofMinutes(30);
+  private static final Duration MAX_SUPPRESSION = Duration.ofDays(1);
+  private static final String NO_REGISTRY = "-";
+
+  private final Notifier delegate;
+  private final Map<Fingerprint, FailureState> failures;
+  private final Map<Fingerprint, CycleError> cycleErrors;
+  private final Set<String> checkedRegistries;
+  private boolean inCycle;
+  private Instant cycleStart;
+
+  public ErrorAggregator(Notifier delegate) {
+    this.delegate = delegate;
+    this.failures = new HashMap<>();
+    this.cycleErrors = new LinkedHashMap<>();
+    this.checkedRegistries = new HashSet<>();
+  }
+
+  @Override
+  public void notify(List<LighthouseContainerUpdate> updates) {
+    delegate.notify(updates);
+  }
+
+  @Override
+  public void notifyTags(List<LighthouseTagUpdate> tagUpdates) {
+    delegate.notifyTags(tagUpdates);
+  }
+
+  @Override
+  public void notify(Throwable e) {
+    record(e, NO_REGISTRY);
+  }
+
+  /**
+   * Starts collecting errors for a check cycle.
+   */
+  public synchronized void beginCycle() {
+    inCycle = true;
+    cycleStart = Instant.now();
+    checkedRegistries.clear();
+    checkedRegistries.add(NO_REGISTRY);
+  }
+
+  /**
+   * Marks a registry as checked in the current cycle, so its errors are resolved if it did not fail again.
+   *
+   * @param registry the registry
+   */
+  public synchronized void markChecked(String registry) {
+    checkedRegistries.add(registry);
+  }
+
+  /**
+   * Records an error.
+   *
+   * @param e the error
+   * @param registry the registry involved, if any
+   */
+  public void record(Throwable e, String registry) {
+    List<ErrorSummary> summaries;
+    synchronized (this) {
+      Fingerprint fingerprint = Fingerprint.of(e, registry);
+      cycleErrors.computeIfAbsent(fingerprint, _ -> new CycleError(e)).occurrences++;
+      if (inCycle) {
+        return;
+      }
+      summaries = collectSummaries(Instant.now());
+    }
+    send(summaries);
+  }
+
+  /**
+   * Ends the check cycle and sends a summary of the collected errors that are not suppressed.
+   */
+  public void endCycle() {
+    List<ErrorSummary> summaries;
+    synchronized (this) {
+      inCycle = false;
+      Instant now = Instant.now();
+      summaries = collectSummaries(now);
+      failures.entrySet().removeIf(it ->
+        checkedRegistries.contains(it.getKey().registry()) && it.getValue().lastSeen().isBefore(cycleStart)
+      );
+    }
+    send(summaries);
+  }
+
+  private List<ErrorSummary> collectSummaries(Instant now) {
+    List<ErrorSummary> summaries = new ArrayList<>();
+
+    for (var entry : cycleErrors.entrySet()) {
+      Fingerprint fingerprint = entry.getKey();
+      CycleError error = entry.getValue();
+
+      FailureState state = failures.get(fingerprint);
+      if (state == null) {
+        state = new FailureState(0, 0, now, Instant.EPOCH);
+      }
+      int totalFailures = state.totalFailures() + error.occurrences;
+
+      if (now.isBefore(state.nextNotification())) {
+        LOGGER.info(
+          "Suppressing error {} ({} times so far) until {}",
+          fingerprint,
+          totalFailures,
+          state.nextNotification()
+        );
+        failures.put(
+          fingerprint,
+          new FailureState(totalFailures, state.notifications(), now, state.nextNotification())
+        );
+        continue;
+      }
+
+      Duration suppression = INITIAL_SUPPRESSION.multipliedBy(1L << Math.min(state.notifications(), 16));
+      if (suppression.compareTo(MAX_SUPPRESSION) > 0) {
+        suppression = MAX_SUPPRESSION;
+      }
+      failures.put(
+        fingerprint,
+        new FailureState(totalFailures, state.notifications() + 1, now, now.plus(suppression))
+      );
+      summaries.add(new ErrorSummary(fingerprint, error.representative, error.occurrences, totalFailures));
+    }
+    cycleErrors.clear();
+
+    return summaries;
+  }
+
+  private void send(List<ErrorSummary> summaries) {
+    if (summaries.isEmpty()) {
+      return;
+    }
+    delegate.notify(new AggregatedErrorException(summaries));
+  }
+
+  /**
+   * Identifies errors that have the same cause.
+   *
+   * @param type the exception type, including the root cause type
+   * @param registry the registry involved
+   * @param message the message with numbers and hashes removed
+   */
+  record Fingerprint(String type, String registry, String message) {
+
+    static Fingerprint of(Throwable e, String registry) {
+      Throwable root = Throwables.getRootCause(e);
+      String type = e.getClass().getSimpleName();
+      if (root != e) {
+        type += " <- " + root.getClass().getSimpleName();
+      }
+      String message = String.valueOf(root.getMessage());
+      message = HEX_PATTERN.matcher(message).replaceAll("<hash>");
+      message = NUMBER_PATTERN.matcher(message).replaceAll("#");
+
+      return new Fingerprint(type, registry, message);
+    }
+  }
+
+  /**
+   * An error to notify about.
+   *
+   * @param fingerprint the fingerprint of the error
+   * @param representative one of the errors
+   * @param occurrences how often it happened since the last summary
+   * @param totalFailures how often it happened since it started failing
+   */
+  record ErrorSummary(Fingerprint fingerprint, Throwable representative, int occurrences, int totalFailures) {
+
+    String describe() {
+      // The fingerprint's message is normalized for grouping, users want to see the real one
+      String message = String.valueOf(Throwables.getRootCause(representative).getMessage());
+      String text = "%s (registry %s): %s".formatted(fingerprint.type(), fingerprint.registry(), message);
+      if (occurrences > 1) {
+        text += " [" + occurrences + "x]";
+      }
+      if (totalFailures > occurrences) {
+        text += " - still failing (" + totalFailures + " times)";
+      }
+      return text;
+    }
+  }
+
+  private record FailureState(int totalFailures, int notifications, Instant lastSeen, Instant nextNotification) {
+
+  }
+
+  private static class CycleError {
+
+    private final Throwable representative;
+    private int occurrences;
+
+    CycleError(Throwable representative) {
+      this.representative = representative;
+    }
+  }
+
+  /**
+   * Carries the summary to the notifiers, which render errors as stacktraces. The summary is the message, the first
+   * error the cause.
+   */
+  static class AggregatedErrorException extends RuntimeException {
+
+    AggregatedErrorException(List<ErrorSummary> summaries) {
+      super(
+        summaries.size() + " error(s):\n" + summaries.stream()
+          .map(it -> " - " + it.describe())
+          .collect(Collectors.joining("\n")),
+        summaries.getFirst().representative()
+      );
+      // Our own stack trace is just noise
+      setStackTrace(new StackTraceElement[0]);
+    }
+  }
+}
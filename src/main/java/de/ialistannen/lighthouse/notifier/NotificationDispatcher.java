@@ -0,0 +1,183 @@
+package de.ialistannen.lighthouse.notifier;
+
+import de.ialistannen.lighthouse.metrics.Counter;
+import de.ialistannen.lighthouse.metrics.Histogram;
+import de.ialistannen.lighthouse.metrics.MetricsRegistry;
+import de.ialistannen.lighthouse.metrics.NotificationEvent;
+import de.ialistannen.lighthouse.model.LighthouseContainerUpdate;
+import de.ialistannen.lighthouse.model.LighthouseTagUpdate;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link Notifier} that hands notifications to a background thread, so slow or rate limited endpoints do not hold up
+ * the check cycle.
+ * <p>
+ * Notifications are delivered in order through a bounded queue. If the queue is full, callers block until there is
+ * room again, so nothing is dropped. Update notifications can be {@link #awaitDelivery(Duration) awaited}, which should
+ * happen before they are marked as notified.
+ */
+public class NotificationDispatcher implements Notifier {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(NotificationDispatcher.class);
+
+  private final Notifier delegate;
+  private final BlockingQueue<Delivery> queue;
+  private final List<CompletableFuture<Void>> unconfirmed;
+  private final Histogram deliveryLatency;
+  private final Counter deliveryFailures;
+
+  /**
+   * Creates a new dispatcher and starts its worker thread.
+   *
+   * @param delegate the notifier actually sending notifications
+   * @param capacity how many notifications may be queued
+   * @param metrics the registry to record delivery latency and failures in
+   */
+  public NotificationDispatcher(Notifier delegate, int capacity, MetricsRegistry metrics) {
+    this.delegate = delegate;
+    this.queue = new ArrayBlockingQueue<>(capacity);
+    this.unconfirmed = new ArrayList<>();
+    this.deliveryLatency = metrics.histogram(
+      "lighthouse_notification_delivery_seconds",
+      "Time it took to deliver a notification to all backends",
+      "kind"
+    );
+    this.deliveryFailures = metrics.counter(
+      "lighthouse_notification_failures_total",
+      "Notifications that could not be delivered",
+      "kind"
+    );
+
+    Thread.ofPlatform().daemon().name("notification-dispatcher").start(this::deliverForever);
+  }
+
+  @Override
+  public void notify(List<LighthouseContainerUpdate> updates) {
+    if (updates.isEmpty()) {
+      return;
+    }
+    enqueue("updates", updates.size(), notifier -> notifier.notify(updates), true);
+  }
+
+  /**
+   * Queues an update notification outside a check cycle, e.g. a follow-up to an earlier one. It is delivered in order
+   * with all other notifications, but not {@link #awaitDelivery(Duration) awaited}.
+   *
+   * @param updates the updates
+   */
+  public void notifyUnconfirmed(List<LighthouseContainerUpdate> updates) {
+    if (updates.isEmpty()) {
+      return;
+    }
+    enqueue("updates", updates.size(), notifier -> notifier.notify(updates), false);
+  }
+
+  @Override
+  public void notifyTags(List<LighthouseTagUpdate> tagUpdates) {
+    if (tagUpdates.isEmpty()) {
+      return;
+    }
+    enqueue("tag updates", tagUpdates.size(), notifier -> notifier.notifyTags(tagUpdates), true);
+  }
+
+  @Override
+  public void notify(Throwable e) {
+    enqueue("error", 1, notifier -> notifier.notify(e), false);
+  }
+
+  /**
+   * Waits until all update notifications queued since the last call have been delivered.
+   *
+   * @param timeout how long to wait at most
+   * @throws NotificationException if a notification could not be delivered in time
+   */
+  public void awaitDelivery(Duration timeout) throws NotificationException {
+    List<CompletableFuture<Void>> pending;
+    synchronized (unconfirmed) {
+      pending = List.copyOf(unconfirmed);
+      unconfirmed.clear();
+    }
+
+    try {
+      CompletableFuture.allOf(pending.toArray(CompletableFuture[]::new))
+        .get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+    } catch (ExecutionException e) {
+      throw new NotificationException("Failed to deliver notification", e.getCause());
+    } catch (TimeoutException e) {
+      throw new NotificationException("Notifications were not delivered within " + timeout, e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new NotificationException("Interrupted while waiting for notifications", e);
+    }
+  }
+
+  private void enqueue(String description, int items, Consumer<Notifier> action, boolean confirm) {
+    Delivery delivery = new Delivery(description, items, action, new CompletableFuture<>());
+    if (confirm) {
+      synchronized (unconfirmed) {
+        unconfirmed.add(delivery.result());
+      }
+    }
+
+    try {
+      if (!queue.offer(delivery)) {
+        LOGGER.info("Notification queue is full, waiting for room");
+        queue.put(delivery);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      delivery.result().completeExceptionally(e);
+    }
+  }
+
+  private void deliverForever() {
+    while (true) {
+      Delivery delivery;
+      try {
+        delivery = queue.take();
+      } catch (InterruptedException e) {
+        LOGGER.info("Notification dispatcher interrupted, stopping");
+        return;
+      }
+
+      NotificationEvent event = new NotificationEvent();
+      event.begin();
+      long start = System.nanoTime();
+      try {
+        delivery.action().accept(delegate);
+        delivery.result().complete(null);
+        event.success = true;
+      } catch (Exception e) {
+        LOGGER.warn("Failed to deliver {} notification", delivery.description(), e);
+        deliveryFailures.increment(delivery.description());
+        delivery.result().completeExceptionally(e);
+        event.error = e.toString();
+      } finally {
+        deliveryLatency.labels(delivery.description()).observeSince(start);
+        event.kind = delivery.description();
+        event.items = delivery.items();
+        event.commit();
+      }
+    }
+  }
+
+  private record Delivery(
+    String description,
+    int items,
+    Consumer<Notifier> action,
+    CompletableFuture<Void> result
+  ) {
+
+  }
+}
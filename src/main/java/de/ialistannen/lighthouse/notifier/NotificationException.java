@@ -0,0 +1,9 @@
+package de.ialistannen.lighthouse.notifier;
+
+public class NotificationException extends Exception {
+
+  public NotificationException(String message, Throwable cause) {
+    super(message, cause);
+  }
+
+}
@@ -0,0 +1,31 @@
+package de.ialistannen.lighthouse.notifier;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import de.ialistannen.lighthouse.model.LighthouseContainerUpdate;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Identifies the updates of a notification, e.g. to match interactive components to the updates they act on.
+ */
+public class NotificationId {
+
+  /**
+   * Computes the id for some updates. Equal updates result in the same id, independent of the list instance, and the id
+   * is short enough to be embedded in discord component ids.
+   *
+   * @param updates the notified updates
+   * @return the id of the notification
+   */
+  public static String forUpdates(List<LighthouseContainerUpdate> updates) {
+    Hasher hasher = Hashing.sha256().newHasher();
+    for (LighthouseContainerUpdate update : updates) {
+      for (String name : update.names()) {
+        hasher.putString(name, StandardCharsets.UTF_8).putByte((byte) 0);
+      }
+      hasher.putString(update.imageUpdate().remoteManifestDigest(), StandardCharsets.UTF_8).putByte((byte) 1);
+    }
+    return hasher.hash().toString().substring(0, 16);
+  }
+}
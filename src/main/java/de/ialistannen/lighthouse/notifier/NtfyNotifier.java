@@ -9,10 +9,14 @@ import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpRequest.BodyPublishers;
-import java.net.http.HttpResponse;
-import java.net.http.HttpResponse.BodyHandlers;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Optional;
+import java.util.stream.Collectors;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -27,15 +31,19 @@ public class NtfyNotifier implements Notifier {
       "https://raw.githubusercontent.com/I-Al-Istannen/Lighthouse/master/media/lighthouse.png?raw=true";
 
   private static final Logger LOGGER = LoggerFactory.getLogger(NtfyNotifier.class);
+  // ntfy turns messages above 4096 bytes into attachments on its own, leave some room for our separators
+  private static final int MAX_MESSAGE_BYTES = 4000;
 
-  private final HttpClient httpClient;
+  private final RateLimitedHttpSender sender;
   private final URI url;
   private final Optional<String> hostname;
+  private final UpdateDetailProvider detailProvider;
 
-  public NtfyNotifier(HttpClient httpClient, URI url, Optional<String> hostname) {
-    this.httpClient = httpClient;
+  public NtfyNotifier(HttpClient httpClient, URI url, Optional<String> hostname, UpdateDetailProvider detailProvider) {
+    this.sender = new RateLimitedHttpSender(httpClient);
     this.url = url;
     this.hostname = hostname;
+    this.detailProvider = detailProvider;
   }
 
   @Override
@@ -44,8 +52,8 @@ public class NtfyNotifier implements Notifier {
 
     String stacktrace = Throwables.getStackTraceAsString(e);
     // Messages longer than 4096 bytes are treated as attachment
-    if (stacktrace.length() > 4000) {
-      stacktrace = stacktrace.substring(0, 4000);
+    if (stacktrace.length() > MAX_MESSAGE_BYTES) {
+      stacktrace = stacktrace.substring(0, MAX_MESSAGE_BYTES);
     }
 
     HttpRequest request = HttpRequest.newBuilder(url)
@@ -62,25 +70,22 @@ public class NtfyNotifier implements Notifier {
     if (updates.isEmpty()) {
       return;
     }
-    LOGGER.info("Notifying in ntfy");
-
-    for (LighthouseContainerUpdate update : updates) {
-      HttpRequest request = HttpRequest.newBuilder(url)
-        .header("X-Title", "Lighthouse" + hostname.map(h -> " (" + h + ")").orElse(""))
-        .header("X-Tags", "mailbox_with_mail")
-        .header("X-Icon", LIGHTHOUSE_LOGO)
-        .header("X-Click", "https://hub.docker.com/r/%s".formatted(update.imageUpdate().imageIdentifier().image()))
-        .POST(BodyPublishers.ofString(buildPayload(update)))
-        .build();
-      send(request);
-    }
-
-    try {
-      Thread.sleep(2000);
-    } catch (InterruptedException e) {
-      // Update notifications should be sent after image notifications, how long delayed is not important
-      LOGGER.debug("Interrupted while waiting for update notifications to be sent", e);
-    }
+    LOGGER.info("Notifying for {} update(s) in ntfy", updates.size());
+
+    Map<String, List<String>> payloadsByImage = updates.stream()
+      .collect(Collectors.groupingBy(
+        it -> it.imageUpdate().imageIdentifier().image(),
+        LinkedHashMap::new,
+        Collectors.mapping(this::buildPayload, Collectors.toList())
+      ));
+    sendBatched(
+      "Lighthouse: %d update(s)".formatted(updates.size()),
+      "mailbox_with_mail",
+      detailProvider.footer().map(it -> it + "\n\n").orElse(""),
+      payloadsByImage
+    );
+
+    // Requests are sent one after another, so the update action always arrives after the image notifications
     send(buildUpdateRequest(updates.size()));
   }
 
@@ -91,35 +96,99 @@ public class NtfyNotifier implements Notifier {
     }
     LOGGER.info("Notifying for {} tag update(s) in ntfy", tagUpdates.size());
 
-    for (LighthouseTagUpdate tagUpdate : tagUpdates) {
-      HttpRequest request = HttpRequest.newBuilder(url)
-        .header("X-Title", "Lighthouse Version Upgrade" + hostname.map(h -> " (" + h + ")").orElse(""))
-        .header("X-Tags", "arrow_up,package")
-        .header("X-Icon", LIGHTHOUSE_LOGO)
-        .header("X-Click", "https://hub.docker.com/r/%s".formatted(tagUpdate.imageIdentifier().image()))
-        .POST(BodyPublishers.ofString(buildTagUpdatePayload(tagUpdate)))
-        .build();
-      send(request);
+    Map<String, List<String>> payloadsByImage = tagUpdates.stream()
+      .collect(Collectors.groupingBy(
+        it -> it.imageIdentifier().image(),
+        LinkedHashMap::new,
+        Collectors.mapping(this::buildTagUpdatePayload, Collectors.toList())
+      ));
+    sendBatched(
+      "Lighthouse: %d version upgrade(s)".formatted(tagUpdates.size()),
+      "arrow_up,package",
+      "Manual update required - Tag/version change\n\n",
+      payloadsByImage
+    );
+  }
+
+  /**
+   * Packs the payloads into as few messages as possible. Payloads of the same image are kept in one message, unless
+   * they do not fit into a single one. Those are sent as an attachment instead.
+   *
+   * @param title the title of the messages
+   * @param tags the ntfy tags of the messages
+   * @param header a header prepended to every message
+   * @param payloadsByImage the payloads grouped by their image
+   */
+  private void sendBatched(String title, String tags, String header, Map<String, List<String>> payloadsByImage) {
+    StringBuilder message = new StringBuilder(header);
+    List<String> imagesInMessage = new ArrayList<>();
+
+    for (Entry<String, List<String>> entry : payloadsByImage.entrySet()) {
+      String block = String.join("\n", entry.getValue()) + "\n";
+
+      if (utf8Length(message) + utf8Length(block) > MAX_MESSAGE_BYTES && !imagesInMessage.isEmpty()) {
+        send(buildBatchRequest(title, tags, imagesInMessage, message.toString()));
+        message = new StringBuilder(header);
+        imagesInMessage.clear();
+      }
+      if (utf8Length(message) + utf8Length(block) > MAX_MESSAGE_BYTES) {
+        send(buildAttachmentRequest(title, tags, entry.getKey(), entry.getValue().size(), header + block));
+        continue;
+      }
+
+      message.append(block);
+      imagesInMessage.add(entry.getKey());
+    }
+
+    if (!imagesInMessage.isEmpty()) {
+      send(buildBatchRequest(title, tags, imagesInMessage, message.toString()));
     }
   }
 
+  private HttpRequest buildBatchRequest(String title, String tags, List<String> images, String message) {
+    HttpRequest.Builder request = HttpRequest.newBuilder(url)
+      .header("X-Title", title + hostname.map(h -> " (" + h + ")").orElse(""))
+      .header("X-Tags", tags)
+      .header("X-Icon", LIGHTHOUSE_LOGO)
+      .POST(BodyPublishers.ofString(message));
+    if (images.size() == 1) {
+      request.header("X-Click", "https://hub.docker.com/r/%s".formatted(images.getFirst()));
+    }
+    return request.build();
+  }
+
+  private HttpRequest buildAttachmentRequest(String title, String tags, String image, int count, String content) {
+    // ntfy turns a PUT body into an attachment if a filename is given. The message is taken from the header then.
+    return HttpRequest.newBuilder(url)
+      .header("X-Title", title + hostname.map(h -> " (" + h + ")").orElse(""))
+      .header("X-Tags", tags)
+      .header("X-Icon", LIGHTHOUSE_LOGO)
+      .header("X-Click", "https://hub.docker.com/r/%s".formatted(image))
+      .header("X-Message", "%d update(s) for %s, see the attached file for details".formatted(count, image))
+      .header("X-Filename", image.replaceAll("[^A-Za-z0-9._-]", "_") + ".txt")
+      .PUT(BodyPublishers.ofString(content))
+      .build();
+  }
+
+  private static int utf8Length(CharSequence text) {
+    return text.toString().getBytes(StandardCharsets.UTF_8).length;
+  }
+
   private void send(HttpRequest request) {
     try {
       LOGGER.debug("Sending webhook {}", request.bodyPublisher().orElse(BodyPublishers.noBody()));
 
-      HttpResponse<String> response = httpClient.send(request, BodyHandlers.ofString());
-      if (response.statusCode() != 200 && response.statusCode() != 204) {
-        LOGGER.warn("Failed to notify (HTTP {}): {}", response.statusCode(), response.body());
-      }
+      sender.send(request);
     } catch (IOException | InterruptedException e) {
       LOGGER.warn("Failed to notify!", e);
+      throw new RuntimeException("Failed to notify!", e);
     }
   }
 
   private String buildPayload(LighthouseContainerUpdate update) {
     LighthouseImageUpdate image = update.imageUpdate();
 
-    return """
+    StringBuilder payload = new StringBuilder("""
       Remote: %s
       Container: %s
       Images: %s
@@ -131,13 +200,16 @@ public class NtfyNotifier implements Notifier {
         String.join(", ", image.sourceImageNames()),
         image.remoteImageMetadata().map(m -> "%s by %s".formatted(m.updateTime(), m.updatedBy())).orElse("unknown"),
         image.remoteManifestDigest()
-      );
+      ));
+    for (UpdateDetail detail : detailProvider.detailsFor(update)) {
+      payload.append(detail.name()).append(": ").append(detail.value()).append('\n');
+    }
+
+    return payload.toString();
   }
 
   private String buildTagUpdatePayload(LighthouseTagUpdate tagUpdate) {
     return """
-      Manual update required - Tag/version change
-      
       Image: %s
       Current: %s → New: %s
       Containers: %s
@@ -0,0 +1,141 @@
+package de.ialistannen.lighthouse.notifier;
+
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sends HTTP requests to notification endpoints, retrying on rate limits and transient failures.
+ * <p>
+ * A 429 response waits for the {@code Retry-After} header (seconds, fractional for discord) before retrying. Discord
+ * additionally announces exhausted buckets with {@code X-RateLimit-Remaining: 0} and
+ * {@code X-RateLimit-Reset-After}, in which case the <em>next</em> request waits until the bucket resets. Server errors
+ * and I/O errors are retried with exponential backoff.
+ * <p>
+ * All attempts of a request, including the waits between them, must finish within {@link #MAX_SEND_TIME}. A check
+ * cycle only marks its updates as notified if their delivery finished in time, so this needs to stay well below the
+ * time it waits.
+ */
+class RateLimitedHttpSender {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(RateLimitedHttpSender.class);
+  private static final int MAX_ATTEMPTS = 5;
+  private static final Duration INITIAL_BACKOFF = Duration.ofSeconds(1);
+  static final Duration MAX_SEND_TIME = Duration.ofMinutes(2);
+  private static final Duration MAX_WAIT = MAX_SEND_TIME;
+
+  private final HttpClient httpClient;
+  private Instant blockedUntil;
+
+  RateLimitedHttpSender(HttpClient httpClient) {
+    this.httpClient = httpClient;
+    this.blockedUntil = Instant.EPOCH;
+  }
+
+  /**
+   * Sends the request until it succeeds or the attempts are exhausted.
+   *
+   * @param request the request to send
+   * @return the successful response
+   * @throws IOException if the request did not succeed
+   * @throws InterruptedException if interrupted while sending or waiting
+   */
+  synchronized HttpResponse<String> send(HttpRequest request) throws IOException, InterruptedException {
+    Instant deadline = Instant.now().plus(MAX_SEND_TIME);
+    Instant retryAt = Instant.now();
+    Duration backoff = INITIAL_BACKOFF;
+    IOException lastError = null;
+
+    for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+      Instant startAt = blockedUntil.isAfter(retryAt) ? blockedUntil : retryAt;
+      if (!startAt.isBefore(deadline)) {
+        LOGGER.info("Giving up on {}, the next attempt would exceed {}", request.uri().getHost(), MAX_SEND_TIME);
+        break;
+      }
+      waitUntil(startAt);
+
+      HttpResponse<String> response;
+      try {
+        response = httpClient.send(withTimeout(request, deadline), BodyHandlers.ofString());
+      } catch (IOException e) {
+        LOGGER.info("Failed to send notification (attempt {}/{})", attempt, MAX_ATTEMPTS, e);
+        lastError = e;
+        retryAt = Instant.now().plus(backoff);
+        backoff = backoff.multipliedBy(2);
+        continue;
+      }
+
+      rememberBucketReset(response);
+
+      int status = response.statusCode();
+      if (status >= 200 && status < 300) {
+        return response;
+      }
+      lastError = new IOException("Failed to notify (HTTP " + status + "): " + response.body());
+
+      if (status == 429) {
+        Duration wait = parseSeconds(response, "Retry-After").orElse(backoff);
+        LOGGER.info("Rate limited by {}, retrying in {}", request.uri().getHost(), wait);
+        blockedUntil = Instant.now().plus(wait);
+      } else if (status >= 500) {
+        LOGGER.info("Server error {} from {}, retrying in {}", status, request.uri().getHost(), backoff);
+        retryAt = Instant.now().plus(backoff);
+      } else {
+        // Client errors will not fix themselves
+        throw lastError;
+      }
+      backoff = backoff.multipliedBy(2);
+    }
+
+    throw lastError != null ? lastError : new IOException("Could not send notification within " + MAX_SEND_TIME);
+  }
+
+  /**
+   * Limits a single attempt to the time left, so a hanging connection can not exceed {@link #MAX_SEND_TIME}.
+   */
+  private static HttpRequest withTimeout(HttpRequest request, Instant deadline) {
+    Duration remaining = Duration.between(Instant.now(), deadline);
+    if (remaining.compareTo(Duration.ofMillis(1)) < 0) {
+      remaining = Duration.ofMillis(1);
+    }
+    return HttpRequest.newBuilder(request, (_, _) -> true).timeout(remaining).build();
+  }
+
+  private void rememberBucketReset(HttpResponse<?> response) {
+    boolean exhausted = response.headers()
+      .firstValue("X-RateLimit-Remaining")
+      .map(it -> it.equals("0"))
+      .orElse(false);
+    if (exhausted) {
+      parseSeconds(response, "X-RateLimit-Reset-After")
+        .ifPresent(wait -> blockedUntil = Instant.now().plus(wait));
+    }
+  }
+
+  private static Optional<Duration> parseSeconds(HttpResponse<?> response, String header) {
+    try {
+      return response.headers()
+        .firstValue(header)
+        .map(Double::parseDouble)
+        .map(seconds -> Duration.ofMillis((long) Math.ceil(seconds * 1000)))
+        .map(wait -> wait.compareTo(MAX_WAIT) > 0 ? MAX_WAIT : wait);
+    } catch (NumberFormatException e) {
+      // Retry-After may also be an HTTP date, which none of our endpoints use. Fall back to our own backoff.
+      return Optional.empty();
+    }
+  }
+
+  private static void waitUntil(Instant instant) throws InterruptedException {
+    long millis = Duration.between(Instant.now(), instant).toMillis();
+    if (millis > 0) {
+      Thread.sleep(millis);
+    }
+  }
+}
@@ -0,0 +1,11 @@
+package de.ialistannen.lighthouse.notifier;
+
+/**
+ * An additional piece of information shown for an update in notifications.
+ *
+ * @param name the name of the detail, e.g. {@code "Outdated for"}
+ * @param value the human-readable value
+ */
+public record UpdateDetail(String name, String value) {
+
+}
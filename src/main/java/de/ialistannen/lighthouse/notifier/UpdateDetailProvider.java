@@ -0,0 +1,56 @@
+package de.ialistannen.lighthouse.notifier;
+
+import de.ialistannen.lighthouse.model.LighthouseContainerUpdate;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * Contributes additional details to update notifications.
+ */
+@FunctionalInterface
+public interface UpdateDetailProvider {
+
+  /**
+   * @param update the update that is about to be notified
+   * @return additional details to show for it
+   */
+  List<UpdateDetail> detailsFor(LighthouseContainerUpdate update);
+
+  /**
+   * @return a short text to add to the footer of update notifications
+   */
+  default Optional<String> footer() {
+    return Optional.empty();
+  }
+
+  /**
+   * @return a provider that never contributes anything
+   */
+  static UpdateDetailProvider none() {
+    return _ -> List.of();
+  }
+
+  /**
+   * @param providers the providers to combine
+   * @return a provider returning the details of all given providers, in order
+   */
+  static UpdateDetailProvider combine(List<UpdateDetailProvider> providers) {
+    return new UpdateDetailProvider() {
+      @Override
+      public List<UpdateDetail> detailsFor(LighthouseContainerUpdate update) {
+        return providers.stream()
+          .flatMap(it -> it.detailsFor(update).stream())
+          .toList();
+      }
+
+      @Override
+      public Optional<String> footer() {
+        String footer = providers.stream()
+          .flatMap(it -> it.footer().stream())
+          .collect(Collectors.joining(" · "));
+        return footer.isEmpty() ? Optional.empty() : Optional.of(footer);
+      }
+    };
+  }
+}
@@ -22,10 +22,19 @@ public class DockerLibraryHelper {
   private final Set<String> libraryImages;
 
   public DockerLibraryHelper(HttpClient client) throws IOException, URISyntaxException, InterruptedException {
-    this.libraryImages = fetchImages(client);
+    this(fetchImages(client));
   }
 
-  private Set<String> fetchImages(HttpClient client) throws IOException, URISyntaxException, InterruptedException {
+  /**
+   * Creates a helper with a fixed set of official images, without asking GitHub.
+   *
+   * @param libraryImages the names of the official images, e.g. {@code "nginx"}
+   */
+  public DockerLibraryHelper(Set<String> libraryImages) {
+    this.libraryImages = Set.copyOf(libraryImages);
+  }
+
+  private static Set<String> fetchImages(HttpClient client) throws IOException, URISyntaxException, InterruptedException {
     HttpRequest request = HttpRequest.newBuilder(
         new URI("https://api.github.com/repos/docker-library/official-images/contents/library")
       )
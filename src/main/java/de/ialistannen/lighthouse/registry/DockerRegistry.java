@@ -5,6 +5,10 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import de.ialistannen.lighthouse.auth.DockerRegistryAuth;
+import de.ialistannen.lighthouse.metrics.Counter;
+import de.ialistannen.lighthouse.metrics.Histogram;
+import de.ialistannen.lighthouse.metrics.MetricsRegistry;
+import de.ialistannen.lighthouse.metrics.RegistryRequestEvent;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
@@ -12,7 +16,9 @@ import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpRequest.BodyPublishers;
 import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandler;
 import java.net.http.HttpResponse.BodyHandlers;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
@@ -36,19 +42,76 @@ public class DockerRegistry {
   private final HttpClient client;
   private final ObjectMapper objectMapper;
   private final List<DockerRegistryAuth> registryAuths;
+  private final Histogram requestLatency;
+  private final Counter requests;
 
   public DockerRegistry(
     DockerLibraryHelper libraryHelper,
     HttpClient client,
-    List<DockerRegistryAuth> registryAuths
+    List<DockerRegistryAuth> registryAuths,
+    MetricsRegistry metrics
   ) {
     this.libraryHelper = libraryHelper;
     this.client = client;
     this.registryAuths = registryAuths;
+    this.requestLatency = metrics.histogram(
+      "lighthouse_registry_request_seconds",
+      "Latency of registry requests",
+      "host", "type"
+    );
+    this.requests = metrics.counter(
+      "lighthouse_registry_requests_total",
+      "Registry requests by response status, 'error' if no response was received",
+      "host", "type", "status"
+    );
 
     this.objectMapper = new ObjectMapper();
   }
 
+  /**
+   * Sends a request, records its latency and status and emits a {@link RegistryRequestEvent}.
+   *
+   * @param request the request
+   * @param bodyHandler the body handler
+   * @param type the kind of request (challenge, token, manifest or tags)
+   * @param image the image the request is for
+   * @return the response
+   */
+  private <T> HttpResponse<T> send(HttpRequest request, BodyHandler<T> bodyHandler, String type, String image)
+    throws IOException, InterruptedException {
+    String host = request.uri().getAuthority();
+    RegistryRequestEvent event = new RegistryRequestEvent();
+    event.begin();
+    long start = System.nanoTime();
+    HttpResponse<T> response = null;
+    try {
+      response = client.send(request, bodyHandler);
+      requests.increment(host, type, String.valueOf(response.statusCode()));
+      return response;
+    } catch (IOException | InterruptedException e) {
+      requests.increment(host, type, "error");
+      throw e;
+    } finally {
+      requestLatency.labels(host, type).observeSince(start);
+      event.end();
+      if (event.shouldCommit()) {
+        event.image = image;
+        event.registry = host;
+        event.type = type;
+        event.status = response == null ? -1 : response.statusCode();
+        event.bytes = response == null ? -1 : bodySize(response);
+        event.commit();
+      }
+    }
+  }
+
+  private static long bodySize(HttpResponse<?> response) {
+    if (response.body() instanceof String body) {
+      return body.getBytes(StandardCharsets.UTF_8).length;
+    }
+    return response.headers().firstValueAsLong("content-length").orElse(-1);
+  }
+
   /**
    * Returns the value of the {@code "Authorization"} header to use for communicating with a registry.
    *
@@ -73,7 +136,7 @@ public class DockerRegistry {
       challengeRequest.method(),
       challengeRequest.headers()
     );
-    HttpResponse<Void> challengeResponse = client.send(challengeRequest, BodyHandlers.discarding());
+    HttpResponse<Void> challengeResponse = send(challengeRequest, BodyHandlers.discarding(), "challenge", image);
 
     LOGGER.debug(
       "Got response {}-{}: {}, {}",
@@ -104,7 +167,7 @@ public class DockerRegistry {
     URI authUrl = new URI(realm + "?service=" + service + "&scope=" + scope);
     LOGGER.debug("Build auth URL '{}' for '{}'", authUrl, image);
 
-    return getBearerHeader(authUrl, registryUrl);
+    return getBearerHeader(authUrl, registryUrl, image);
   }
 
   private Optional<String> getAuthForRegistry(String registryUrl) throws URISyntaxException {
@@ -164,7 +227,7 @@ public class DockerRegistry {
       .method("HEAD", BodyPublishers.noBody())
       .build();
 
-    HttpResponse<String> response = client.send(request, BodyHandlers.ofString());
+    HttpResponse<String> response = send(request, BodyHandlers.ofString(), "manifest", image + ":" + tag);
     if (response.statusCode() != 200) {
       LOGGER.info(
         "Failed to fetch image digest tag for '{}':'{}' ({}): {}",
@@ -208,7 +271,7 @@ public class DockerRegistry {
         .GET()
         .build();
 
-      HttpResponse<String> response = client.send(request, BodyHandlers.ofString());
+      HttpResponse<String> response = send(request, BodyHandlers.ofString(), "tags", image);
       if (response.statusCode() != 200) {
         LOGGER.info(
           "Failed to fetch image tags for '{}' ({}): {}",
@@ -242,14 +305,14 @@ public class DockerRegistry {
     return tags;
   }
 
-  private String getBearerHeader(URI authUrl, String registryUrl)
+  private String getBearerHeader(URI authUrl, String registryUrl, String image)
     throws IOException, InterruptedException, URISyntaxException {
 
     var requestBuilder = HttpRequest.newBuilder(authUrl).GET();
     getAuthForRegistry(registryUrl).ifPresent(auth -> requestBuilder.header("Authorization", "Basic " + auth));
 
     HttpRequest request = requestBuilder.build();
-    HttpResponse<String> response = client.send(request, BodyHandlers.ofString());
+    HttpResponse<String> response = send(request, BodyHandlers.ofString(), "token", image);
     if (response.statusCode() != 200) {
       LOGGER.error(
         "Unsuccessful request to registry at {} with status {}. Body: {}, header: {}",
@@ -281,6 +344,18 @@ public class DockerRegistry {
     return matcher.group(1);
   }
 
+  /**
+   * @param image the image name
+   * @return the host (and port) of the registry serving the image, "unknown" if the name is invalid
+   */
+  public String getRegistryHost(String image) {
+    try {
+      return URI.create(getRegistryUrl(image)).getAuthority();
+    } catch (URISyntaxException | IllegalArgumentException e) {
+      return "unknown";
+    }
+  }
+
   private URI getChallengeUrl(String image) throws URISyntaxException {
     return new URI(getRegistryUrl(image) + "/v2/");
   }
@@ -0,0 +1,94 @@
+package de.ialistannen.lighthouse.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Helpers for crash-safe file writes.
+ */
+public class AtomicFiles {
+
+  /**
+   * Replaces the file at the given path with the given content. The content is written to a temporary file in the same
+   * directory, synced to disk and then renamed over the target. Readers therefore either see the old or the new content,
+   * never a partially written file.
+   *
+   * @param target the file to replace
+   * @param content the new content
+   * @throws IOException if writing fails
+   */
+  public static void writeAtomically(Path target, byte[] content) throws IOException {
+    Path directory = target.toAbsolutePath().getParent();
+    Files.createDirectories(directory);
+
+    Path temp = Files.createTempFile(directory, target.getFileName().toString(), ".tmp");
+    try {
+      try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+        writeFully(channel, content);
+        channel.force(true);
+      }
+      Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+
+    syncDirectory(directory);
+  }
+
+  /**
+   * Appends the given lines to a file and syncs it to disk before returning.
+   * <p>
+   * A crash during an earlier append can leave a torn last line without a line break behind. The content then starts on
+   * a new line, so only the torn line is lost when reading the file, not the first line appended after it.
+   *
+   * @param target the file to append to. Created if needed.
+   * @param content the lines to append, each terminated by a line break
+   * @throws IOException if writing fails
+   */
+  public static void appendDurably(Path target, byte[] content) throws IOException {
+    Files.createDirectories(target.toAbsolutePath().getParent());
+
+    // Not opened with APPEND, as that can not be combined with reading the last byte. All callers write serially.
+    try (FileChannel channel = FileChannel.open(
+      target,
+      StandardOpenOption.CREATE,
+      StandardOpenOption.READ,
+      StandardOpenOption.WRITE
+    )) {
+      long size = channel.size();
+      channel.position(size);
+      if (size > 0 && lastByte(channel, size) != '\n') {
+        writeFully(channel, new byte[]{'\n'});
+      }
+      writeFully(channel, content);
+      channel.force(true);
+    }
+  }
+
+  private static byte lastByte(FileChannel channel, long size) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(1);
+    // Positional reads do not move the channel position, so the append still starts at the end
+    channel.read(buffer, size - 1);
+    return buffer.get(0);
+  }
+
+  private static void writeFully(FileChannel channel, byte[] content) throws IOException {
+    ByteBuffer buffer = ByteBuffer.wrap(content);
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+
+  private static void syncDirectory(Path directory) {
+    // Persists the rename itself. Not supported on every platform, and losing it only means we might see the old file.
+    try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+      channel.force(true);
+    } catch (IOException ignored) {
+    }
+  }
+}
@@ -1,94 +1,223 @@
 package de.ialistannen.lighthouse.storage;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import de.ialistannen.lighthouse.metrics.UpdateFilterEvent;
 import de.ialistannen.lighthouse.model.LighthouseContainerUpdate;
 import de.ialistannen.lighthouse.model.LighthouseTagUpdate;
 import de.ialistannen.lighthouse.updates.FilterException;
 import de.ialistannen.lighthouse.updates.UpdateFilter;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * An {@link UpdateFilter} persisting known updates to disk.
+ * <p>
+ * The state is kept in memory and stored as a snapshot plus an append-only journal next to it. Every commit appends
+ * the newly notified updates to the journal and syncs it to disk. A background task periodically compacts the journal
+ * into a new snapshot (write to a temporary file, then rename) and prunes entries whose local image is gone.
+ */
 public class FileUpdateFilter implements UpdateFilter {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(FileUpdateFilter.class);
+  private static final Duration COMPACTION_INTERVAL = Duration.ofHours(6);
 
   private final Path storagePath;
+  private final Path journalPath;
+  private final Duration pruneTtl;
+  private final Predicate<String> localImageExists;
   private final ObjectMapper objectMapper;
-  private UpdateDatabase currentDatabase;
 
-  public FileUpdateFilter(Path storagePath) {
+  private final Map<String, KnownUpdate> knownUpdates;
+  private final Map<String, KnownTagUpdate> knownTagUpdates;
+  private final List<KnownUpdate> pendingUpdates;
+  private final List<KnownTagUpdate> pendingTagUpdates;
+  private boolean loaded;
+
+  /**
+   * Creates a new filter.
+   *
+   * @param storagePath the path to the snapshot. The journal is stored next to it.
+   * @param pruneTtl how long to keep entries for images that no longer exist locally
+   * @param localImageExists checks whether an image (id or {@code name:tag}) still exists locally
+   */
+  public FileUpdateFilter(Path storagePath, Duration pruneTtl, Predicate<String> localImageExists) {
     this.storagePath = storagePath;
-    this.objectMapper = new ObjectMapper();
+    this.journalPath = storagePath.resolveSibling(storagePath.getFileName() + ".journal");
+    this.pruneTtl = pruneTtl;
+    this.localImageExists = localImageExists;
+    this.objectMapper = new ObjectMapper()
+      .registerModule(new JavaTimeModule())
+      .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+    this.knownUpdates = new HashMap<>();
+    this.knownTagUpdates = new HashMap<>();
+    this.pendingUpdates = new ArrayList<>();
+    this.pendingTagUpdates = new ArrayList<>();
+  }
+
+  /**
+   * Starts the background compaction of the journal.
+   */
+  public void startCompaction() {
+    ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(
+      Thread.ofPlatform().daemon().name("update-filter-compaction").factory()
+    );
+    executor.scheduleWithFixedDelay(
+      () -> {
+        try {
+          compact();
+        } catch (Exception e) {
+          LOGGER.warn("Failed to compact update database", e);
+        }
+      },
+      COMPACTION_INTERVAL.toMinutes(),
+      COMPACTION_INTERVAL.toMinutes(),
+      TimeUnit.MINUTES
+    );
+  }
+
+  private void ensureLoaded() throws IOException {
+    if (loaded) {
+      return;
+    }
+    Files.createDirectories(storagePath.toAbsolutePath().getParent());
+    UpdateFilterEvent event = new UpdateFilterEvent();
+    event.begin();
+
+    if (Files.exists(storagePath)) {
+      event.bytes += Files.size(storagePath);
+      UpdateDatabase database = objectMapper.readValue(Files.readString(storagePath), UpdateDatabase.class);
+      if (database.knownUpdates() != null) {
+        database.knownUpdates().values().forEach(this::putKnownUpdate);
+      }
+      if (database.knownTagUpdates() != null) {
+        database.knownTagUpdates().values().forEach(this::putKnownTagUpdate);
+      }
+    }
+
+    if (Files.exists(journalPath)) {
+      event.bytes += Files.size(journalPath);
+      replayJournal();
+    }
+
+    loaded = true;
+    commitEvent(event, "load", storagePath);
+    LOGGER.info("Loaded {} already known update(s)", knownUpdates.size());
+  }
+
+  private void replayJournal() throws IOException {
+    List<String> lines = Files.readAllLines(journalPath, StandardCharsets.UTF_8);
+    for (int i = 0; i < lines.size(); i++) {
+      String line = lines.get(i);
+      if (line.isBlank()) {
+        continue;
+      }
+      try {
+        JournalEntry entry = objectMapper.readValue(line, JournalEntry.class);
+        if (entry.knownUpdate() != null) {
+          putKnownUpdate(entry.knownUpdate());
+        }
+        if (entry.knownTagUpdate() != null) {
+          putKnownTagUpdate(entry.knownTagUpdate());
+        }
+      } catch (JsonProcessingException e) {
+        // A crash during an append can leave a torn last line behind. Appends after it start on a new line, so only the
+        // torn entry itself is lost.
+        LOGGER.warn("Skipping corrupt journal entry {} in {}", i + 1, journalPath, e);
+      }
+    }
   }
 
-  private UpdateDatabase loadDatabase() throws IOException {
-    if (Files.notExists(storagePath)) {
-      Files.createDirectories(storagePath.getParent());
-      return new UpdateDatabase(new HashMap<>(), new HashMap<>());
+  private void putKnownUpdate(KnownUpdate update) {
+    // Entries from older versions have no timestamp, start their TTL now
+    if (update.notifiedAt() == null) {
+      update = update.withNotifiedAt(Instant.now());
     }
-    return objectMapper.readValue(Files.readString(storagePath), UpdateDatabase.class);
+    knownUpdates.put(update.remoteManifest(), update);
   }
 
-  private void saveDatabase(UpdateDatabase database) throws IOException {
-    Files.writeString(storagePath, objectMapper.writeValueAsString(database));
+  private void putKnownTagUpdate(KnownTagUpdate update) {
+    if (update.notifiedAt() == null) {
+      update = update.withNotifiedAt(Instant.now());
+    }
+    knownTagUpdates.put(update.imageWithTag(), update);
   }
 
   @Override
-  public List<LighthouseContainerUpdate> filter(List<LighthouseContainerUpdate> updates) throws FilterException {
+  public synchronized List<LighthouseContainerUpdate> filter(List<LighthouseContainerUpdate> updates)
+    throws FilterException {
     // Checking for an empty list here would be quite a bit faster - but also make errors harder to detect
     // (you actually need an update then!)
     try {
-      currentDatabase = loadDatabase();
-
-      LOGGER.info("Loaded {} already known update(s)", currentDatabase.knownUpdates().size());
-
-      List<LighthouseContainerUpdate> filtered = updates.stream()
-        .filter(it -> {
-          // Use the remote manifest as key: We want to notify if there is yet another update for our local image!
-          boolean known = currentDatabase.knownUpdates().containsKey(it.imageUpdate().remoteManifestDigest());
-          if (known) {
-            LOGGER.info(
-              "Skipping notify for {} - {}",
-              it.imageUpdate().sourceImageNames(),
-              it.imageUpdate().sourceImageId()
-            );
-            return false;
-          }
-          return true;
-        })
-        .toList();
-
-      Map<String, KnownUpdate> newKnownUpdates = new HashMap<>(currentDatabase.knownUpdates());
-      for (LighthouseContainerUpdate update : filtered) {
-        String remoteManifest = update.imageUpdate().remoteManifestDigest();
-        String localImageId = update.imageUpdate().sourceImageId();
-        newKnownUpdates.put(
-          remoteManifest,
-          new KnownUpdate(remoteManifest, localImageId, update.imageUpdate().sourceImageNames(), update.names())
-        );
-      }
-      currentDatabase = new UpdateDatabase(newKnownUpdates, currentDatabase.knownTagUpdates());
-
-      return filtered;
+      ensureLoaded();
     } catch (IOException e) {
       throw new FilterException("Failed to load database from " + storagePath, e);
     }
+
+    List<LighthouseContainerUpdate> filtered = updates.stream()
+      .filter(it -> {
+        // Use the remote manifest as key: We want to notify if there is yet another update for our local image!
+        boolean known = knownUpdates.containsKey(it.imageUpdate().remoteManifestDigest());
+        if (known) {
+          LOGGER.info(
+            "Skipping notify for {} - {}",
+            it.imageUpdate().sourceImageNames(),
+            it.imageUpdate().sourceImageId()
+          );
+          return false;
+        }
+        return true;
+      })
+      .toList();
+
+    pendingUpdates.clear();
+    Instant now = Instant.now();
+    for (LighthouseContainerUpdate update : filtered) {
+      pendingUpdates.add(new KnownUpdate(
+        update.imageUpdate().remoteManifestDigest(),
+        update.imageUpdate().sourceImageId(),
+        update.imageUpdate().sourceImageNames(),
+        update.names(),
+        now
+      ));
+    }
+
+    return filtered;
   }
 
   @Override
-  public List<LighthouseTagUpdate> filterTags(List<LighthouseTagUpdate> updates) {
+  public synchronized List<LighthouseTagUpdate> filterTags(List<LighthouseTagUpdate> updates)
+    throws FilterException {
+    try {
+      ensureLoaded();
+    } catch (IOException e) {
+      throw new FilterException("Failed to load database from " + storagePath, e);
+    }
+
     List<LighthouseTagUpdate> filteredUpdates = updates.stream()
       .filter(it -> {
-        // Use the remote manifest as key: We want to notify if there is yet another update for our local image!
-        boolean known = currentDatabase.knownTagUpdates().containsKey(it.imageIdentifier().nameWithTag());
+        boolean known = knownTagUpdates.containsKey(it.imageIdentifier().nameWithTag());
         if (known) {
           LOGGER.info(
             "Skipping notify for {} -> {}",
@@ -101,44 +230,119 @@ public class FileUpdateFilter implements UpdateFilter {
       })
       .toList();
 
-    Map<String, KnownTagUpdate> newKnownTagUpdates = new HashMap<>(
-      currentDatabase.knownTagUpdates() == null ? Map.of() : currentDatabase.knownTagUpdates()
-    );
+    pendingTagUpdates.clear();
+    Instant now = Instant.now();
     for (LighthouseTagUpdate update : filteredUpdates) {
-      String imageWithTag = update.imageIdentifier().nameWithTag();
-      newKnownTagUpdates.put(
-        imageWithTag,
-        new KnownTagUpdate(
-          update.imageIdentifier().image(),
-          update.currentTag(),
-          update.newTag()
-        )
-      );
+      pendingTagUpdates.add(new KnownTagUpdate(
+        update.imageIdentifier().image(),
+        update.currentTag(),
+        update.newTag(),
+        now
+      ));
     }
-    currentDatabase = new UpdateDatabase(currentDatabase.knownUpdates(), newKnownTagUpdates);
 
     return filteredUpdates;
   }
 
   @Override
-  public void commit() throws FilterException {
+  public synchronized void commit() throws FilterException {
+    if (pendingUpdates.isEmpty() && pendingTagUpdates.isEmpty()) {
+      return;
+    }
+    UpdateFilterEvent event = new UpdateFilterEvent();
+    event.begin();
     try {
-      saveDatabase(currentDatabase);
-      LOGGER.debug("Committed database to {}", storagePath);
+      StringBuilder journal = new StringBuilder();
+      for (KnownUpdate update : pendingUpdates) {
+        journal.append(objectMapper.writeValueAsString(new JournalEntry(update, null))).append('\n');
+      }
+      for (KnownTagUpdate update : pendingTagUpdates) {
+        journal.append(objectMapper.writeValueAsString(new JournalEntry(null, update))).append('\n');
+      }
+      byte[] journalBytes = journal.toString().getBytes(StandardCharsets.UTF_8);
+      AtomicFiles.appendDurably(journalPath, journalBytes);
+      event.bytes = journalBytes.length;
+      event.entries = pendingUpdates.size() + pendingTagUpdates.size();
+      event.end();
+
+      pendingUpdates.forEach(this::putKnownUpdate);
+      pendingTagUpdates.forEach(this::putKnownTagUpdate);
+      LOGGER.debug(
+        "Committed {} update(s) and {} tag update(s) to {}",
+        pendingUpdates.size(),
+        pendingTagUpdates.size(),
+        journalPath
+      );
+      pendingUpdates.clear();
+      pendingTagUpdates.clear();
+      if (event.shouldCommit()) {
+        event.operation = "commit";
+        event.path = journalPath.toString();
+        event.commit();
+      }
     } catch (IOException e) {
-      throw new FilterException("Failed to save database to " + storagePath, e);
+      throw new FilterException("Failed to save database to " + journalPath, e);
     }
   }
 
+  /**
+   * Commits an event covering the whole database, if it is recorded.
+   */
+  private void commitEvent(UpdateFilterEvent event, String operation, Path path) {
+    event.end();
+    if (event.shouldCommit()) {
+      event.operation = operation;
+      event.path = path.toString();
+      event.entries = knownUpdates.size() + knownTagUpdates.size();
+      event.commit();
+    }
+  }
+
+  /**
+   * Prunes stale entries, writes a fresh snapshot and truncates the journal. A crash at any point leaves either the old
+   * snapshot and full journal or the new snapshot and a (possibly redundant) journal behind. Replaying redundant
+   * journal entries is harmless.
+   *
+   * @throws IOException if writing fails
+   */
+  public synchronized void compact() throws IOException {
+    ensureLoaded();
+    UpdateFilterEvent event = new UpdateFilterEvent();
+    event.begin();
+
+    Instant pruneBefore = Instant.now().minus(pruneTtl);
+    int sizeBefore = knownUpdates.size() + knownTagUpdates.size();
+    knownUpdates.values().removeIf(
+      it -> it.notifiedAt().isBefore(pruneBefore) && !localImageExists.test(it.localImageId())
+    );
+    knownTagUpdates.values().removeIf(
+      it -> it.notifiedAt().isBefore(pruneBefore) && !localImageExists.test(it.imageWithTag())
+    );
+    int pruned = sizeBefore - knownUpdates.size() - knownTagUpdates.size();
+
+    UpdateDatabase database = new UpdateDatabase(new HashMap<>(knownUpdates), new HashMap<>(knownTagUpdates));
+    byte[] snapshot = objectMapper.writeValueAsBytes(database);
+    AtomicFiles.writeAtomically(storagePath, snapshot);
+    Files.deleteIfExists(journalPath);
+    event.bytes = snapshot.length;
+    commitEvent(event, "compact", storagePath);
+
+    LOGGER.info("Compacted update database to {} entries, pruned {}", knownUpdates.size(), pruned);
+  }
+
   @JsonSerialize
   @JsonDeserialize
   record KnownUpdate(
     String remoteManifest,
     String localImageId,
     List<String> repoTags,
-    List<String> originalContainers
+    List<String> originalContainers,
+    Instant notifiedAt
   ) {
 
+    KnownUpdate withNotifiedAt(Instant notifiedAt) {
+      return new KnownUpdate(remoteManifest, localImageId, repoTags, originalContainers, notifiedAt);
+    }
   }
 
   @JsonSerialize
@@ -146,9 +350,17 @@ public class FileUpdateFilter implements UpdateFilter {
   record KnownTagUpdate(
     String image,
     String currentTag,
-    String newTag
+    String newTag,
+    Instant notifiedAt
   ) {
 
+    String imageWithTag() {
+      return image + ":" + currentTag;
+    }
+
+    KnownTagUpdate withNotifiedAt(Instant notifiedAt) {
+      return new KnownTagUpdate(image, currentTag, newTag, notifiedAt);
+    }
   }
 
   @JsonSerialize
@@ -159,4 +371,14 @@ public class FileUpdateFilter implements UpdateFilter {
   ) {
 
   }
+
+  @JsonSerialize
+  @JsonDeserialize
+  @JsonInclude(Include.NON_NULL)
+  record JournalEntry(
+    KnownUpdate knownUpdate,
+    KnownTagUpdate knownTagUpdate
+  ) {
+
+  }
 }
@@ -0,0 +1,74 @@
+package de.ialistannen.lighthouse.storage;
+
+import de.ialistannen.lighthouse.model.LighthouseContainerUpdate;
+import de.ialistannen.lighthouse.notifier.UpdateDetail;
+import de.ialistannen.lighthouse.notifier.UpdateDetailProvider;
+import de.ialistannen.lighthouse.storage.UpdateHistory.HistoryEntry;
+import de.ialistannen.lighthouse.util.DurationFormatter;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Adds information from the {@link UpdateHistory} to notifications.
+ */
+public class HistoryDetailProvider implements UpdateDetailProvider {
+
+  private static final Duration CHURN_WINDOW = Duration.ofDays(30);
+  private static final Duration LATENCY_WINDOW = Duration.ofDays(30);
+
+  private final UpdateHistory history;
+
+  public HistoryDetailProvider(UpdateHistory history) {
+    this.history = history;
+  }
+
+  @Override
+  public List<UpdateDetail> detailsFor(LighthouseContainerUpdate update) {
+    Instant now = Instant.now();
+    List<UpdateDetail> details = new ArrayList<>();
+
+    Optional<HistoryEntry> entry = history.entry(
+      update.names().getFirst(),
+      update.imageUpdate().remoteManifestDigest()
+    );
+    entry.map(it -> it.outdatedFor(now))
+      .filter(it -> it.toMinutes() > 0)
+      .ifPresent(it -> details.add(new UpdateDetail("Outdated for", DurationFormatter.formatHuman(it))));
+
+    String baseImage = update.imageUpdate().imageIdentifier().nameWithTag();
+    long digests = history.entriesForImage(baseImage, now.minus(CHURN_WINDOW), now)
+      .stream()
+      .map(HistoryEntry::remoteDigest)
+      .distinct()
+      .count();
+    if (digests > 1) {
+      details.add(new UpdateDetail("Base image updates (30 days)", String.valueOf(digests)));
+    }
+
+    return details;
+  }
+
+  /**
+   * @return the detection and apply latency percentiles of the last 30 days, e.g.
+   *   {@code "Detected after p50 2h 5m, p90 9h 1m · Applied after p50 30m 0s, p90 1d 2h"}
+   */
+  @Override
+  public Optional<String> footer() {
+    Instant since = Instant.now().minus(LATENCY_WINDOW);
+    List<String> parts = new ArrayList<>();
+    history.detectionLatency(since).ifPresent(it -> parts.add("Detected after " + format(it)));
+    history.applyLatency(since).ifPresent(it -> parts.add("Applied after " + format(it)));
+
+    return parts.isEmpty() ? Optional.empty() : Optional.of(String.join(" · ", parts));
+  }
+
+  private static String format(LatencyPercentiles percentiles) {
+    return "p50 %s, p90 %s".formatted(
+      DurationFormatter.formatShort(percentiles.p50()),
+      DurationFormatter.formatShort(percentiles.p90())
+    );
+  }
+}
@@ -0,0 +1,41 @@
+package de.ialistannen.lighthouse.storage;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Percentiles of a set of delays, using the nearest-rank method.
+ *
+ * @param samples the number of delays
+ * @param p50 the median
+ * @param p90 the 90th percentile
+ * @param p99 the 99th percentile
+ * @param max the longest delay
+ */
+public record LatencyPercentiles(int samples, Duration p50, Duration p90, Duration p99, Duration max) {
+
+  /**
+   * @param delays the delays
+   * @return their percentiles, empty if there are none
+   */
+  public static Optional<LatencyPercentiles> of(Collection<Duration> delays) {
+    if (delays.isEmpty()) {
+      return Optional.empty();
+    }
+    List<Duration> sorted = delays.stream().sorted().toList();
+    return Optional.of(new LatencyPercentiles(
+      sorted.size(),
+      percentile(sorted, 50),
+      percentile(sorted, 90),
+      percentile(sorted, 99),
+      sorted.getLast()
+    ));
+  }
+
+  private static Duration percentile(List<Duration> sorted, int percentile) {
+    int rank = (int) Math.ceil(percentile / 100.0 * sorted.size());
+    return sorted.get(Math.max(rank, 1) - 1);
+  }
+}
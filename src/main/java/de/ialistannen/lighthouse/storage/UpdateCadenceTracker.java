@@ -0,0 +1,150 @@
+package de.ialistannen.lighthouse.storage;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Learns how often the remote digest of each image changes.
+ * <p>
+ * The mean time between changes is tracked as an exponentially weighted moving average, so the estimate follows
+ * images that change their release cadence.
+ */
+public class UpdateCadenceTracker {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(UpdateCadenceTracker.class);
+  private static final double SMOOTHING = 0.3;
+  private static final Duration FORGET_AFTER = Duration.ofDays(90);
+
+  private final Path storagePath;
+  private final ObjectMapper objectMapper;
+  private final Map<String, ImageCadence> cadences;
+
+  public UpdateCadenceTracker(Path storagePath) {
+    this.storagePath = storagePath;
+    this.objectMapper = new ObjectMapper()
+      .registerModule(new JavaTimeModule())
+      .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+    this.cadences = new HashMap<>();
+  }
+
+  /**
+   * Loads the tracked cadences from disk.
+   *
+   * @throws IOException if reading fails
+   */
+  public synchronized void load() throws IOException {
+    if (Files.notExists(storagePath)) {
+      return;
+    }
+    cadences.putAll(objectMapper.readValue(
+      Files.readString(storagePath),
+      new TypeReference<Map<String, ImageCadence>>() {
+      }
+    ));
+    LOGGER.info("Loaded update cadence of {} image(s)", cadences.size());
+  }
+
+  /**
+   * Persists the tracked cadences and forgets images that were not seen in a long time.
+   */
+  public synchronized void save() {
+    Instant forgetBefore = Instant.now().minus(FORGET_AFTER);
+    cadences.values().removeIf(it -> it.lastSeen().isBefore(forgetBefore));
+
+    try {
+      AtomicFiles.writeAtomically(storagePath, objectMapper.writeValueAsBytes(cadences));
+    } catch (IOException e) {
+      LOGGER.warn("Failed to save update cadence to {}", storagePath, e);
+    }
+  }
+
+  /**
+   * Records the current remote digest of an image.
+   *
+   * @param image the image ({@code image:tag})
+   * @param digest the current remote digest
+   * @param now the current time
+   */
+  public synchronized void observe(String image, String digest, Instant now) {
+    ImageCadence cadence = cadences.get(image);
+    if (cadence == null) {
+      cadences.put(image, new ImageCadence(digest, now, now, now, null, 0));
+      return;
+    }
+    if (cadence.digest().equals(digest)) {
+      cadences.put(image, cadence.seenAt(now));
+      return;
+    }
+
+    Double mean = cadence.meanChangeIntervalSeconds();
+    // The first change tells us nothing about the interval, we do not know when the image changed before
+    if (cadence.changes() > 0) {
+      double sinceLastChange = Duration.between(cadence.lastChange(), now).toSeconds();
+      mean = mean == null ? sinceLastChange : SMOOTHING * sinceLastChange + (1 - SMOOTHING) * mean;
+    }
+
+    LOGGER.debug("Remote digest of '{}' changed, mean change interval is now {}s", image, mean);
+    cadences.put(
+      image,
+      new ImageCadence(digest, cadence.firstSeen(), now, now, mean, cadence.changes() + 1)
+    );
+  }
+
+  /**
+   * Estimates how long it takes until the image changes again. Images that did not change in a while are assumed to
+   * change at most that often, so stable images back off over time.
+   *
+   * @param image the image ({@code image:tag})
+   * @param now the current time
+   * @return the estimated time between changes, empty if the image was never observed
+   */
+  public synchronized Optional<Duration> estimatedChangeInterval(String image, Instant now) {
+    ImageCadence cadence = cadences.get(image);
+    if (cadence == null) {
+      return Optional.empty();
+    }
+    Duration stableFor = Duration.between(cadence.lastChange(), now);
+    if (cadence.meanChangeIntervalSeconds() == null) {
+      return Optional.of(stableFor);
+    }
+    Duration mean = Duration.ofSeconds(cadence.meanChangeIntervalSeconds().longValue());
+
+    return Optional.of(mean.compareTo(stableFor) > 0 ? mean : stableFor);
+  }
+
+  /**
+   * The learned cadence of an image.
+   *
+   * @param digest the last seen remote digest
+   * @param firstSeen when the image was first observed
+   * @param lastChange when the digest last changed (or when it was first observed)
+   * @param lastSeen when the image was last observed
+   * @param meanChangeIntervalSeconds the smoothed time between changes, null if not known yet
+   * @param changes the number of observed changes
+   */
+  record ImageCadence(
+    String digest,
+    Instant firstSeen,
+    Instant lastChange,
+    Instant lastSeen,
+    Double meanChangeIntervalSeconds,
+    int changes
+  ) {
+
+    ImageCadence seenAt(Instant now) {
+      return new ImageCadence(digest, firstSeen, lastChange, now, meanChangeIntervalSeconds, changes);
+    }
+  }
+}
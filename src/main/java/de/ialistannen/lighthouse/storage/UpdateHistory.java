@@ -0,0 +1,435 @@
+package de.ialistannen.lighthouse.storage;
+
+import com.fasterxml.jackson.annotation.JsonSubTypes;
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import de.ialistannen.lighthouse.model.LighthouseContainerUpdate;
+import de.ialistannen.lighthouse.registry.RemoteImageMetadata;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A file-backed history of check cycles and the updates they found.
+ * <p>
+ * Events are appended to a JSON-lines file, which is cheap enough to do in every cycle. The full history is kept in
+ * memory, indexed by base image and detection time. Entries older than the retention are dropped when the file is
+ * compacted.
+ */
+public class UpdateHistory {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(UpdateHistory.class);
+  private static final Duration COMPACTION_INTERVAL = Duration.ofDays(1);
+
+  private final Path storagePath;
+  private final Duration retention;
+  private final ObjectMapper objectMapper;
+
+  private final Map<EntryKey, HistoryEntry> entries;
+  private final Map<String, List<EntryKey>> entriesByImage;
+  private final TreeMap<Instant, List<EntryKey>> entriesByDetection;
+  private final TreeMap<Instant, CycleRecord> cycles;
+
+  public UpdateHistory(Path storagePath, Duration retention) {
+    this.storagePath = storagePath;
+    this.retention = retention;
+    this.objectMapper = new ObjectMapper()
+      .registerModule(new JavaTimeModule())
+      .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+    this.entries = new LinkedHashMap<>();
+    this.entriesByImage = new HashMap<>();
+    this.entriesByDetection = new TreeMap<>();
+    this.cycles = new TreeMap<>();
+  }
+
+  /**
+   * Loads the history from disk, drops expired entries and starts the periodic compaction.
+   *
+   * @throws IOException if reading or compacting fails
+   */
+  public void load() throws IOException {
+    if (Files.exists(storagePath)) {
+      List<String> lines = Files.readAllLines(storagePath, StandardCharsets.UTF_8);
+      for (int i = 0; i < lines.size(); i++) {
+        if (lines.get(i).isBlank()) {
+          continue;
+        }
+        try {
+          apply(objectMapper.readValue(lines.get(i), HistoryEvent.class));
+        } catch (JsonProcessingException e) {
+          LOGGER.warn("Skipping corrupt history entry {} in {}", i + 1, storagePath, e);
+        }
+      }
+    }
+    compact();
+
+    ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(
+      Thread.ofPlatform().daemon().name("update-history-compaction").factory()
+    );
+    executor.scheduleWithFixedDelay(
+      () -> {
+        try {
+          compact();
+        } catch (Exception e) {
+          LOGGER.warn("Failed to compact update history", e);
+        }
+      },
+      COMPACTION_INTERVAL.toMinutes(),
+      COMPACTION_INTERVAL.toMinutes(),
+      TimeUnit.MINUTES
+    );
+  }
+
+  /**
+   * Records a finished check cycle and all outdated containers it found. Containers are recorded once per remote
+   * digest, later cycles finding the same update only count towards the cycle statistics.
+   *
+   * @param start the start of the cycle
+   * @param end the end of the cycle
+   * @param updates all outdated containers found in the cycle, before any filtering
+   */
+  public synchronized void recordCycle(Instant start, Instant end, List<LighthouseContainerUpdate> updates) {
+    List<HistoryEvent> events = new ArrayList<>();
+    int newlyDetected = 0;
+
+    for (LighthouseContainerUpdate update : updates) {
+      for (String container : update.names()) {
+        EntryKey key = new EntryKey(container, update.imageUpdate().remoteManifestDigest());
+        if (entries.containsKey(key)) {
+          continue;
+        }
+        newlyDetected++;
+        events.add(new DetectedEvent(new HistoryEntry(
+          container,
+          update.imageUpdate().imageIdentifier().nameWithTag(),
+          update.imageUpdate().remoteManifestDigest(),
+          update.imageUpdate().remoteImageMetadata().map(RemoteImageMetadata::updateTime).orElse(null),
+          start,
+          null
+        )));
+      }
+    }
+    events.add(new CycleEvent(new CycleRecord(start, Duration.between(start, end), updates.size(), newlyDetected)));
+
+    append(events);
+  }
+
+  /**
+   * Records that updates were applied to some containers.
+   *
+   * @param updates the applied updates
+   * @param appliedAt the time they were applied at
+   */
+  public synchronized void recordApplied(List<LighthouseContainerUpdate> updates, Instant appliedAt) {
+    List<HistoryEvent> events = new ArrayList<>();
+
+    for (LighthouseContainerUpdate update : updates) {
+      for (String container : update.names()) {
+        EntryKey key = new EntryKey(container, update.imageUpdate().remoteManifestDigest());
+        HistoryEntry entry = entries.get(key);
+        if (entry == null || entry.appliedAt() != null) {
+          continue;
+        }
+        events.add(new AppliedEvent(container, key.remoteDigest(), appliedAt));
+      }
+    }
+
+    append(events);
+  }
+
+  private void append(List<HistoryEvent> events) {
+    if (events.isEmpty()) {
+      return;
+    }
+    events.forEach(this::apply);
+
+    try {
+      StringBuilder lines = new StringBuilder();
+      for (HistoryEvent event : events) {
+        lines.append(objectMapper.writeValueAsString(event)).append('\n');
+      }
+      AtomicFiles.appendDurably(storagePath, lines.toString().getBytes(StandardCharsets.UTF_8));
+    } catch (IOException e) {
+      // The history is informational, losing a cycle is not worth aborting it
+      LOGGER.warn("Failed to append to update history at {}", storagePath, e);
+    }
+  }
+
+  private void apply(HistoryEvent event) {
+    switch (event) {
+      case DetectedEvent(HistoryEntry entry) -> {
+        EntryKey key = new EntryKey(entry.container(), entry.remoteDigest());
+        if (entries.put(key, entry) == null) {
+          entriesByImage.computeIfAbsent(entry.baseImage(), _ -> new ArrayList<>()).add(key);
+          entriesByDetection.computeIfAbsent(entry.detectedAt(), _ -> new ArrayList<>()).add(key);
+        }
+      }
+      case AppliedEvent(String container, String remoteDigest, Instant appliedAt) ->
+        entries.computeIfPresent(new EntryKey(container, remoteDigest), (_, it) -> it.withAppliedAt(appliedAt));
+      case CycleEvent(CycleRecord cycle) -> cycles.put(cycle.start(), cycle);
+    }
+  }
+
+  /**
+   * Drops everything older than the retention and rewrites the history file with the remaining entries.
+   *
+   * @throws IOException if writing fails
+   */
+  public synchronized void compact() throws IOException {
+    Instant cutoff = Instant.now().minus(retention);
+
+    cycles.headMap(cutoff).clear();
+    Map<Instant, List<EntryKey>> expired = entriesByDetection.headMap(cutoff);
+    for (List<EntryKey> keys : expired.values()) {
+      for (EntryKey key : keys) {
+        HistoryEntry entry = entries.remove(key);
+        List<EntryKey> imageEntries = entriesByImage.get(entry.baseImage());
+        imageEntries.remove(key);
+        if (imageEntries.isEmpty()) {
+          entriesByImage.remove(entry.baseImage());
+        }
+      }
+    }
+    expired.clear();
+
+    StringBuilder lines = new StringBuilder();
+    for (HistoryEntry entry : entries.values()) {
+      lines.append(objectMapper.writeValueAsString(new DetectedEvent(entry))).append('\n');
+    }
+    for (CycleRecord cycle : cycles.values()) {
+      lines.append(objectMapper.writeValueAsString(new CycleEvent(cycle))).append('\n');
+    }
+    AtomicFiles.writeAtomically(storagePath, lines.toString().getBytes(StandardCharsets.UTF_8));
+
+    LOGGER.debug("Compacted update history to {} entries and {} cycles", entries.size(), cycles.size());
+  }
+
+  /**
+   * @param baseImage the base image ({@code image:tag})
+   * @param from the earliest detection time (inclusive)
+   * @param to the latest detection time (exclusive)
+   * @return all entries for the base image detected in the given time frame, oldest first
+   */
+  public synchronized List<HistoryEntry> entriesForImage(String baseImage, Instant from, Instant to) {
+    return entriesByImage.getOrDefault(baseImage, List.of())
+      .stream()
+      .map(entries::get)
+      .filter(it -> !it.detectedAt().isBefore(from) && it.detectedAt().isBefore(to))
+      .sorted(Comparator.comparing(HistoryEntry::detectedAt))
+      .toList();
+  }
+
+  /**
+   * @param from the earliest detection time (inclusive)
+   * @param to the latest detection time (exclusive)
+   * @return all entries detected in the given time frame, oldest first
+   */
+  public synchronized List<HistoryEntry> entriesBetween(Instant from, Instant to) {
+    return entriesByDetection.subMap(from, to)
+      .values()
+      .stream()
+      .flatMap(List::stream)
+      .map(entries::get)
+      .toList();
+  }
+
+  /**
+   * @param container the container name
+   * @param remoteDigest the remote digest of the update
+   * @return the entry for the given update, if it was recorded
+   */
+  public synchronized Optional<HistoryEntry> entry(String container, String remoteDigest) {
+    return Optional.ofNullable(entries.get(new EntryKey(container, remoteDigest)));
+  }
+
+  /**
+   * Counts how many distinct remote digests were detected per base image since a given time.
+   *
+   * @param since the earliest detection time
+   * @return the number of distinct digests per base image, most churning image first
+   */
+  public synchronized Map<String, Long> churnByBaseImage(Instant since) {
+    return entriesByDetection.tailMap(since)
+      .values()
+      .stream()
+      .flatMap(List::stream)
+      .map(entries::get)
+      .collect(Collectors.groupingBy(
+        HistoryEntry::baseImage,
+        Collectors.mapping(
+          HistoryEntry::remoteDigest,
+          Collectors.collectingAndThen(Collectors.toSet(), it -> (long) it.size())
+        )
+      ))
+      .entrySet()
+      .stream()
+      .sorted(Entry.<String, Long>comparingByValue().reversed())
+      .collect(Collectors.toMap(Entry::getKey, Entry::getValue, (a, _) -> a, LinkedHashMap::new));
+  }
+
+  /**
+   * Computes how long it took from upstream pushing an update until a cycle detected it. Updates pushed before the
+   * oldest recorded cycle are ignored, as Lighthouse was not watching yet.
+   *
+   * @param since the earliest detection time
+   * @return the percentiles of the detection delay, empty if no update with a known push time was detected
+   */
+  public synchronized Optional<LatencyPercentiles> detectionLatency(Instant since) {
+    if (cycles.isEmpty()) {
+      return Optional.empty();
+    }
+    Instant watchingSince = cycles.firstKey();
+
+    return LatencyPercentiles.of(
+      entriesByDetection.tailMap(since)
+        .values()
+        .stream()
+        .flatMap(List::stream)
+        .map(entries::get)
+        .filter(it -> it.pushedAt() != null && !it.pushedAt().isBefore(watchingSince))
+        .flatMap(it -> it.detectionDelay().stream())
+        .toList()
+    );
+  }
+
+  /**
+   * @param since the earliest detection time
+   * @return the percentiles of the time between detecting and applying updates, empty if none were applied
+   */
+  public synchronized Optional<LatencyPercentiles> applyLatency(Instant since) {
+    return LatencyPercentiles.of(
+      entriesByDetection.tailMap(since)
+        .values()
+        .stream()
+        .flatMap(List::stream)
+        .map(entries::get)
+        .flatMap(it -> it.applyDelay().stream())
+        .toList()
+    );
+  }
+
+  /**
+   * @param from the earliest cycle start (inclusive)
+   * @param to the latest cycle start (exclusive)
+   * @return all cycles started in the given time frame, oldest first
+   */
+  public synchronized List<CycleRecord> cycles(Instant from, Instant to) {
+    return List.copyOf(cycles.subMap(from, to).values());
+  }
+
+  /**
+   * An outdated container, as seen by Lighthouse.
+   *
+   * @param container the container name
+   * @param baseImage the base image ({@code image:tag})
+   * @param remoteDigest the remote digest the container was outdated against
+   * @param pushedAt when upstream pushed the update, null if the registry does not tell
+   * @param detectedAt the start of the first cycle that found the update
+   * @param appliedAt the time the update was applied by Lighthouse, null if it was not (yet)
+   */
+  public record HistoryEntry(
+    String container,
+    String baseImage,
+    String remoteDigest,
+    Instant pushedAt,
+    Instant detectedAt,
+    Instant appliedAt
+  ) {
+
+    /**
+     * @return how long it took from the upstream push until the update was detected, if the push time is known
+     */
+    public Optional<Duration> detectionDelay() {
+      if (pushedAt == null) {
+        return Optional.empty();
+      }
+      // The cycle start is recorded, which can be slightly before a push found during that cycle
+      Duration delay = Duration.between(pushedAt, detectedAt);
+      return Optional.of(delay.isNegative() ? Duration.ZERO : delay);
+    }
+
+    /**
+     * @return how long it took from detecting the update until it was applied, if it was
+     */
+    public Optional<Duration> applyDelay() {
+      return Optional.ofNullable(appliedAt).map(it -> Duration.between(detectedAt, it));
+    }
+
+    /**
+     * @param now the current time
+     * @return how long the container was (or still is) outdated
+     */
+    public Duration outdatedFor(Instant now) {
+      return Duration.between(detectedAt, appliedAt == null ? now : appliedAt);
+    }
+
+    HistoryEntry withAppliedAt(Instant appliedAt) {
+      return new HistoryEntry(container, baseImage, remoteDigest, pushedAt, detectedAt, appliedAt);
+    }
+  }
+
+  /**
+   * A finished check cycle.
+   *
+   * @param start the start of the cycle
+   * @param duration how long the cycle took
+   * @param outdatedContainers the number of outdated containers found
+   * @param newlyDetected the number of container updates not seen in any earlier cycle
+   */
+  public record CycleRecord(
+    Instant start,
+    Duration duration,
+    int outdatedContainers,
+    int newlyDetected
+  ) {
+
+  }
+
+  private record EntryKey(String container, String remoteDigest) {
+
+  }
+
+  @JsonTypeInfo(use = JsonTypeInfo.Id.NAME, property = "type")
+  @JsonSubTypes({
+    @JsonSubTypes.Type(value = DetectedEvent.class, name = "detected"),
+    @JsonSubTypes.Type(value = AppliedEvent.class, name = "applied"),
+    @JsonSubTypes.Type(value = CycleEvent.class, name = "cycle"),
+  })
+  sealed interface HistoryEvent {
+
+  }
+
+  record DetectedEvent(HistoryEntry entry) implements HistoryEvent {
+
+  }
+
+  record AppliedEvent(String container, String remoteDigest, Instant appliedAt) implements HistoryEvent {
+
+  }
+
+  record CycleEvent(CycleRecord cycle) implements HistoryEvent {
+
+  }
+}
@@ -0,0 +1,58 @@
+package de.ialistannen.lighthouse.timing;
+
+import com.github.dockerjava.api.model.Container;
+import de.ialistannen.lighthouse.storage.UpdateCadenceTracker;
+import de.ialistannen.lighthouse.updates.ImageUpdateChecker;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+
+/**
+ * Derives check intervals from the observed update cadence of a container's base image. Images that change often are
+ * checked more often, stable images back off. Intervals are always clamped to the configured bounds.
+ * <p>
+ * The base image is the one the {@link ImageUpdateChecker} last checked the container against, as that is the name the
+ * cadence is recorded under. Containers that were not checked yet follow the default schedule.
+ */
+public class AdaptiveIntervalProvider implements IntervalProvider {
+
+  /**
+   * How many checks we want per expected change. Higher values reduce detection latency but cost more requests.
+   */
+  private static final int CHECKS_PER_CHANGE = 4;
+
+  private final UpdateCadenceTracker cadenceTracker;
+  private final ImageUpdateChecker imageUpdateChecker;
+  private final Duration minInterval;
+  private final Duration maxInterval;
+
+  public AdaptiveIntervalProvider(
+    UpdateCadenceTracker cadenceTracker,
+    ImageUpdateChecker imageUpdateChecker,
+    Duration minInterval,
+    Duration maxInterval
+  ) {
+    this.cadenceTracker = cadenceTracker;
+    this.imageUpdateChecker = imageUpdateChecker;
+    this.minInterval = minInterval;
+    this.maxInterval = maxInterval;
+  }
+
+  @Override
+  public Optional<Duration> intervalFor(Container container) {
+    return imageUpdateChecker.checkedBaseImage(container.getId())
+      .flatMap(image -> cadenceTracker.estimatedChangeInterval(image, Instant.now()))
+      .map(it -> it.dividedBy(CHECKS_PER_CHANGE))
+      .map(this::clamp);
+  }
+
+  private Duration clamp(Duration interval) {
+    if (interval.compareTo(minInterval) < 0) {
+      return minInterval;
+    }
+    if (interval.compareTo(maxInterval) > 0) {
+      return maxInterval;
+    }
+    return interval;
+  }
+}
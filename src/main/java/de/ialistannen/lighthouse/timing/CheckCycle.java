@@ -0,0 +1,17 @@
+package de.ialistannen.lighthouse.timing;
+
+/**
+ * A single check cycle run by the {@link CronRunner}.
+ */
+@FunctionalInterface
+public interface CheckCycle {
+
+  /**
+   * Runs the cycle.
+   *
+   * @param forced true if the cycle was requested explicitly and should check everything, false if it runs on the
+   *   schedule
+   * @throws Exception if anything goes wrong
+   */
+  void run(boolean forced) throws Exception;
+}
@@ -0,0 +1,169 @@
+package de.ialistannen.lighthouse.timing;
+
+import com.github.dockerjava.api.model.Container;
+import de.ialistannen.lighthouse.util.DurationParser;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Set;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Schedules checks per container. Containers with a {@value #CHECK_INTERVAL_LABEL} label are checked in that
+ * interval. All others are checked in the interval given by the {@link IntervalProvider} or, if it has none, follow the
+ * fallback schedule (i.e. {@code --check-times}).
+ * <p>
+ * Due checks are kept in a priority queue, so the next wakeup is always the earliest due check. The fallback schedule
+ * is always part of the wakeups, as that is when new containers are discovered.
+ */
+public class CheckScheduler implements Schedule {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(CheckScheduler.class);
+
+  public static final String CHECK_INTERVAL_LABEL = "lighthouse.check-interval";
+
+  private final Schedule fallback;
+  private final IntervalProvider intervalProvider;
+  private final PriorityQueue<DueCheck> queue;
+  private final Map<String, DueCheck> checksByContainer;
+  private Instant lastWakeup;
+
+  public CheckScheduler(Schedule fallback, IntervalProvider intervalProvider) {
+    this.fallback = fallback;
+    this.intervalProvider = intervalProvider;
+    this.queue = new PriorityQueue<>(Comparator.comparing(DueCheck::dueAt));
+    this.checksByContainer = new HashMap<>();
+    this.lastWakeup = Instant.now();
+  }
+
+  @Override
+  public synchronized Instant nextExecution(ZonedDateTime now) {
+    Instant fallbackExecution = fallback.nextExecution(now);
+    if (queue.isEmpty() || queue.peek().dueAt().isAfter(fallbackExecution)) {
+      return fallbackExecution;
+    }
+    return queue.peek().dueAt();
+  }
+
+  /**
+   * Finds all containers whose check is due and schedules their next check.
+   *
+   * @param containers all currently existing containers
+   * @param now the current time
+   * @param all whether to treat every container as due, e.g. for an explicitly requested check
+   * @return the ids of all containers that should be checked now
+   */
+  public synchronized Set<String> takeDue(Collection<Container> containers, Instant now, boolean all) {
+    Set<String> existing = new HashSet<>();
+    Set<String> due = new HashSet<>();
+
+    for (Container container : containers) {
+      existing.add(container.getId());
+      Optional<Duration> interval = getInterval(container);
+
+      DueCheck check = checksByContainer.get(container.getId());
+      if (check == null) {
+        // New container: schedule it as if we had looked at it during the last wakeup
+        check = new DueCheck(container.getId(), nextCheck(interval, lastWakeup), interval, lastWakeup);
+        checksByContainer.put(container.getId(), check);
+        queue.add(check);
+      } else if (!check.interval().equals(interval)) {
+        check = reschedule(check, interval);
+      }
+
+      if (all || !check.dueAt().isAfter(now)) {
+        due.add(container.getId());
+        queue.remove(check);
+        DueCheck next = new DueCheck(container.getId(), nextCheck(interval, now), interval, now);
+        checksByContainer.put(container.getId(), next);
+        queue.add(next);
+      }
+    }
+
+    // Forget removed containers
+    checksByContainer.keySet().removeIf(id -> {
+      if (existing.contains(id)) {
+        return false;
+      }
+      queue.remove(checksByContainer.get(id));
+      return true;
+    });
+
+    lastWakeup = now;
+    LOGGER.debug("{} of {} container(s) are due for a check", due.size(), existing.size());
+
+    return due;
+  }
+
+  /**
+   * Adapts a scheduled check to a changed interval. Adaptive intervals drift a little on every call, so a check is only
+   * ever moved forward: A shorter interval applies right away, a longer one from the next check on. Otherwise, every
+   * wakeup would postpone the check again and it would never run.
+   */
+  private DueCheck reschedule(DueCheck check, Optional<Duration> interval) {
+    Instant candidate = nextCheck(interval, check.scheduledFrom());
+    Instant dueAt = candidate.isBefore(check.dueAt()) ? candidate : check.dueAt();
+
+    DueCheck rescheduled = new DueCheck(check.containerId(), dueAt, interval, check.scheduledFrom());
+    queue.remove(check);
+    queue.add(rescheduled);
+    checksByContainer.put(check.containerId(), rescheduled);
+    return rescheduled;
+  }
+
+  private Instant nextCheck(Optional<Duration> interval, Instant from) {
+    if (interval.isPresent()) {
+      return from.plus(interval.get());
+    }
+    return fallback.nextExecution(ZonedDateTime.ofInstant(from, ZoneId.systemDefault()));
+  }
+
+  private Optional<Duration> getInterval(Container container) {
+    String label = container.getLabels().get(CHECK_INTERVAL_LABEL);
+    if (label == null) {
+      return intervalProvider.intervalFor(container);
+    }
+    try {
+      Duration interval = DurationParser.parse(label);
+      if (interval.compareTo(Duration.ofMinutes(1)) < 0) {
+        LOGGER.warn(
+          "Container '{}' has a check interval below one minute ('{}'), using the default schedule",
+          Arrays.toString(container.getNames()),
+          label
+        );
+        return Optional.empty();
+      }
+      return Optional.of(interval);
+    } catch (IllegalArgumentException e) {
+      LOGGER.warn(
+        "Container '{}' has an invalid '{}' label ('{}'), using the default schedule",
+        Arrays.toString(container.getNames()),
+        CHECK_INTERVAL_LABEL,
+        label
+      );
+      return Optional.empty();
+    }
+  }
+
+  /**
+   * A scheduled check.
+   *
+   * @param containerId the id of the container to check
+   * @param dueAt when the check is due
+   * @param interval the interval the check was scheduled with, empty for the fallback schedule
+   * @param scheduledFrom when the container was last checked (or first seen)
+   */
+  private record DueCheck(String containerId, Instant dueAt, Optional<Duration> interval, Instant scheduledFrom) {
+
+  }
+}
@@ -0,0 +1,138 @@
+package de.ialistannen.lighthouse.timing;
+
+import de.ialistannen.lighthouse.util.DurationFormatter;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Spreads the registry lookups of a cycle evenly over a time window, so they do not all hit the registry at once.
+ * <p>
+ * Every lookup gets its own slot in the window. The order of the slots and the position inside each slot are derived
+ * from a hash of the lookup and a per-instance salt. This keeps the schedule stable between cycles, but different
+ * Lighthouse instances with the same check times still end up hitting the registry at different moments.
+ */
+public class CheckSpreader {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(CheckSpreader.class);
+
+  private final Duration window;
+  private final String salt;
+  private final Map<String, Instant> slots;
+
+  /**
+   * @param window the window to spread lookups over. {@link Duration#ZERO} disables spreading.
+   * @param salt a per-instance salt for the jitter
+   */
+  public CheckSpreader(Duration window, String salt) {
+    this.window = window;
+    this.salt = salt;
+    this.slots = new HashMap<>();
+  }
+
+  /**
+   * @return true if lookups are spread at all
+   */
+  public boolean isEnabled() {
+    return !window.isZero();
+  }
+
+  /**
+   * Plans the lookups of a new cycle. Phases are executed one after another, so all slots of the first phase come
+   * before the slots of the second one.
+   *
+   * @param start the start of the window
+   * @param phases the keys of all lookups in each phase
+   */
+  public synchronized void startCycle(Instant start, List<? extends Collection<String>> phases) {
+    slots.clear();
+    if (!isEnabled()) {
+      return;
+    }
+
+    List<String> ordered = phases.stream()
+      .flatMap(phase -> phase.stream().distinct().sorted(Comparator.comparingDouble(this::jitter)))
+      .toList();
+    if (ordered.isEmpty()) {
+      return;
+    }
+
+    long slotNanos = window.toNanos() / ordered.size();
+    for (int i = 0; i < ordered.size(); i++) {
+      String key = ordered.get(i);
+      long offset = i * slotNanos + (long) (jitter(key) * slotNanos);
+      slots.put(key, start.plusNanos(offset));
+    }
+
+    LOGGER.info(
+      "Spreading {} registry lookup(s) over {}",
+      ordered.size(),
+      DurationFormatter.formatHuman(window)
+    );
+  }
+
+  /**
+   * Orders items by the slots of their lookups. Lookups have to be performed in this order: Waiting for a later slot
+   * first would let all earlier slots pass, and their lookups would then fire at once. Items without a planned lookup
+   * come first, as they do not wait at all.
+   *
+   * @param items the items to order
+   * @param key extracts the key of the lookup for an item
+   * @param <T> the type of the items
+   * @return the items in the order of their slots
+   */
+  public synchronized <T> List<T> inSlotOrder(Collection<T> items, Function<T, String> key) {
+    return items.stream()
+      .sorted(Comparator.comparing(it -> slots.get(key.apply(it)), Comparator.nullsFirst(Comparator.naturalOrder())))
+      .toList();
+  }
+
+  /**
+   * Blocks until the slot of the given lookup has come. Returns immediately for unplanned lookups.
+   *
+   * @param key the key of the lookup
+   * @throws InterruptedException if interrupted while waiting
+   */
+  public void awaitSlot(String key) throws InterruptedException {
+    Instant slot;
+    synchronized (this) {
+      slot = slots.get(key);
+    }
+    if (slot == null) {
+      return;
+    }
+
+    Duration wait = Duration.between(Instant.now(), slot);
+    if (wait.isPositive()) {
+      LOGGER.debug("Waiting {} for lookup slot of '{}'", DurationFormatter.formatHuman(wait), key);
+      Thread.sleep(wait);
+    }
+  }
+
+  /**
+   * @param key the lookup key
+   * @return a deterministic value in {@code [0, 1)} for the key
+   */
+  private double jitter(String key) {
+    try {
+      byte[] hash = MessageDigest.getInstance("SHA-256").digest((salt + "/" + key).getBytes(StandardCharsets.UTF_8));
+      long value = 0;
+      for (int i = 0; i < 6; i++) {
+        value = (value << 8) | (hash[i] & 0xFF);
+      }
+      return value / (double) (1L << 48);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is not available", e);
+    }
+  }
+}
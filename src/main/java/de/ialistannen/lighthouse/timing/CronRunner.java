@@ -1,70 +1,232 @@
 package de.ialistannen.lighthouse.timing;
 
-import com.cronutils.model.Cron;
-import com.cronutils.model.time.ExecutionTime;
-import de.ialistannen.lighthouse.notifier.Notifier;
+import de.ialistannen.lighthouse.metrics.Counter;
+import de.ialistannen.lighthouse.metrics.Histogram;
+import de.ialistannen.lighthouse.metrics.MetricsRegistry;
+import de.ialistannen.lighthouse.notifier.ErrorAggregator;
+import de.ialistannen.lighthouse.util.DurationFormatter;
 import java.time.Duration;
 import java.time.Instant;
+import java.time.ZoneId;
 import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Runs the check cycle on a {@link Schedule}.
+ * <p>
+ * All work happens on a single scheduler thread, so at most one cycle is ever in flight. Explicit
+ * {@link #triggerNow() triggers} are merged with a run that is already pending. If slots are missed, because a cycle
+ * took longer than the interval or the host was suspended, exactly one catch-up run is started before returning to the
+ * regular schedule.
+ */
 public class CronRunner {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(CronRunner.class);
+  private static final Duration WATCHDOG_INTERVAL = Duration.ofSeconds(30);
+  private static final Duration MISSED_TOLERANCE = Duration.ofMinutes(1);
 
-  private final Cron cron;
-  private final ExceptionalRunnable action;
-  private final Notifier notifier;
+  private final Schedule schedule;
+  private final CheckCycle action;
+  private final ErrorAggregator errors;
+  private final ScheduledExecutorService executor;
+  private final AtomicReference<RunRequest> pendingRun;
+  private final Histogram cycleDuration;
+  private final Counter failedCycles;
+  private final List<Consumer<RunInfo>> finishListeners;
 
-  public CronRunner(Cron cron, Notifier notifier, ExceptionalRunnable action) {
-    this.cron = cron;
+  private ScheduledFuture<?> scheduledRun;
+  private volatile Instant nextRun;
+  private volatile RunInfo lastRun;
+
+  public CronRunner(Schedule schedule, ErrorAggregator errors, MetricsRegistry metrics, CheckCycle action) {
+    this.schedule = schedule;
     this.action = action;
-    this.notifier = notifier;
+    this.errors = errors;
+    this.cycleDuration = metrics.histogram(
+      "lighthouse_cycle_seconds",
+      "Duration of check cycles",
+      "forced"
+    );
+    this.failedCycles = metrics.counter("lighthouse_cycle_failures_total", "Check cycles that threw an exception");
+    this.executor = Executors.newSingleThreadScheduledExecutor(
+      Thread.ofPlatform().name("check-scheduler").factory()
+    );
+    this.pendingRun = new AtomicReference<>();
+    this.finishListeners = new CopyOnWriteArrayList<>();
+  }
+
+  /**
+   * Registers a listener called on the scheduler thread after every cycle, successful or not.
+   *
+   * @param listener the listener
+   */
+  public void onCycleFinished(Consumer<RunInfo> listener) {
+    finishListeners.add(listener);
+  }
+
+  /**
+   * Starts running the stored action on the schedule and blocks until eternity.
+   *
+   * @throws InterruptedException if interrupted while waiting for the end of time
+   */
+  public void runUntilSingularity() throws InterruptedException {
+    start();
+    //noinspection ResultOfMethodCallIgnored
+    executor.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+  }
+
+  /**
+   * Starts running the stored action on the schedule.
+   */
+  public void start() {
+    executor.execute(() -> scheduleNext(Instant.now()));
+    executor.scheduleWithFixedDelay(
+      this::catchUpIfMissed,
+      WATCHDOG_INTERVAL.toSeconds(),
+      WATCHDOG_INTERVAL.toSeconds(),
+      TimeUnit.SECONDS
+    );
+  }
+
+  /**
+   * Requests a forced cycle as soon as possible. If a cycle is already pending, it is upgraded instead of running a
+   * second one. A cycle that is currently running is not affected, the forced one runs after it.
+   */
+  public void triggerNow() {
+    RunRequest previous = pendingRun.getAndSet(RunRequest.FORCED);
+    if (previous == null) {
+      LOGGER.info("Check requested, running it now");
+      executor.execute(this::runPending);
+    } else {
+      LOGGER.info("Check requested, merging it with the already pending one");
+    }
+  }
+
+  /**
+   * @return the time of the next scheduled cycle, if it is known yet
+   */
+  public Optional<Instant> nextRun() {
+    return Optional.ofNullable(nextRun);
   }
 
   /**
-   * Runs the stored action on the cron schedule until eternity.
+   * @return information about the last finished cycle, if any
    */
-  @SuppressWarnings("BusyWait")
-  public void runUntilSingularity() {
-    //noinspection InfiniteLoopStatement
-    while (true) {
-      Instant nextExecution = ExecutionTime.forCron(cron).nextExecution(ZonedDateTime.now()).orElseThrow().toInstant();
+  public Optional<RunInfo> lastRun() {
+    return Optional.ofNullable(lastRun);
+  }
+
+  private void scheduleNext(Instant after) {
+    Instant next = schedule.nextExecution(ZonedDateTime.ofInstant(after, ZoneId.systemDefault()));
+    Instant now = Instant.now();
 
+    if (next.isBefore(now)) {
+      LOGGER.info("Missed the check scheduled for {}, catching up now", next);
+      next = now;
+    } else {
       LOGGER.info(
         "Sleeping until {} ({})",
-        nextExecution,
-        formatDurationHuman(Duration.between(Instant.now(), nextExecution))
+        next,
+        DurationFormatter.formatHuman(Duration.between(now, next))
       );
+    }
 
-      try {
-        while (nextExecution.isAfter(Instant.now())) {
-          Duration between = Duration.between(Instant.now(), nextExecution);
-          Thread.sleep(between.toSeconds() / 4 * 1000L);
+    if (scheduledRun != null) {
+      scheduledRun.cancel(false);
+    }
+    nextRun = next;
+    scheduledRun = executor.schedule(
+      () -> {
+        if (pendingRun.compareAndSet(null, RunRequest.SCHEDULED)) {
+          runPending();
         }
+      },
+      Duration.between(now, next).toMillis(),
+      TimeUnit.MILLISECONDS
+    );
+  }
 
-        action.run();
-      } catch (Exception e) {
-        LOGGER.warn("Error during iteration", e);
-        notifier.notify(e);
-      }
+  /**
+   * The delay of scheduled tasks is measured on a monotonic clock, which does not advance while the host is
+   * suspended. This watchdog compares against the wall clock and starts a single catch-up run if we overslept.
+   */
+  private void catchUpIfMissed() {
+    Instant planned = nextRun;
+    if (planned == null || Instant.now().isBefore(planned.plus(MISSED_TOLERANCE))) {
+      return;
+    }
+    if (pendingRun.compareAndSet(null, RunRequest.SCHEDULED)) {
+      LOGGER.info("Missed the check scheduled for {} (host suspended?), catching up now", planned);
+      runPending();
     }
   }
 
-  private static String formatDurationHuman(Duration duration) {
-    String result = "";
-    if (duration.toHoursPart() > 0) {
-      result += duration.toHoursPart() + " hours";
+  private void runPending() {
+    RunRequest request = pendingRun.getAndSet(null);
+    if (request == null) {
+      return;
+    }
+    if (scheduledRun != null) {
+      scheduledRun.cancel(false);
     }
-    if (duration.toMinutesPart() > 0) {
-      result += ", " + duration.toMinutesPart() + " minutes";
+    Instant plannedFor = request == RunRequest.SCHEDULED && nextRun != null ? nextRun : Instant.now();
+    nextRun = null;
+
+    Instant start = Instant.now();
+    boolean success = false;
+    errors.beginCycle();
+    try {
+      action.run(request == RunRequest.FORCED);
+      success = true;
+    } catch (Exception e) {
+      LOGGER.warn("Error during iteration", e);
+      failedCycles.increment();
+      errors.notify(e);
+    } finally {
+      errors.endCycle();
+      lastRun = new RunInfo(start, Instant.now(), success, request == RunRequest.FORCED);
+      cycleDuration.labels(String.valueOf(lastRun.forced())).observe(lastRun.duration().toNanos() / 1e9);
     }
-    if (duration.toSecondsPart() > 0) {
-      result += ", " + duration.toSecondsPart() + " seconds";
+    for (Consumer<RunInfo> listener : finishListeners) {
+      try {
+        listener.accept(lastRun);
+      } catch (RuntimeException e) {
+        LOGGER.warn("Cycle listener failed", e);
+      }
     }
 
-    return result.replaceFirst("^,", "");
+    // Missed slots while we were running result in exactly one catch-up run, as we only look one slot ahead
+    scheduleNext(plannedFor);
+  }
+
+  private enum RunRequest {
+    SCHEDULED,
+    FORCED
+  }
+
+  /**
+   * Information about a finished cycle.
+   *
+   * @param start when the cycle started
+   * @param end when the cycle ended
+   * @param success whether it completed without an exception
+   * @param forced whether it was triggered explicitly
+   */
+  public record RunInfo(Instant start, Instant end, boolean success, boolean forced) {
+
+    public Duration duration() {
+      return Duration.between(start, end);
+    }
   }
 
 }
@@ -1,6 +0,0 @@
-package de.ialistannen.lighthouse.timing;
-
-public interface ExceptionalRunnable {
-
-  void run() throws Exception;
-}
@@ -0,0 +1,25 @@
+package de.ialistannen.lighthouse.timing;
+
+import com.github.dockerjava.api.model.Container;
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Provides a check interval for containers that do not set one explicitly.
+ */
+@FunctionalInterface
+public interface IntervalProvider {
+
+  /**
+   * @param container the container
+   * @return the interval to check the container in, or empty to use the default schedule
+   */
+  Optional<Duration> intervalFor(Container container);
+
+  /**
+   * @return a provider that always uses the default schedule
+   */
+  static IntervalProvider none() {
+    return _ -> Optional.empty();
+  }
+}
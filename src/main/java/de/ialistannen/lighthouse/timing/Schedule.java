@@ -0,0 +1,41 @@
+package de.ialistannen.lighthouse.timing;
+
+import com.cronutils.model.Cron;
+import com.cronutils.model.time.ExecutionTime;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+/**
+ * Decides when the next check cycle should run.
+ */
+@FunctionalInterface
+public interface Schedule {
+
+  /**
+   * @param now the current time
+   * @return the time of the next execution
+   */
+  Instant nextExecution(ZonedDateTime now);
+
+  /**
+   * @param cron the cron expression
+   * @return a schedule following the given cron expression
+   */
+  static Schedule ofCron(Cron cron) {
+    ExecutionTime executionTime = ExecutionTime.forCron(cron);
+    return now -> executionTime.nextExecution(now).orElseThrow().toInstant();
+  }
+
+  /**
+   * @param wakeup additional times this schedule should wake up at
+   * @return a schedule executing at the earlier of this schedule and the additional wakeup
+   */
+  default Schedule withWakeups(Supplier<Optional<Instant>> wakeup) {
+    return now -> {
+      Instant next = nextExecution(now);
+      return wakeup.get().filter(it -> it.isBefore(next)).orElse(next);
+    };
+  }
+}
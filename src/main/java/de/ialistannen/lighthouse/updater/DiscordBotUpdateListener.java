@@ -1,10 +1,13 @@
 package de.ialistannen.lighthouse.updater;
 
 import de.ialistannen.lighthouse.model.LighthouseContainerUpdate;
+import de.ialistannen.lighthouse.notifier.NotificationId;
 import de.ialistannen.lighthouse.notifier.Notifier;
-import java.util.ArrayList;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.List;
-import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import net.dv8tion.jda.api.components.actionrow.ActionRow;
 import net.dv8tion.jda.api.components.buttons.ButtonStyle;
 import net.dv8tion.jda.api.entities.emoji.Emoji;
@@ -15,26 +18,33 @@ import net.dv8tion.jda.api.interactions.InteractionHook;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Applies updates when the update button of a notification is pressed.
+ * <p>
+ * Interactions are only acknowledged on the JDA event thread, everything else runs on a dedicated executor. Buttons are
+ * matched to updates through the {@link NotificationId} embedded in their component id.
+ */
 public class DiscordBotUpdateListener extends ListenerAdapter implements UpdateListener {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(DiscordBotUpdateListener.class);
+  private static final int PROGRESS_LINES = 8;
+  private static final int MAX_PROGRESS_LINE_LENGTH = 200;
 
-  private final DockerUpdater updater;
+  private final UpdateJobQueue jobQueue;
   private final Notifier notifier;
-  private List<LighthouseContainerUpdate> lastUpdates;
-  private List<String> selectedUpdates;
+  private final ExecutorService executor;
+  private volatile LatestNotification latest;
 
-  public DiscordBotUpdateListener(DockerUpdater updater, Notifier notifier) {
-    this.updater = updater;
+  public DiscordBotUpdateListener(UpdateJobQueue jobQueue, Notifier notifier) {
+    this.jobQueue = jobQueue;
     this.notifier = notifier;
-    this.lastUpdates = new ArrayList<>();
-    this.selectedUpdates = null;
+    this.executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("discord-update-", 0).factory());
+    this.latest = new LatestNotification(NotificationId.forUpdates(List.of()), List.of(), null);
   }
 
   @Override
   public void onUpdatesFound(List<LighthouseContainerUpdate> updates) {
-    this.lastUpdates = updates;
-    this.selectedUpdates = null;
+    this.latest = new LatestNotification(NotificationId.forUpdates(updates), List.copyOf(updates), null);
   }
 
   @Override
@@ -46,39 +56,33 @@ public class DiscordBotUpdateListener extends ListenerAdapter implements UpdateL
       LOGGER.info("Unknown component id {}", buttonId);
       event.reply("I don't know that action :/").queue();
       return;
-    } else if (!buttonId.substring("update-".length()).equals(String.valueOf(lastUpdates.hashCode()))) {
+    }
+    LatestNotification notification = latest;
+    if (!buttonId.substring("update-".length()).equals(notification.id())) {
       LOGGER.info("Unknown updates for id {}", buttonId);
       event.reply("Sorry, updating is only supported for the latest notification").queue();
       return;
     }
 
-    InteractionHook hook = event.editComponents(ActionRow.of(
-      event.getButton().asDisabled().withLabel("Executing...")
-    )).complete();
-
-    List<LighthouseContainerUpdate> updates;
-
-    if (selectedUpdates != null) {
-      updates = lastUpdates.stream().filter(update -> selectedUpdates.contains(update.names().getFirst())).toList();
-    } else {
-      updates = lastUpdates;
-    }
+    event.editComponents(ActionRow.of(event.getButton().asDisabled().withLabel("Executing...")))
+      .queue(
+        hook -> executor.execute(() -> update(event, hook, notification.selectedUpdates())),
+        throwable -> LOGGER.warn("Failed to acknowledge update button", throwable)
+      );
+  }
 
-    CompletableFuture.runAsync(() -> {
-        try {
-          updater.rebuildContainers(
-            updates,
-            label -> hook.editOriginalComponents(ActionRow.of(
-              event.getButton().asDisabled()
-                .withLabel(label)
-                .withEmoji(Emoji.fromUnicode("✅"))
-                .withStyle(ButtonStyle.SUCCESS)
-            )).queue()
-          );
-        } catch (InterruptedException e) {
-          throw new RuntimeException(e);
-        }
-      })
+  private void update(ButtonInteractionEvent event, InteractionHook hook, List<LighthouseContainerUpdate> updates) {
+    Deque<String> progressLines = new ArrayDeque<>();
+    jobQueue.submit(
+        updates,
+        label -> hook.editOriginalComponents(ActionRow.of(
+          event.getButton().asDisabled()
+            .withLabel(label)
+            .withEmoji(Emoji.fromUnicode("✅"))
+            .withStyle(ButtonStyle.SUCCESS)
+        )).queue(),
+        line -> showProgress(hook, progressLines, line)
+      )
       .exceptionally(throwable -> {
         LOGGER.warn("Error while updating all", throwable);
         notifier.notify(throwable);
@@ -89,6 +93,25 @@ public class DiscordBotUpdateListener extends ListenerAdapter implements UpdateL
       });
   }
 
+  /**
+   * Shows the last few progress lines as the content of the update message.
+   */
+  private static void showProgress(InteractionHook hook, Deque<String> lines, String line) {
+    String content;
+    synchronized (lines) {
+      if (lines.size() == PROGRESS_LINES) {
+        lines.removeFirst();
+      }
+      if (line.length() > MAX_PROGRESS_LINE_LENGTH) {
+        line = line.substring(0, MAX_PROGRESS_LINE_LENGTH) + "…";
+      }
+      // Backticks would end the code block
+      lines.addLast(line.replace('`', '\u02CB'));
+      content = "```\n" + String.join("\n", lines) + "\n```";
+    }
+    hook.editOriginal(content).queue();
+  }
+
   @Override
   public void onStringSelectInteraction(StringSelectInteractionEvent event) {
     LOGGER.info("Received string select interaction: {}", event.getComponentId());
@@ -97,15 +120,36 @@ public class DiscordBotUpdateListener extends ListenerAdapter implements UpdateL
       LOGGER.info("Unknown component id {}", event.getComponentId());
       event.reply("I don't know that action :/").queue();
       return;
-    } else if (!event.getComponentId()
-      .substring("image-select-".length())
-      .equals(String.valueOf(lastUpdates.hashCode()))) {
+    }
+    LatestNotification notification = latest;
+    if (!event.getComponentId().substring("image-select-".length()).equals(notification.id())) {
       LOGGER.info("Unknown updates for id {}", event.getComponentId());
       event.reply("Sorry, selecting containers and updating is only supported for the latest notification").queue();
       return;
     }
 
-    selectedUpdates = new ArrayList<>(event.getValues());
+    latest = notification.withSelection(List.copyOf(event.getValues()));
     event.deferEdit().queue();
   }
+
+  /**
+   * The updates of the latest notification.
+   *
+   * @param id the {@link NotificationId} of the updates
+   * @param updates the updates
+   * @param selected the names of the selected containers, null if the selection was not changed
+   */
+  private record LatestNotification(String id, List<LighthouseContainerUpdate> updates, List<String> selected) {
+
+    List<LighthouseContainerUpdate> selectedUpdates() {
+      if (selected == null) {
+        return updates;
+      }
+      return updates.stream().filter(update -> selected.contains(update.names().getFirst())).toList();
+    }
+
+    LatestNotification withSelection(List<String> selected) {
+      return new LatestNotification(id, updates, selected);
+    }
+  }
 }
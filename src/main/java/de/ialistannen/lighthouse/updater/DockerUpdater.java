@@ -1,26 +1,29 @@
 package de.ialistannen.lighthouse.updater;
 
 import com.github.dockerjava.api.DockerClient;
-import com.github.dockerjava.api.async.ResultCallback.Adapter;
-import com.github.dockerjava.api.command.CreateContainerResponse;
 import com.github.dockerjava.api.command.PullImageResultCallback;
-import com.github.dockerjava.api.command.WaitContainerResultCallback;
-import com.github.dockerjava.api.exception.DockerClientException;
-import com.github.dockerjava.api.model.Bind;
-import com.github.dockerjava.api.model.Frame;
-import com.github.dockerjava.api.model.HostConfig;
-import com.github.dockerjava.api.model.StreamType;
-import com.github.dockerjava.api.model.Volume;
+import com.google.common.collect.Lists;
+import de.ialistannen.lighthouse.metrics.Counter;
+import de.ialistannen.lighthouse.metrics.MetricsRegistry;
 import de.ialistannen.lighthouse.model.LighthouseContainerUpdate;
 import de.ialistannen.lighthouse.model.LighthouseImageUpdate;
-import java.io.IOException;
-import java.nio.charset.StandardCharsets;
+import de.ialistannen.lighthouse.storage.UpdateHistory;
+import java.time.Instant;
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import org.slf4j.Logger;
@@ -29,33 +32,60 @@ import org.slf4j.LoggerFactory;
 public class DockerUpdater {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(DockerUpdater.class);
+  private static final String COMPOSE_PROJECT_LABEL = "com.docker.compose.project";
 
   private final DockerClient client;
-  private final List<Bind> updaterMounts;
-  private final String updaterEntrypoint;
-  private final String updaterDockerImage;
+  private final RebuildEngine engine;
+  private final Optional<RebuildEngine> selfUpdateEngine;
+  private final UpdateHistory history;
+  private final int concurrency;
+  private final Optional<RollingUpdatePolicy> rollingUpdate;
+  private final HealthGate healthGate;
+  private final Counter baseImageLookups;
 
+  /**
+   * Creates a new updater.
+   *
+   * @param client the docker client
+   * @param engine the engine rebuilding containers
+   * @param selfUpdateEngine the engine updating lighthouse itself. It must survive lighthouse being stopped, so only
+   *   engines running outside of lighthouse qualify.
+   * @param history the history to record applied updates in
+   * @param concurrency how many groups to rebuild at the same time
+   * @param rollingUpdate if present, the containers of each group are replaced in health-gated batches and all groups
+   *   stop at the first failure
+   * @param metrics the registry to record whether base images were already pulled in
+   */
   public DockerUpdater(
     DockerClient client,
-    List<String> updaterMounts,
-    String updaterEntrypoint,
-    String updaterDockerImage
+    RebuildEngine engine,
+    Optional<RebuildEngine> selfUpdateEngine,
+    UpdateHistory history,
+    int concurrency,
+    Optional<RollingUpdatePolicy> rollingUpdate,
+    MetricsRegistry metrics
   ) {
     this.client = client;
-    this.updaterMounts = mountsToBinds(updaterMounts);
-    this.updaterEntrypoint = updaterEntrypoint;
-    this.updaterDockerImage = updaterDockerImage;
-
-    // Clean up potentially leftover containers
-    client.listContainersCmd()
-      .withStatusFilter(Set.of("exited", "created"))
-      .withShowAll(true)
-      .withLabelFilter(Set.of("lighthouse-builder-container"))
-      .exec()
-      .forEach(container -> client.removeContainerCmd(container.getId()).exec());
+    this.engine = engine;
+    this.selfUpdateEngine = selfUpdateEngine;
+    this.history = history;
+    this.concurrency = concurrency;
+    this.rollingUpdate = rollingUpdate;
+    this.healthGate = new HealthGate(client);
+    this.baseImageLookups = metrics.counter(
+      "lighthouse_cache_requests_total",
+      "Lookups of reusable work, by whether it could be reused",
+      "cache", "result"
+    );
   }
 
   public void updateBaseImage(LighthouseImageUpdate update) throws InterruptedException {
+    if (PrePuller.isPresentLocally(client, update)) {
+      LOGGER.info("Base image {} is already up to date", update.imageIdentifier().nameWithTag());
+      baseImageLookups.increment("base-image", "hit");
+      return;
+    }
+    baseImageLookups.increment("base-image", "miss");
     LOGGER.info("Updating base image {} for {}", update.imageIdentifier().nameWithTag(), update.sourceImageNames());
     client.pullImageCmd(update.imageIdentifier().image())
       .withTag(update.imageIdentifier().tag())
@@ -65,35 +95,57 @@ public class DockerUpdater {
 
   public void rebuildContainers(List<LighthouseContainerUpdate> updates, Consumer<String> successHook)
     throws InterruptedException {
+    rebuildContainers(updates, successHook, _ -> {
+    });
+  }
+
+  /**
+   * Pulls the new base images and rebuilds the containers. Containers are grouped by their compose project, and
+   * independent groups are rebuilt in parallel. Lighthouse itself is updated last.
+   *
+   * @param updates the updates to apply
+   * @param successHook called with a status message after each group and once at the end
+   * @param progressHook receives throttled progress and output lines, prefixed with the group
+   * @throws InterruptedException if interrupted while waiting for the rebuild
+   * @throws RebuildFailedException if any group failed to rebuild. The message contains the end of their output.
+   */
+  public void rebuildContainers(
+    List<LighthouseContainerUpdate> updates,
+    Consumer<String> successHook,
+    Consumer<String> progressHook
+  ) throws InterruptedException {
     LOGGER.info("Rebuilding {} containers", updates.size());
-    Set<LighthouseImageUpdate> imageUpdates = updates.stream()
-      .map(LighthouseContainerUpdate::imageUpdate)
-      .collect(Collectors.toSet());
 
-    for (LighthouseImageUpdate update : imageUpdates) {
-      updateBaseImage(update);
-    }
+    Set<String> failedPulls = pullBaseImages(updates);
 
-    List<String> command = updates.stream()
+    Map<String, List<LighthouseContainerUpdate>> groups = updates.stream()
       .filter(it -> !it.isMyself())
-      .map(LighthouseContainerUpdate::names)
-      .flatMap(Collection::stream)
-      .distinct()
-      .collect(Collectors.toCollection(ArrayList::new));
-    command.addFirst(updaterEntrypoint);
+      .collect(Collectors.groupingBy(DockerUpdater::groupName, LinkedHashMap::new, Collectors.toList()));
 
-    callRebuildScript(command);
+    Map<String, List<String>> failedGroups = new LinkedHashMap<>();
+    if (!groups.isEmpty()) {
+      failedGroups.putAll(rebuildGroups(groups, failedPulls, successHook, progressHook));
+    }
 
     List<LighthouseContainerUpdate> lighthouseUpdates = updates.stream()
       .filter(LighthouseContainerUpdate::isMyself)
       .toList();
 
+    if (!failedGroups.isEmpty()) {
+      // Do not take ourselves down, the user should see the failure first
+      throw new RebuildFailedException(failureMessage(failedGroups, groups.size()));
+    }
+
     if (lighthouseUpdates.isEmpty()) {
       successHook.accept("Updated!");
     } else {
       successHook.accept("Updated (except for " + lighthouseUpdates.size() + " Lighthouse instances)!");
     }
 
+    if (!lighthouseUpdates.isEmpty() && selfUpdateEngine.isEmpty()) {
+      LOGGER.warn("No updater entrypoint configured, lighthouse itself needs to be updated manually");
+      return;
+    }
     if (!lighthouseUpdates.isEmpty()) {
       LOGGER.info("Updating lighthouse itself, no real progress can be given.");
       if (lighthouseUpdates.size() > 1) {
@@ -103,83 +155,186 @@ public class DockerUpdater {
           + "~~Objects~~ *cliffs* in your mirror are closer than they appear..."
         );
       }
-      List<String> updateCommand = lighthouseUpdates.stream()
-        .flatMap(it -> it.names().stream())
-        .collect(Collectors.toCollection(ArrayList::new));
-      updateCommand.addFirst(updaterEntrypoint);
-      callRebuildScript(updateCommand);
+      // We will most likely not survive the update, so record it beforehand
+      history.recordApplied(lighthouseUpdates, Instant.now());
+      selfUpdateEngine.get().rebuild("lighthouse", lighthouseUpdates, LOGGER::info);
     }
   }
 
-  private void callRebuildScript(List<String> command) throws InterruptedException {
-    pullUpdaterImageIfNecessary();
-
-    CreateContainerResponse containerResponse = client.createContainerCmd(updaterDockerImage)
-      .withLabels(Map.of("lighthouse-builder-container", "true"))
-      .withHostConfig(HostConfig.newHostConfig().withBinds(updaterMounts).withAutoRemove(true))
-      .withCmd(command)
-      .exec();
-    LOGGER.info("Started updater has ID {}", containerResponse.getId());
-
-    Adapter<Frame> attached = client.attachContainerCmd(containerResponse.getId())
-      .withFollowStream(true)
-      .withLogs(true)
-      .withStdOut(true)
-      .withStdErr(true)
-      .exec(new Adapter<>() {
-        @Override
-        public void onNext(Frame object) {
-          if (object.getStreamType() == StreamType.STDERR) {
-            LOGGER.warn("[updater] {}", new String(object.getPayload(), StandardCharsets.UTF_8));
-          } else {
-            LOGGER.info("[updater] {}", new String(object.getPayload(), StandardCharsets.UTF_8));
-          }
+  /**
+   * Pulls all distinct base images concurrently.
+   *
+   * @param updates the updates
+   * @return the names of the images that could not be pulled
+   */
+  private Set<String> pullBaseImages(List<LighthouseContainerUpdate> updates) throws InterruptedException {
+    Set<LighthouseImageUpdate> imageUpdates = updates.stream()
+      .map(LighthouseContainerUpdate::imageUpdate)
+      .collect(Collectors.toSet());
+
+    Map<String, Future<?>> pulls = new HashMap<>();
+    Set<String> failed = new HashSet<>();
+    try (ExecutorService executor = newRebuildExecutor("pull")) {
+      for (LighthouseImageUpdate update : imageUpdates) {
+        pulls.put(update.imageIdentifier().nameWithTag(), executor.submit(() -> {
+          updateBaseImage(update);
+          return null;
+        }));
+      }
+      for (var entry : pulls.entrySet()) {
+        try {
+          entry.getValue().get();
+        } catch (ExecutionException e) {
+          LOGGER.warn("Failed to pull base image {}", entry.getKey(), e.getCause());
+          failed.add(entry.getKey());
         }
-      });
+      }
+    }
+
+    return failed;
+  }
 
-    client.startContainerCmd(containerResponse.getId()).exec();
-    WaitContainerResultCallback waitCallback = client.waitContainerCmd(containerResponse.getId()).start();
+  private static String failureMessage(Map<String, List<String>> failedGroups, int groupCount) {
+    StringBuilder message = new StringBuilder("Rebuild failed for %d of %d group(s): %s".formatted(
+      failedGroups.size(),
+      groupCount,
+      failedGroups.keySet()
+    ));
+    for (var entry : failedGroups.entrySet()) {
+      if (entry.getValue().isEmpty()) {
+        continue;
+      }
+      message.append("\n\n[").append(entry.getKey()).append("]\n").append(String.join("\n", entry.getValue()));
+    }
+    return message.toString();
+  }
 
-    try (attached) {
-      int statusCode = waitCallback.awaitStatusCode();
+  /**
+   * Rebuilds the groups in parallel.
+   *
+   * @return the failed groups with the end of their output
+   */
+  private Map<String, List<String>> rebuildGroups(
+    Map<String, List<LighthouseContainerUpdate>> groups,
+    Set<String> failedPulls,
+    Consumer<String> successHook,
+    Consumer<String> progressHook
+  ) throws InterruptedException {
+    Map<String, List<String>> failedGroups = Collections.synchronizedMap(new LinkedHashMap<>());
+    AtomicBoolean stopped = new AtomicBoolean();
+
+    try (ExecutorService executor = newRebuildExecutor("rebuild")) {
+      for (var entry : groups.entrySet()) {
+        String group = entry.getKey();
+        List<LighthouseContainerUpdate> groupUpdates = entry.getValue();
+
+        executor.execute(() -> {
+          boolean baseMissing = groupUpdates.stream()
+            .anyMatch(it -> failedPulls.contains(it.imageUpdate().imageIdentifier().nameWithTag()));
+          if (baseMissing) {
+            LOGGER.warn("Skipping rebuild of {}, its base image could not be pulled", group);
+            failedGroups.put(group, List.of("Base image could not be pulled"));
+            successHook.accept("Failed: " + group);
+            return;
+          }
 
-      if (statusCode != 0) {
-        LOGGER.warn("Rebuild failed with exit code {}", statusCode);
-        throw new RebuildFailedException("Rebuild script failed, exit code: " + statusCode);
-      } else {
-        LOGGER.info("Rebuild successful");
+          if (stopped.get()) {
+            failedGroups.put(group, List.of("Skipped after an earlier failure"));
+            successHook.accept("Skipped: " + group);
+            return;
+          }
+
+          try {
+            rebuildGroup(group, groupUpdates, line -> progressHook.accept("[" + group + "] " + line), stopped);
+            successHook.accept("Updated: " + group);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failedGroups.put(group, List.of());
+          } catch (RuntimeException e) {
+            LOGGER.warn("Rebuild of {} failed", group, e);
+            failedGroups.put(group, failureOutput(e));
+            successHook.accept("Failed: " + group);
+            if (rollingUpdate.isPresent()) {
+              stopped.set(true);
+            }
+          }
+        });
+      }
+    }
+
+    return failedGroups;
+  }
+
+  /**
+   * Rebuilds a single group, either at once or batch by batch.
+   *
+   * @param stopped set once any group failed during a rolling update. Remaining batches are skipped then.
+   */
+  private void rebuildGroup(
+    String group,
+    List<LighthouseContainerUpdate> updates,
+    Consumer<String> progress,
+    AtomicBoolean stopped
+  ) throws InterruptedException {
+    if (rollingUpdate.isEmpty()) {
+      engine.rebuild(group, updates, progress);
+      history.recordApplied(updates, Instant.now());
+      return;
+    }
+
+    List<List<LighthouseContainerUpdate>> batches = Lists.partition(updates, rollingUpdate.get().batchSize());
+    for (int i = 0; i < batches.size(); i++) {
+      List<LighthouseContainerUpdate> batch = batches.get(i);
+      List<String> names = batch.stream().flatMap(it -> it.names().stream()).toList();
+      if (stopped.get()) {
+        throw new RebuildFailedException(
+          "Stopped before batch %d of %d, another group failed".formatted(i + 1, batches.size())
+        );
+      }
+
+      progress.accept("Batch %d/%d: %s".formatted(i + 1, batches.size(), String.join(", ", names)));
+      try {
+        engine.rebuild(group, batch, progress);
+        // Rebuilt containers are recorded even if they turn out unhealthy, they were replaced after all
+        history.recordApplied(batch, Instant.now());
+
+        progress.accept("Waiting for %s to become healthy".formatted(String.join(", ", names)));
+        healthGate.awaitHealthy(names, rollingUpdate.get().healthTimeout());
+      } catch (RebuildFailedException e) {
+        throw new RebuildFailedException(
+          "Batch %d of %d failed, %d container(s) were not updated: %s".formatted(
+            i + 1,
+            batches.size(),
+            batches.stream().skip(i + 1).mapToInt(List::size).sum(),
+            e.reason()
+          ),
+          e.logTail(),
+          e
+        );
       }
-    } catch (DockerClientException | IOException e) {
-      LOGGER.info("Wait operation failed, updater status unknown", e);
-      throw new RebuildFailedException("Waiting for rebuild script failed", e);
     }
   }
 
-  private void pullUpdaterImageIfNecessary() throws InterruptedException {
-    String updaterImageWithTag = updaterDockerImage.contains(":") ? updaterDockerImage : updaterDockerImage + ":latest";
-    boolean needsToPullUpdater = client.listImagesCmd()
-      .withReferenceFilter(updaterImageWithTag)
-      .exec()
-      .isEmpty();
-
-    if (needsToPullUpdater) {
-      LOGGER.info("Updater image not present locally, pulling");
-      client.pullImageCmd(updaterImageWithTag.split(":")[0])
-        .withTag(updaterImageWithTag.split(":")[1])
-        .exec(new PullImageResultCallback())
-        .awaitCompletion(5, TimeUnit.MINUTES);
+  private static List<String> failureOutput(RuntimeException e) {
+    if (e instanceof RebuildFailedException rebuildFailed) {
+      List<String> output = new ArrayList<>();
+      output.add(rebuildFailed.reason());
+      output.addAll(rebuildFailed.logTail());
+      return output;
     }
+    return List.of(String.valueOf(e.getMessage()));
   }
 
-  private static List<Bind> mountsToBinds(List<String> updaterMounts) {
-    return updaterMounts.stream().map(DockerUpdater::mountToBind).toList();
+  private ExecutorService newRebuildExecutor(String purpose) {
+    return Executors.newFixedThreadPool(concurrency, Thread.ofVirtual().name(purpose + "-", 0).factory());
   }
 
-  private static Bind mountToBind(String mount) {
-    String[] parts = mount.split(":");
-    if (parts.length != 2) {
-      throw new IllegalArgumentException("Mount '" + mount + "' did not conform to 'source:dest' format.");
+  private static String groupName(LighthouseContainerUpdate update) {
+    String project = update.labels().get(COMPOSE_PROJECT_LABEL);
+    if (project != null) {
+      return project;
     }
-    return new Bind(parts[0], new Volume(parts[1]));
+    // Containers outside of compose projects are independent of each other
+    return String.join(",", update.names());
   }
 }
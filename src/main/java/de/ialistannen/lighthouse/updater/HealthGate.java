@@ -0,0 +1,104 @@
+package de.ialistannen.lighthouse.updater;
+
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.api.command.HealthState;
+import com.github.dockerjava.api.command.InspectContainerResponse;
+import com.github.dockerjava.api.command.InspectContainerResponse.ContainerState;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Waits for recreated containers to become healthy.
+ * <p>
+ * Containers with a health check must report {@code healthy}. Containers without one must keep running without a
+ * restart for {@link #MIN_UPTIME} (or the whole timeout, if it is shorter), so crash loops are not mistaken for a
+ * successful start. Containers that were never started are accepted, as they were not running before the update
+ * either.
+ */
+class HealthGate {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(HealthGate.class);
+  private static final Duration POLL_INTERVAL = Duration.ofSeconds(2);
+  private static final Duration MIN_UPTIME = Duration.ofSeconds(10);
+
+  private final DockerClient client;
+
+  HealthGate(DockerClient client) {
+    this.client = client;
+  }
+
+  /**
+   * Waits until all containers are healthy.
+   *
+   * @param containerNames the names of the containers
+   * @param timeout how long to wait at most
+   * @throws InterruptedException if interrupted while waiting
+   * @throws RebuildFailedException if a container became unhealthy, exited or did not become healthy in time
+   */
+  void awaitHealthy(List<String> containerNames, Duration timeout) throws InterruptedException {
+    Instant deadline = Instant.now().plus(timeout);
+    Duration minUptime = MIN_UPTIME.compareTo(timeout) < 0 ? MIN_UPTIME : timeout;
+    Map<String, Run> firstRuns = new HashMap<>();
+    List<String> pending = new ArrayList<>(containerNames);
+
+    while (true) {
+      pending.removeIf(it -> isHealthy(it, firstRuns, minUptime));
+      if (pending.isEmpty()) {
+        return;
+      }
+      if (Instant.now().isAfter(deadline)) {
+        throw new RebuildFailedException("Containers %s did not become healthy within %s".formatted(pending, timeout));
+      }
+      LOGGER.debug("Waiting for {} to become healthy", pending);
+      Thread.sleep(POLL_INTERVAL);
+    }
+  }
+
+  private boolean isHealthy(String containerName, Map<String, Run> firstRuns, Duration minUptime) {
+    InspectContainerResponse container = client.inspectContainerCmd(containerName).exec();
+    ContainerState state = container.getState();
+    HealthState health = state.getHealth();
+
+    if ("created".equals(state.getStatus())) {
+      return true;
+    }
+    if (!Boolean.TRUE.equals(state.getRunning())) {
+      throw new RebuildFailedException(
+        "Container %s is not running after the update (exit code %s)".formatted(containerName, state.getExitCodeLong())
+      );
+    }
+    Run run = new Run(state.getStartedAt(), container.getRestartCount(), Instant.now());
+    Run firstRun = firstRuns.computeIfAbsent(containerName, _ -> run);
+    if (!firstRun.isSameRun(run)) {
+      throw new RebuildFailedException("Container %s restarted after the update".formatted(containerName));
+    }
+    if (health == null || health.getStatus() == null) {
+      return !run.seenAt().isBefore(firstRun.seenAt().plus(minUptime));
+    }
+    if ("unhealthy".equals(health.getStatus())) {
+      throw new RebuildFailedException("Container %s is unhealthy after the update".formatted(containerName));
+    }
+    return "healthy".equals(health.getStatus());
+  }
+
+  /**
+   * A run of a container, as observed at some point.
+   *
+   * @param startedAt when the container was started
+   * @param restartCount how often docker restarted it
+   * @param seenAt when it was observed
+   */
+  private record Run(String startedAt, Integer restartCount, Instant seenAt) {
+
+    boolean isSameRun(Run other) {
+      return Objects.equals(startedAt, other.startedAt) && Objects.equals(restartCount, other.restartCount);
+    }
+  }
+}
@@ -0,0 +1,438 @@
+package de.ialistannen.lighthouse.updater;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.api.command.BuildImageResultCallback;
+import com.github.dockerjava.api.command.CreateContainerCmd;
+import com.github.dockerjava.api.command.InspectContainerResponse;
+import com.github.dockerjava.api.exception.DockerClientException;
+import com.github.dockerjava.api.exception.NotFoundException;
+import com.github.dockerjava.api.model.AccessMode;
+import com.github.dockerjava.api.model.Bind;
+import com.github.dockerjava.api.model.BuildResponseItem;
+import com.github.dockerjava.api.model.ContainerConfig;
+import com.github.dockerjava.api.model.ContainerNetwork;
+import com.github.dockerjava.api.model.HostConfig;
+import com.github.dockerjava.api.model.Mount;
+import com.github.dockerjava.api.model.MountType;
+import com.github.dockerjava.api.model.Volume;
+import de.ialistannen.lighthouse.model.ImageIdentifier;
+import de.ialistannen.lighthouse.model.LighthouseContainerUpdate;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Rebuilds and recreates containers directly through the docker API, without an updater container.
+ * <p>
+ * The compose labels of a container tell us where its compose files live and which service it belongs to. If the
+ * service has a {@code build} section, its image is rebuilt from that context, using the current image as cache. The
+ * container is then recreated with the configuration of the old one. The compose files and build contexts must be
+ * visible to lighthouse under the same paths as on the host.
+ * <p>
+ * The docker API only exposes the classic builder, so BuildKit features are not available. Layer caching still works
+ * through {@code cacheFrom}.
+ */
+public class NativeRebuildEngine implements RebuildEngine {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(NativeRebuildEngine.class);
+
+  private static final String WORKING_DIR_LABEL = "com.docker.compose.project.working_dir";
+  private static final String CONFIG_FILES_LABEL = "com.docker.compose.project.config_files";
+  private static final String SERVICE_LABEL = "com.docker.compose.service";
+
+  private static final String LOW_CPU_SHARES = "128";
+
+  private final DockerClient client;
+  private final StagedImages stagedImages;
+  private final ObjectMapper yamlMapper;
+
+  /**
+   * @param client the docker client
+   * @param stagedImages images built ahead of time, used instead of building again
+   */
+  public NativeRebuildEngine(DockerClient client, StagedImages stagedImages) {
+    this.client = client;
+    this.stagedImages = stagedImages;
+    this.yamlMapper = new ObjectMapper(new YAMLFactory());
+  }
+
+  @Override
+  public void rebuild(String group, List<LighthouseContainerUpdate> updates, Consumer<String> progress)
+    throws InterruptedException {
+    for (LighthouseContainerUpdate update : updates) {
+      for (String name : update.names()) {
+        rebuildContainer(name, update.imageUpdate().remoteManifestDigest(), progress);
+      }
+    }
+  }
+
+  /**
+   * Builds the image of a container under a different tag, without touching the container. Used to prepare an update
+   * ahead of time, so the build runs with low CPU priority.
+   *
+   * @param containerName the name of the container
+   * @param tag the tag to build the image as
+   * @return the id of the built image, empty if the container is not built from a compose build section
+   * @throws InterruptedException if interrupted while building
+   */
+  Optional<String> buildStaged(String containerName, String tag) throws InterruptedException {
+    InspectContainerResponse container = client.inspectContainerCmd(containerName).exec();
+    Optional<BuildConfig> buildConfig = findBuildConfig(container.getConfig().getLabels());
+    if (buildConfig.isEmpty()) {
+      return Optional.empty();
+    }
+    return Optional.of(build(containerName, tag, container.getImageId(), buildConfig.get(), true, _ -> {
+    }));
+  }
+
+  private void rebuildContainer(String name, String baseDigest, Consumer<String> progress)
+    throws InterruptedException {
+    InspectContainerResponse container = client.inspectContainerCmd(name).exec();
+    String image = container.getConfig().getImage();
+
+    Optional<String> staged = stagedImages.take(name, baseDigest);
+    if (staged.isPresent()) {
+      LOGGER.info("Using pre-built image {} for {}", staged.get(), name);
+      ImageIdentifier target = ImageIdentifier.fromString(image);
+      client.tagImageCmd(staged.get(), target.image(), target.tag()).withForce(true).exec();
+      stagedImages.release(staged.get());
+    } else {
+      Optional<BuildConfig> buildConfig = findBuildConfig(container.getConfig().getLabels());
+      if (buildConfig.isPresent()) {
+        progress.accept("Building " + name);
+        build(name, image, container.getImageId(), buildConfig.get(), false, progress);
+      }
+    }
+
+    progress.accept("Recreating " + name);
+    recreate(container, image);
+    progress.accept("Rebuilt " + name);
+  }
+
+  private String build(
+    String name,
+    String tag,
+    String previousImageId,
+    BuildConfig config,
+    boolean lowPriority,
+    Consumer<String> progress
+  ) throws InterruptedException {
+    LOGGER.info("Building {} from {}", tag, config.context());
+
+    var command = client.buildImageCmd()
+      .withBaseDirectory(config.context().toFile())
+      .withDockerfile(config.context().resolve(config.dockerfile()).toFile())
+      .withTags(Set.of(tag))
+      .withCacheFrom(Set.of(previousImageId))
+      // The base image was pulled just before
+      .withPull(false);
+    config.args().forEach(command::withBuildArg);
+    config.target().ifPresent(command::withTarget);
+    if (lowPriority) {
+      command.withCpushares(LOW_CPU_SHARES);
+    }
+
+    UpdaterLogStream output = new UpdaterLogStream("build " + name, progress);
+    String imageId;
+    try {
+      imageId = command.exec(new BuildImageResultCallback() {
+        @Override
+        public void onNext(BuildResponseItem item) {
+          if (item.getStream() != null) {
+            output.accept(item.getStream(), false);
+          }
+          if (item.getErrorDetail() != null && item.getErrorDetail().getMessage() != null) {
+            output.accept(item.getErrorDetail().getMessage() + "\n", true);
+          }
+          super.onNext(item);
+        }
+      }).awaitImageId(30, TimeUnit.MINUTES);
+    } catch (DockerClientException e) {
+      output.flush();
+      throw new RebuildFailedException("Build of " + name + " failed", output.tail(), e);
+    }
+    output.flush();
+
+    LOGGER.info("Built {} as {}", tag, imageId);
+    return imageId;
+  }
+
+  /**
+   * Replaces the container with a new one using the same configuration. The old container is only removed once the new
+   * one started, and is restored otherwise.
+   */
+  private void recreate(InspectContainerResponse old, String image) {
+    String name = old.getName().substring(1);
+    String backupName = name + "-lighthouse-old";
+    boolean wasRunning = Boolean.TRUE.equals(old.getState().getRunning());
+
+    String newId = null;
+    try {
+      if (wasRunning) {
+        client.stopContainerCmd(old.getId()).exec();
+      }
+      client.renameContainerCmd(old.getId()).withName(backupName).exec();
+
+      newId = createLike(old, name, image);
+      connectNetworks(old, newId);
+      if (wasRunning) {
+        client.startContainerCmd(newId).exec();
+      }
+    } catch (RuntimeException e) {
+      LOGGER.warn("Failed to recreate {}, restoring the old container", name, e);
+      restore(old, name, newId, wasRunning);
+      throw new RebuildFailedException("Failed to recreate " + name, e);
+    }
+
+    // Without removing volumes, they were taken over by the new container
+    client.removeContainerCmd(old.getId()).exec();
+  }
+
+  /**
+   * Restores the old container after recreating it failed. Every step is attempted even if earlier ones fail, as any of
+   * them gets the service closer to running again.
+   */
+  private void restore(InspectContainerResponse old, String name, String newId, boolean wasRunning) {
+    bestEffort("remove the new container of " + name, () -> {
+      if (newId != null) {
+        client.removeContainerCmd(newId).withForce(true).exec();
+        return;
+      }
+      // The new container might have been created before failing, it then blocks the name
+      InspectContainerResponse blocking = client.inspectContainerCmd(name).exec();
+      if (!blocking.getId().equals(old.getId())) {
+        client.removeContainerCmd(blocking.getId()).withForce(true).exec();
+      }
+    });
+    bestEffort("rename the old container back to " + name, () -> {
+      if (!client.inspectContainerCmd(old.getId()).exec().getName().equals("/" + name)) {
+        client.renameContainerCmd(old.getId()).withName(name).exec();
+      }
+    });
+    if (wasRunning) {
+      bestEffort("start the old container of " + name, () -> client.startContainerCmd(old.getId()).exec());
+    }
+  }
+
+  private static void bestEffort(String description, Runnable action) {
+    try {
+      action.run();
+    } catch (NotFoundException e) {
+      LOGGER.debug("Nothing to do to {}", description);
+    } catch (RuntimeException e) {
+      LOGGER.warn("Failed to {}", description, e);
+    }
+  }
+
+  private String createLike(InspectContainerResponse old, String name, String image) {
+    ContainerConfig config = old.getConfig();
+
+    CreateContainerCmd create = client.createContainerCmd(image)
+      .withName(name)
+      .withHostConfig(withAnonymousVolumes(old))
+      .withLabels(config.getLabels())
+      .withEnv(orEmpty(config.getEnv()))
+      .withWorkingDir(config.getWorkingDir())
+      .withUser(config.getUser())
+      .withTty(config.getTty())
+      .withStdinOpen(config.getStdinOpen())
+      .withHealthcheck(config.getHealthcheck());
+    // An empty entrypoint or command would override the one of the image
+    if (config.getCmd() != null) {
+      create.withCmd(config.getCmd());
+    }
+    if (config.getEntrypoint() != null) {
+      create.withEntrypoint(config.getEntrypoint());
+    }
+    if (config.getExposedPorts() != null) {
+      create.withExposedPorts(config.getExposedPorts());
+    }
+    // Docker defaults the hostname to the container id. Only keep explicitly set ones.
+    if (config.getHostName() != null && !old.getId().startsWith(config.getHostName())) {
+      create.withHostName(config.getHostName());
+    }
+    if (config.getDomainName() != null && !config.getDomainName().isEmpty()) {
+      create.withDomainName(config.getDomainName());
+    }
+    if (config.getMacAddress() != null && !config.getMacAddress().isEmpty()) {
+      create.withMacAddress(config.getMacAddress());
+    }
+    // Not modelled by docker-java
+    if (config.getRawValues().get("StopSignal") instanceof String stopSignal) {
+      create.withStopSignal(stopSignal);
+    }
+
+    return create.exec().getId();
+  }
+
+  /**
+   * Returns the host config of the old container, with its anonymous volumes carried over like compose does. A new
+   * container would otherwise get fresh, empty volumes, e.g. for the data directory of a database image.
+   */
+  private static HostConfig withAnonymousVolumes(InspectContainerResponse old) {
+    HostConfig hostConfig = old.getHostConfig();
+
+    Map<String, String> volumesByTarget = new HashMap<>();
+    for (InspectContainerResponse.Mount mount : orEmpty(old.getMounts())) {
+      if ("volume".equals(mount.getRawValues().get("Type")) && mount.getName() != null) {
+        volumesByTarget.put(mount.getDestination().getPath(), mount.getName());
+      }
+    }
+
+    // Anonymous volumes given with --mount have no source
+    List<Mount> mounts = new ArrayList<>();
+    for (Mount mount : orEmpty(hostConfig.getMounts())) {
+      boolean anonymous = mount.getType() == MountType.VOLUME
+        && (mount.getSource() == null || mount.getSource().isEmpty());
+      if (anonymous && volumesByTarget.containsKey(mount.getTarget())) {
+        mount = mount.withSource(volumesByTarget.get(mount.getTarget()));
+      }
+      mounts.add(mount);
+      volumesByTarget.remove(mount.getTarget());
+    }
+    if (hostConfig.getMounts() != null) {
+      hostConfig.withMounts(mounts);
+    }
+
+    // Whatever is left comes from -v /path or a VOLUME in the image
+    List<Bind> binds = new ArrayList<>(orEmpty(hostConfig.getBinds()));
+    binds.forEach(it -> volumesByTarget.remove(it.getVolume().getPath()));
+    for (InspectContainerResponse.Mount mount : orEmpty(old.getMounts())) {
+      String target = mount.getDestination().getPath();
+      if (volumesByTarget.containsKey(target)) {
+        AccessMode accessMode = Boolean.FALSE.equals(mount.getRW()) ? AccessMode.ro : AccessMode.rw;
+        binds.add(new Bind(volumesByTarget.get(target), new Volume(target), accessMode));
+      }
+    }
+
+    return hostConfig.withBinds(binds);
+  }
+
+  /**
+   * Connects the new container to the networks of the old one, with the same aliases and static addresses.
+   */
+  private void connectNetworks(InspectContainerResponse old, String id) {
+    String networkMode = old.getHostConfig().getNetworkMode();
+    String shortId = old.getId().substring(0, 12);
+
+    for (Entry<String, ContainerNetwork> network : old.getNetworkSettings().getNetworks().entrySet()) {
+      ContainerNetwork oldEndpoint = network.getValue();
+      // Docker adds the short id as an alias, the new container gets its own
+      List<String> aliases = orEmpty(oldEndpoint.getAliases());
+      aliases.remove(shortId);
+
+      // The network from the network mode is attached on creation, but without aliases and addresses
+      if (network.getKey().equals(networkMode)) {
+        if (aliases.isEmpty() && oldEndpoint.getIpamConfig() == null) {
+          continue;
+        }
+        client.disconnectFromNetworkCmd().withNetworkId(network.getKey()).withContainerId(id).exec();
+      }
+
+      ContainerNetwork endpoint = new ContainerNetwork().withAliases(aliases);
+      if (oldEndpoint.getIpamConfig() != null) {
+        endpoint.withIpamConfig(oldEndpoint.getIpamConfig());
+      }
+      client.connectToNetworkCmd()
+        .withNetworkId(network.getKey())
+        .withContainerId(id)
+        .withContainerNetwork(endpoint)
+        .exec();
+    }
+  }
+
+  private Optional<BuildConfig> findBuildConfig(Map<String, String> labels) {
+    String workingDir = labels.get(WORKING_DIR_LABEL);
+    String configFiles = labels.get(CONFIG_FILES_LABEL);
+    String service = labels.get(SERVICE_LABEL);
+    if (workingDir == null || configFiles == null || service == null) {
+      return Optional.empty();
+    }
+
+    // Later files override earlier ones, like in compose
+    JsonNode build = null;
+    for (String file : configFiles.split(",")) {
+      Path path = Path.of(workingDir).resolve(file.strip());
+      try {
+        JsonNode serviceBuild = yamlMapper.readTree(Files.readString(path))
+          .path("services")
+          .path(service)
+          .get("build");
+        if (serviceBuild != null) {
+          build = serviceBuild;
+        }
+      } catch (IOException e) {
+        throw new RebuildFailedException("Could not read compose file " + path, e);
+      }
+    }
+    if (build == null) {
+      return Optional.empty();
+    }
+
+    if (build.isTextual()) {
+      return Optional.of(new BuildConfig(
+        Path.of(workingDir).resolve(build.asText()),
+        "Dockerfile",
+        Map.of(),
+        Optional.empty()
+      ));
+    }
+
+    Map<String, String> args = new LinkedHashMap<>();
+    JsonNode argsNode = build.path("args");
+    if (argsNode.isObject()) {
+      argsNode.properties().forEach(it -> args.put(it.getKey(), it.getValue().asText()));
+    } else if (argsNode.isArray()) {
+      for (JsonNode arg : argsNode) {
+        String[] parts = arg.asText().split("=", 2);
+        // Args without a value are taken from the environment of compose, which we do not have
+        if (parts.length == 2) {
+          args.put(parts[0], parts[1]);
+        }
+      }
+    }
+
+    return Optional.of(new BuildConfig(
+      Path.of(workingDir).resolve(build.path("context").asText(".")),
+      build.path("dockerfile").asText("Dockerfile"),
+      args,
+      Optional.ofNullable(build.get("target")).map(JsonNode::asText)
+    ));
+  }
+
+  private static <T> List<T> orEmpty(T[] values) {
+    return values == null ? List.of() : Arrays.asList(values);
+  }
+
+  private static <T> List<T> orEmpty(List<T> values) {
+    return values == null ? new ArrayList<>() : new ArrayList<>(values);
+  }
+
+  /**
+   * The build section of a compose service.
+   *
+   * @param context the build context
+   * @param dockerfile the dockerfile, relative to the context
+   * @param args the build args
+   * @param target the target stage, if any
+   */
+  private record BuildConfig(Path context, String dockerfile, Map<String, String> args, Optional<String> target) {
+
+  }
+}
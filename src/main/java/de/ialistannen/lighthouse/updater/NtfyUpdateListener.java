@@ -1,45 +1,83 @@
 package de.ialistannen.lighthouse.updater;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import de.ialistannen.lighthouse.model.LighthouseContainerUpdate;
 import de.ialistannen.lighthouse.notifier.Notifier;
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.net.URI;
-import java.net.URISyntaxException;
+import java.net.URLEncoder;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
 import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse;
 import java.net.http.HttpResponse.BodyHandlers;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.Flow;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Applies updates when an update request is published to the ntfy topic.
+ * <p>
+ * The topic is subscribed to on a virtual thread, which reconnects with jittered exponential backoff. Reconnects resume
+ * after the last seen message using the {@code since} parameter, so requests sent while disconnected are neither missed
+ * nor replayed. ntfy sends a keepalive event regularly, so a connection without any event for {@link #STALL_TIMEOUT} is
+ * considered stalled and reconnected. The same timeout applies to receiving the response headers.
+ */
 public class NtfyUpdateListener implements UpdateListener, Runnable {
 
   private static final String LIGHTHOUSE_LOGO =
       "https://raw.githubusercontent.com/I-Al-Istannen/Lighthouse/master/media/lighthouse.png?raw=true";
 
   private static final Logger LOGGER = LoggerFactory.getLogger(NtfyUpdateListener.class);
+  private static final Duration PROGRESS_INTERVAL = Duration.ofSeconds(30);
+  private static final Duration STALL_TIMEOUT = Duration.ofSeconds(120);
+  private static final Duration MIN_BACKOFF = Duration.ofSeconds(1);
+  private static final Duration MAX_BACKOFF = Duration.ofMinutes(5);
+  // A connection that lived this long was healthy, so the backoff starts over
+  private static final Duration HEALTHY_CONNECTION = Duration.ofMinutes(1);
 
   private final HttpClient httpClient;
-  private final DockerUpdater updater;
+  private final UpdateJobQueue jobQueue;
   private final Notifier notifier;
   private final URI url;
   private final Optional<String> hostname;
-  private List<LighthouseContainerUpdate> lastUpdates;
+  private final ObjectMapper objectMapper;
+  private final ScheduledExecutorService watchdog;
+  private volatile List<LighthouseContainerUpdate> lastUpdates;
+  private volatile Instant lastActivity;
+  private String since;
 
-  public NtfyUpdateListener(HttpClient httpClient, DockerUpdater updater, Notifier notifier, URI url,
+  public NtfyUpdateListener(HttpClient httpClient, UpdateJobQueue jobQueue, Notifier notifier, URI url,
       Optional<String> hostname) {
     this.httpClient = httpClient;
-    this.updater = updater;
+    this.jobQueue = jobQueue;
     this.notifier = notifier;
     this.url = url;
     this.hostname = hostname;
+    this.objectMapper = new ObjectMapper();
+    this.watchdog = Executors.newSingleThreadScheduledExecutor(
+      Thread.ofPlatform().daemon().name("ntfy-watchdog").factory()
+    );
     this.lastUpdates = new ArrayList<>();
+    this.lastActivity = Instant.now();
+    // Only requests published after startup are of interest
+    this.since = String.valueOf(Instant.now().getEpochSecond());
   }
 
   @Override
@@ -47,116 +85,181 @@ public class NtfyUpdateListener implements UpdateListener, Runnable {
     this.lastUpdates = updates;
   }
 
-  @Override
-  public void run() {
-    try {
-      HttpRequest request = HttpRequest.newBuilder(new URI(url.toString() + "/json"))
-        .header("X-Title", "Lighthouse Update" + hostname.map(h -> " (" + h + ")").orElse(""))
-        .header("X-Tags", "page_facing_up")
-        .header("X-Message", "Update all containers")
-        .build();
-      listen(request);
-    } catch (URISyntaxException e) {
-      LOGGER.warn("Ntfy request URI is invalid", e);
-    }
-  }
-
   public void start() {
-    new Thread(this).start();
+    Thread.ofVirtual().name("ntfy-subscriber").start(this);
   }
 
-  private void listen(HttpRequest request) {
-    httpClient.sendAsync(request, BodyHandlers.fromLineSubscriber(new UpdateRequestSubscriber()))
-      .thenAccept(response -> {
-        if (response.statusCode() != 200 && response.statusCode() != 204) {
-          LOGGER.warn("Failed to listen (HTTP {})", response.statusCode());
-        }
-        retry(request);
-      })
-      .exceptionally(throwable -> {
-        LOGGER.warn("Failed to listen", throwable);
-        notifier.notify(throwable);
-        retry(request);
-        return null;
-      });
-  }
+  @Override
+  public void run() {
+    Duration backoff = MIN_BACKOFF;
+    while (true) {
+      Instant connectedAt = Instant.now();
+      try {
+        listen();
+        LOGGER.info("Listening for updates completed");
+      } catch (IOException e) {
+        LOGGER.warn("Failed to listen", e);
+        notifier.notify(e);
+      } catch (InterruptedException e) {
+        LOGGER.info("Stopped listening for updates");
+        return;
+      }
 
-  private void retry(HttpRequest request) {
-    LOGGER.info("Retrying to listen in 30 seconds");
-    try {
-      Thread.sleep(30000);
-    } catch (InterruptedException e) {
-      LOGGER.debug("Interrupted while waiting to retry", e);
+      if (Duration.between(connectedAt, Instant.now()).compareTo(HEALTHY_CONNECTION) >= 0) {
+        backoff = MIN_BACKOFF;
+      }
+      // Full jitter in the upper half, so many instances do not reconnect at the same time
+      long delayMillis = ThreadLocalRandom.current().nextLong(backoff.toMillis() / 2, backoff.toMillis() + 1);
+      LOGGER.info("Retrying to listen in {} ms", delayMillis);
+      try {
+        Thread.sleep(delayMillis);
+      } catch (InterruptedException e) {
+        LOGGER.info("Stopped listening for updates");
+        return;
+      }
+      backoff = backoff.multipliedBy(2).compareTo(MAX_BACKOFF) > 0 ? MAX_BACKOFF : backoff.multipliedBy(2);
     }
-    listen(request);
   }
 
-  class UpdateRequestSubscriber implements Flow.Subscriber<String> {
-    @Override
-    public void onSubscribe(Flow.Subscription subscription) {
-      LOGGER.info("Listening for updates");
-      subscription.request(Long.MAX_VALUE);
+  /**
+   * Subscribes to the topic until the connection ends or stalls.
+   *
+   * @throws IOException if the connection failed or stalled
+   * @throws InterruptedException if the subscriber was stopped
+   */
+  private void listen() throws IOException, InterruptedException {
+    HttpRequest request = HttpRequest.newBuilder(
+        URI.create(url + "/json?since=" + URLEncoder.encode(since, StandardCharsets.UTF_8))
+      )
+      // Filters, so only update requests are delivered
+      .header("X-Title", "Lighthouse Update" + hostname.map(h -> " (" + h + ")").orElse(""))
+      .header("X-Tags", "page_facing_up")
+      .header("X-Message", "Update all containers")
+      // The watchdog only starts once the headers arrived, a half-open connection could otherwise block forever
+      .timeout(STALL_TIMEOUT)
+      .build();
+
+    HttpResponse<InputStream> response = httpClient.send(request, BodyHandlers.ofInputStream());
+    if (response.statusCode() != 200) {
+      response.body().close();
+      throw new IOException("Failed to listen (HTTP " + response.statusCode() + ")");
     }
 
-    @Override
-    public void onNext(String item) {
-      if (!item.contains("\"event\":\"message\"")) {
-        return;
+    Thread subscriber = Thread.currentThread();
+    AtomicBoolean stalled = new AtomicBoolean();
+    lastActivity = Instant.now();
+    var watchdogTask = watchdog.scheduleAtFixedRate(
+      () -> {
+        boolean silent = Duration.between(lastActivity, Instant.now()).compareTo(STALL_TIMEOUT) > 0;
+        if (silent && stalled.compareAndSet(false, true)) {
+          LOGGER.warn("No event from ntfy in {}, reconnecting", STALL_TIMEOUT);
+          subscriber.interrupt();
+        }
+      },
+      STALL_TIMEOUT.toSeconds() / 4,
+      STALL_TIMEOUT.toSeconds() / 4,
+      TimeUnit.SECONDS
+    );
+
+    try (
+      BufferedReader reader = new BufferedReader(new InputStreamReader(response.body(), StandardCharsets.UTF_8))
+    ) {
+      LOGGER.info("Listening for updates");
+      String line;
+      while ((line = reader.readLine()) != null) {
+        lastActivity = Instant.now();
+        onEvent(line);
+      }
+    } catch (IOException e) {
+      if (stalled.get()) {
+        // Reading threw because we interrupted it. Clear the flag, this is no request to stop.
+        Thread.interrupted();
+        throw new IOException("Connection stalled", e);
       }
-      LOGGER.debug("Received update request from ntfy: {}", item);
-      update();
+      throw e;
+    } finally {
+      watchdogTask.cancel(false);
     }
 
-    @Override
-    public void onError(Throwable throwable) {
-      LOGGER.warn("Error while listening for updates", throwable);
-      notifier.notify(throwable);
+    if (stalled.get()) {
+      Thread.interrupted();
     }
+  }
 
-    @Override
-    public void onComplete() {
-      LOGGER.info("Listening for updates completed");
+  private void onEvent(String line) {
+    if (line.isBlank()) {
+      return;
+    }
+    JsonNode event;
+    try {
+      event = objectMapper.readTree(line);
+    } catch (JsonProcessingException e) {
+      LOGGER.warn("Received malformed event from ntfy: {}", line, e);
+      return;
+    }
+    if (!"message".equals(event.path("event").asText())) {
+      return;
     }
 
-    private void update() {
-      LOGGER.info("Received update request");
-
-      CompletableFuture.runAsync(() -> {
-          try {
-            updater.rebuildContainers(lastUpdates, label -> LOGGER.info("Update finished"));
-            success();
-          } catch (InterruptedException e) {
-            throw new RuntimeException(e);
-          }
-        })
-        .exceptionally(throwable -> {
-          LOGGER.warn("Error while updating all", throwable);
-          notifier.notify(throwable);
-          return null;
-        });
+    LOGGER.debug("Received update request from ntfy: {}", line);
+    // Resume after this message on reconnect, so it is not handled twice
+    if (event.hasNonNull("id")) {
+      since = event.get("id").asText();
     }
+    update();
+  }
+
+  private void update() {
+    LOGGER.info("Received update request");
 
-    private void success() {
-      HttpRequest request = HttpRequest.newBuilder(url)
-        .header("X-Title", "Lighthouse Update" + hostname.map(h -> " (" + h + ")").orElse(""))
-        .header("X-Tags", "rocket")
-        .header("X-Icon", LIGHTHOUSE_LOGO)
-        .POST(BodyPublishers.ofString("All updates applied"))
-        .build();
-      send(request);
+    AtomicReference<Instant> lastProgress = new AtomicReference<>(Instant.now());
+    jobQueue.submit(lastUpdates, LOGGER::info, line -> progress(lastProgress, line))
+      .thenRun(this::success)
+      .exceptionally(throwable -> {
+        LOGGER.warn("Error while updating all", throwable);
+        notifier.notify(throwable);
+        return null;
+      });
+  }
+
+  /**
+   * Publishes a progress line, at most every {@link #PROGRESS_INTERVAL} to not flood the topic.
+   */
+  private void progress(AtomicReference<Instant> lastProgress, String line) {
+    Instant now = Instant.now();
+    Instant last = lastProgress.get();
+    if (now.isBefore(last.plus(PROGRESS_INTERVAL)) || !lastProgress.compareAndSet(last, now)) {
+      return;
     }
+    HttpRequest request = HttpRequest.newBuilder(url)
+      .header("X-Title", "Lighthouse Update" + hostname.map(h -> " (" + h + ")").orElse(""))
+      .header("X-Tags", "hourglass_flowing_sand")
+      .header("X-Priority", "low")
+      .POST(BodyPublishers.ofString(line))
+      .build();
+    send(request);
+  }
 
-    private void send(HttpRequest request) {
-      try {
-        LOGGER.debug("Sending webhook {}", request.bodyPublisher().orElse(BodyPublishers.noBody()));
+  private void success() {
+    HttpRequest request = HttpRequest.newBuilder(url)
+      .header("X-Title", "Lighthouse Update" + hostname.map(h -> " (" + h + ")").orElse(""))
+      .header("X-Tags", "rocket")
+      .header("X-Icon", LIGHTHOUSE_LOGO)
+      .POST(BodyPublishers.ofString("All updates applied"))
+      .build();
+    send(request);
+  }
 
-        HttpResponse<String> response = httpClient.send(request, BodyHandlers.ofString());
-        if (response.statusCode() != 200 && response.statusCode() != 204) {
-          LOGGER.warn("Failed to notify (HTTP {}): {}", response.statusCode(), response.body());
-        }
-      } catch (IOException | InterruptedException e) {
-        LOGGER.warn("Failed to notify!", e);
+  private void send(HttpRequest request) {
+    try {
+      LOGGER.debug("Sending webhook {}", request.bodyPublisher().orElse(BodyPublishers.noBody()));
+
+      HttpResponse<String> response = httpClient.send(request, BodyHandlers.ofString());
+      if (response.statusCode() != 200 && response.statusCode() != 204) {
+        LOGGER.warn("Failed to notify (HTTP {}): {}", response.statusCode(), response.body());
       }
+    } catch (IOException | InterruptedException e) {
+      LOGGER.warn("Failed to notify!", e);
     }
   }
 }
@@ -0,0 +1,218 @@
+package de.ialistannen.lighthouse.updater;
+
+import de.ialistannen.lighthouse.model.LighthouseContainerUpdate;
+import de.ialistannen.lighthouse.model.LighthouseImageUpdate;
+import de.ialistannen.lighthouse.notifier.NotificationDispatcher;
+import de.ialistannen.lighthouse.notifier.UpdateDetail;
+import de.ialistannen.lighthouse.notifier.UpdateDetailProvider;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Speculatively builds the new images of updated containers in the background, so applying the update only needs to
+ * recreate the container.
+ * <p>
+ * Builds run one at a time with low CPU priority and are tagged as {@link StagedImages staging images}. Like pre-pulls,
+ * they only start within the pre-pull window and pull their base images through the {@link PrePuller}, so its
+ * concurrency limit applies. The build state is added to notifications, and once all builds of a notification are
+ * done, it is sent again with their results.
+ */
+public class PreBuilder implements UpdateDetailProvider {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(PreBuilder.class);
+  private static final Duration GARBAGE_COLLECTION_INTERVAL = Duration.ofHours(1);
+
+  private final NativeRebuildEngine engine;
+  private final StagedImages stagedImages;
+  private final PrePuller puller;
+  private final ScheduledExecutorService executor;
+  private final Map<String, BuildJob> jobs;
+  private NotificationDispatcher notifier;
+  private List<LighthouseContainerUpdate> notifiedUpdates;
+  private boolean resultsPending;
+
+  /**
+   * @param engine the engine to build with
+   * @param stagedImages the staging images
+   * @param puller the puller to pull base images with. Its window also limits when builds start.
+   */
+  public PreBuilder(NativeRebuildEngine engine, StagedImages stagedImages, PrePuller puller) {
+    this.engine = engine;
+    this.stagedImages = stagedImages;
+    this.puller = puller;
+    this.executor = Executors.newSingleThreadScheduledExecutor(
+      Thread.ofPlatform().daemon().name("pre-build").factory()
+    );
+    this.jobs = new ConcurrentHashMap<>();
+    this.notifiedUpdates = List.of();
+  }
+
+  /**
+   * Removes leftover staging images and starts the periodic garbage collection.
+   *
+   * @param notifier the dispatcher to report build results through
+   */
+  public synchronized void start(NotificationDispatcher notifier) {
+    this.notifier = notifier;
+    executor.execute(stagedImages::removeAll);
+    executor.scheduleWithFixedDelay(
+      stagedImages::collectGarbage,
+      GARBAGE_COLLECTION_INTERVAL.toMinutes(),
+      GARBAGE_COLLECTION_INTERVAL.toMinutes(),
+      TimeUnit.MINUTES
+    );
+  }
+
+  /**
+   * Queues the images of the updated containers for building.
+   *
+   * @param updates the updates, as they will be notified
+   */
+  public synchronized void schedule(List<LighthouseContainerUpdate> updates) {
+    if (updates.isEmpty()) {
+      // Nothing is notified in this cycle, so the pending results still belong to the last notification
+      return;
+    }
+    // Results are reported for the latest notification only, earlier ones can no longer be acted on
+    notifiedUpdates = List.copyOf(updates);
+    resultsPending = false;
+    for (LighthouseContainerUpdate update : updates) {
+      // Lighthouse updates itself through the updater entrypoint
+      if (update.isMyself()) {
+        continue;
+      }
+      String digest = update.imageUpdate().remoteManifestDigest();
+      for (String name : update.names()) {
+        BuildJob existing = jobs.get(name);
+        if (existing != null && existing.digest().equals(digest)) {
+          continue;
+        }
+        jobs.put(name, new BuildJob(digest, BuildState.QUEUED));
+        resultsPending = true;
+        scheduleBuild(name, update.imageUpdate());
+      }
+    }
+  }
+
+  private void scheduleBuild(String name, LighthouseImageUpdate update) {
+    ZonedDateTime now = ZonedDateTime.now();
+    executor.schedule(
+      () -> build(name, update),
+      Duration.between(now, puller.nextStart(now)).toMillis(),
+      TimeUnit.MILLISECONDS
+    );
+  }
+
+  private void build(String name, LighthouseImageUpdate update) {
+    String digest = update.remoteManifestDigest();
+    BuildJob job = jobs.get(name);
+    if (job == null || !job.digest().equals(digest)) {
+      // Superseded by a newer update, which has its own job
+      return;
+    }
+    ZonedDateTime now = ZonedDateTime.now();
+    if (puller.nextStart(now).isAfter(now)) {
+      // Queued behind other builds for too long, the window closed in the meantime. Try again in the next one.
+      scheduleBuild(name, update);
+      return;
+    }
+
+    jobs.put(name, job.withState(BuildState.BUILDING));
+    try {
+      puller.pullAndWait(update);
+
+      String tag = stagedImages.stagingTag(name, digest);
+      Optional<String> imageId = engine.buildStaged(name, tag);
+      if (imageId.isEmpty()) {
+        // Not built from a compose build section, recreating is already fast
+        jobs.remove(name, job.withState(BuildState.BUILDING));
+        return;
+      }
+      stagedImages.put(name, digest, tag);
+      jobs.put(name, job.withState(BuildState.READY));
+      LOGGER.info("Pre-built {} as {}", name, tag);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      jobs.put(name, job.withState(BuildState.FAILED));
+    } catch (ExecutionException | RuntimeException e) {
+      LOGGER.warn("Failed to pre-build {}", name, e);
+      jobs.put(name, job.withState(BuildState.FAILED));
+    } finally {
+      reportResults();
+    }
+  }
+
+  /**
+   * The original notification always shows the builds as queued, and the update filter keeps it from being sent again.
+   * Once all of its builds are done, it is therefore re-sent with their results. The updates are unchanged, so its
+   * update button acts on the same notification as the original one.
+   */
+  private synchronized void reportResults() {
+    if (!resultsPending || notifier == null) {
+      return;
+    }
+    boolean anyBuilt = false;
+    for (LighthouseContainerUpdate update : notifiedUpdates) {
+      String digest = update.imageUpdate().remoteManifestDigest();
+      for (String name : update.names()) {
+        BuildJob job = jobs.get(name);
+        if (job == null || !job.digest().equals(digest)) {
+          continue;
+        }
+        if (job.state() == BuildState.QUEUED || job.state() == BuildState.BUILDING) {
+          return;
+        }
+        anyBuilt = true;
+      }
+    }
+    resultsPending = false;
+    if (!anyBuilt) {
+      // Nothing had a build section, the notification is still accurate
+      return;
+    }
+
+    LOGGER.info("Pre-builds for {} update(s) are done, notifying again", notifiedUpdates.size());
+    // Not part of a cycle, so a failure must not keep an unrelated cycle from committing its updates
+    notifier.notifyUnconfirmed(notifiedUpdates);
+  }
+
+  @Override
+  public List<UpdateDetail> detailsFor(LighthouseContainerUpdate update) {
+    String name = update.names().getFirst();
+    BuildJob job = jobs.get(name);
+    if (job == null || !job.digest().equals(update.imageUpdate().remoteManifestDigest())) {
+      return List.of();
+    }
+    String state = switch (job.state()) {
+      case QUEUED -> "Queued";
+      case BUILDING -> "Building";
+      case READY -> stagedImages.isStaged(name, job.digest()) ? "Ready, update will be near-instant" : "Applied";
+      case FAILED -> "Failed, will be built on update";
+    };
+    return List.of(new UpdateDetail("Pre-build", state));
+  }
+
+  private enum BuildState {
+    QUEUED,
+    BUILDING,
+    READY,
+    FAILED
+  }
+
+  private record BuildJob(String digest, BuildState state) {
+
+    BuildJob withState(BuildState state) {
+      return new BuildJob(digest, state);
+    }
+  }
+}
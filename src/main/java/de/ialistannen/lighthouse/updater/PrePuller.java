@@ -0,0 +1,211 @@
+package de.ialistannen.lighthouse.updater;
+
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.api.command.InspectImageResponse;
+import com.github.dockerjava.api.command.PullImageResultCallback;
+import com.github.dockerjava.api.exception.NotFoundException;
+import de.ialistannen.lighthouse.model.LighthouseContainerUpdate;
+import de.ialistannen.lighthouse.model.LighthouseImageUpdate;
+import de.ialistannen.lighthouse.notifier.UpdateDetail;
+import de.ialistannen.lighthouse.notifier.UpdateDetailProvider;
+import de.ialistannen.lighthouse.util.TimeWindow;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pulls new base images in the background, so applying an update only needs to rebuild.
+ * <p>
+ * Pulls only start within the configured daily window (if any) and at most {@code concurrency} run at the same time.
+ * Images whose new digest is already present are skipped, and docker itself skips layers that are already present.
+ * The pull state is added to notifications.
+ */
+public class PrePuller implements UpdateDetailProvider {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(PrePuller.class);
+  private static final Duration PULL_TIMEOUT = Duration.ofMinutes(30);
+
+  private final DockerClient client;
+  private final Optional<TimeWindow> window;
+  private final ExecutorService pullExecutor;
+  private final ScheduledExecutorService scheduler;
+  private final Map<String, PullJob> jobs;
+
+  /**
+   * @param client the docker client
+   * @param window the daily window pulls may start in. Empty to pull right away.
+   * @param concurrency how many images to pull at the same time
+   */
+  public PrePuller(DockerClient client, Optional<TimeWindow> window, int concurrency) {
+    this.client = client;
+    this.window = window;
+    this.pullExecutor = Executors.newFixedThreadPool(
+      concurrency,
+      Thread.ofPlatform().daemon().name("pre-pull-", 0).factory()
+    );
+    this.scheduler = Executors.newSingleThreadScheduledExecutor(
+      Thread.ofPlatform().daemon().name("pre-pull-scheduler").factory()
+    );
+    this.jobs = new ConcurrentHashMap<>();
+  }
+
+  /**
+   * Queues the base images of the given updates for pulling.
+   *
+   * @param updates the updates
+   */
+  public void schedule(List<LighthouseContainerUpdate> updates) {
+    for (LighthouseContainerUpdate update : updates) {
+      LighthouseImageUpdate imageUpdate = update.imageUpdate();
+      String image = imageUpdate.imageIdentifier().nameWithTag();
+
+      PullJob existing = jobs.get(image);
+      if (existing != null && existing.digest().equals(imageUpdate.remoteManifestDigest())) {
+        continue;
+      }
+      if (isPresentLocally(client, imageUpdate)) {
+        jobs.put(image, new PullJob(imageUpdate.remoteManifestDigest(), PullState.PULLED));
+        continue;
+      }
+      jobs.put(image, new PullJob(imageUpdate.remoteManifestDigest(), PullState.QUEUED));
+
+      ZonedDateTime now = ZonedDateTime.now();
+      ZonedDateTime start = nextStart(now);
+      LOGGER.info("Pre-pulling {} at {}", image, start);
+      scheduler.schedule(
+        () -> pullExecutor.execute(() -> pull(imageUpdate)),
+        Duration.between(now, start).toMillis(),
+        TimeUnit.MILLISECONDS
+      );
+    }
+  }
+
+  private void pull(LighthouseImageUpdate update) {
+    String image = update.imageIdentifier().nameWithTag();
+    PullJob job = jobs.get(image);
+    if (job == null || !job.digest().equals(update.remoteManifestDigest())) {
+      // Superseded by a newer update, which has its own job
+      return;
+    }
+    ZonedDateTime now = ZonedDateTime.now();
+    if (nextStart(now).isAfter(now)) {
+      // Queued for too long, the window closed in the meantime. Try again in the next one.
+      scheduler.schedule(
+        () -> pullExecutor.execute(() -> pull(update)),
+        Duration.between(now, nextStart(now)).toMillis(),
+        TimeUnit.MILLISECONDS
+      );
+      return;
+    }
+
+    jobs.put(image, job.withState(PullState.PULLING));
+    try {
+      pullImage(update);
+      jobs.put(image, job.withState(PullState.PULLED));
+      LOGGER.info("Pre-pulled {}", image);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      jobs.put(image, job.withState(PullState.FAILED));
+    } catch (RuntimeException e) {
+      LOGGER.warn("Failed to pre-pull {}", image, e);
+      jobs.put(image, job.withState(PullState.FAILED));
+    }
+  }
+
+  /**
+   * Pulls the new base image of the update on the pull threads, so it counts towards the concurrency limit, and waits
+   * for it to finish. Does nothing if the image is already present.
+   *
+   * @param update the update
+   * @throws InterruptedException if interrupted while waiting
+   * @throws ExecutionException if pulling failed
+   */
+  void pullAndWait(LighthouseImageUpdate update) throws InterruptedException, ExecutionException {
+    if (isPresentLocally(client, update)) {
+      return;
+    }
+    pullExecutor.submit(() -> {
+      pullImage(update);
+      return null;
+    }).get();
+  }
+
+  /**
+   * @param now the current time
+   * @return the next time background work may start, {@code now} if it may start right away
+   */
+  ZonedDateTime nextStart(ZonedDateTime now) {
+    return window.map(it -> it.nextOpening(now)).orElse(now);
+  }
+
+  private void pullImage(LighthouseImageUpdate update) throws InterruptedException {
+    boolean completed = client.pullImageCmd(update.imageIdentifier().image())
+      .withTag(update.imageIdentifier().tag())
+      .exec(new PullImageResultCallback())
+      .awaitCompletion(PULL_TIMEOUT.toMinutes(), TimeUnit.MINUTES);
+    if (!completed) {
+      throw new IllegalStateException(
+        "Pulling %s did not finish within %s".formatted(update.imageIdentifier().nameWithTag(), PULL_TIMEOUT)
+      );
+    }
+  }
+
+  @Override
+  public List<UpdateDetail> detailsFor(LighthouseContainerUpdate update) {
+    PullJob job = jobs.get(update.imageUpdate().imageIdentifier().nameWithTag());
+    if (job == null || !job.digest().equals(update.imageUpdate().remoteManifestDigest())) {
+      return List.of();
+    }
+    String state = switch (job.state()) {
+      case QUEUED -> window.map(it -> "Queued (" + it + ")").orElse("Queued");
+      case PULLING -> "Pulling";
+      case PULLED -> "Ready";
+      case FAILED -> "Failed, will be pulled on update";
+    };
+    return List.of(new UpdateDetail("Base image pull", state));
+  }
+
+  /**
+   * @param client the docker client
+   * @param update the update
+   * @return true if the new base image is already present locally
+   */
+  static boolean isPresentLocally(DockerClient client, LighthouseImageUpdate update) {
+    try {
+      InspectImageResponse image = client.inspectImageCmd(update.imageIdentifier().nameWithTag()).exec();
+      return image.getRepoDigests() != null && image.getRepoDigests()
+        .stream()
+        .anyMatch(it -> it.endsWith("@" + update.remoteManifestDigest()));
+    } catch (NotFoundException e) {
+      return false;
+    } catch (RuntimeException e) {
+      // Called during the check cycle, which must still notify. Pulling needlessly is cheap, docker skips known layers.
+      LOGGER.warn("Failed to check whether {} is present", update.imageIdentifier().nameWithTag(), e);
+      return false;
+    }
+  }
+
+  private enum PullState {
+    QUEUED,
+    PULLING,
+    PULLED,
+    FAILED
+  }
+
+  private record PullJob(String digest, PullState state) {
+
+    PullJob withState(PullState state) {
+      return new PullJob(digest, state);
+    }
+  }
+}
@@ -0,0 +1,23 @@
+package de.ialistannen.lighthouse.updater;
+
+import de.ialistannen.lighthouse.model.LighthouseContainerUpdate;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Rebuilds and recreates containers after their base image was pulled.
+ */
+public interface RebuildEngine {
+
+  /**
+   * Rebuilds the containers of one group (e.g. a compose project).
+   *
+   * @param group the name of the group, for logging
+   * @param updates the updates of the containers in the group
+   * @param progress receives human-readable progress messages
+   * @throws InterruptedException if interrupted while waiting for the rebuild
+   * @throws RebuildFailedException if the rebuild failed
+   */
+  void rebuild(String group, List<LighthouseContainerUpdate> updates, Consumer<String> progress)
+    throws InterruptedException;
+}
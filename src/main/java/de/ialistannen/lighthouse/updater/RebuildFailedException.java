@@ -1,13 +1,54 @@
 package de.ialistannen.lighthouse.updater;
 
+import java.util.List;
+
 public class RebuildFailedException extends RuntimeException {
 
+  private final String reason;
+  private final List<String> logTail;
+
   public RebuildFailedException(String message) {
-    super(message);
+    this(message, List.of());
   }
 
   public RebuildFailedException(String message, Throwable cause) {
-    super(message, cause);
+    this(message, List.of(), cause);
+  }
+
+  /**
+   * @param message the message
+   * @param logTail the last lines of the updater output, appended to the message
+   */
+  public RebuildFailedException(String message, List<String> logTail) {
+    super(withLog(message, logTail));
+    this.reason = message;
+    this.logTail = List.copyOf(logTail);
+  }
+
+  public RebuildFailedException(String message, List<String> logTail, Throwable cause) {
+    super(withLog(message, logTail), cause);
+    this.reason = message;
+    this.logTail = List.copyOf(logTail);
   }
 
+  /**
+   * @return the message without the updater output
+   */
+  public String reason() {
+    return reason;
+  }
+
+  /**
+   * @return the last lines of the updater output, empty if there was none
+   */
+  public List<String> logTail() {
+    return logTail;
+  }
+
+  private static String withLog(String message, List<String> logTail) {
+    if (logTail.isEmpty()) {
+      return message;
+    }
+    return message + "\nLast " + logTail.size() + " line(s) of output:\n" + String.join("\n", logTail);
+  }
 }
@@ -0,0 +1,13 @@
+package de.ialistannen.lighthouse.updater;
+
+import java.time.Duration;
+
+/**
+ * Replaces the containers of a group in batches, waiting for each batch to become healthy before continuing.
+ *
+ * @param batchSize how many containers to replace at once
+ * @param healthTimeout how long to wait for a batch to become healthy
+ */
+public record RollingUpdatePolicy(int batchSize, Duration healthTimeout) {
+
+}
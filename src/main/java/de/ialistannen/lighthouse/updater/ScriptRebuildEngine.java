@@ -0,0 +1,144 @@
+package de.ialistannen.lighthouse.updater;
+
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.api.async.ResultCallback.Adapter;
+import com.github.dockerjava.api.command.CreateContainerResponse;
+import com.github.dockerjava.api.command.PullImageResultCallback;
+import com.github.dockerjava.api.command.WaitContainerResultCallback;
+import com.github.dockerjava.api.exception.DockerClientException;
+import com.github.dockerjava.api.model.Bind;
+import com.github.dockerjava.api.model.Frame;
+import com.github.dockerjava.api.model.HostConfig;
+import com.github.dockerjava.api.model.StreamType;
+import com.github.dockerjava.api.model.Volume;
+import de.ialistannen.lighthouse.model.LighthouseContainerUpdate;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Rebuilds containers by running a user-provided script in a fresh updater container. The script receives the names of
+ * the containers to rebuild as arguments.
+ */
+public class ScriptRebuildEngine implements RebuildEngine {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ScriptRebuildEngine.class);
+
+  private final DockerClient client;
+  private final List<Bind> updaterMounts;
+  private final String updaterEntrypoint;
+  private final String updaterDockerImage;
+
+  public ScriptRebuildEngine(
+    DockerClient client,
+    List<String> updaterMounts,
+    String updaterEntrypoint,
+    String updaterDockerImage
+  ) {
+    this.client = client;
+    this.updaterMounts = mountsToBinds(updaterMounts);
+    this.updaterEntrypoint = updaterEntrypoint;
+    this.updaterDockerImage = updaterDockerImage;
+
+    // Clean up potentially leftover containers
+    client.listContainersCmd()
+      .withStatusFilter(Set.of("exited", "created"))
+      .withShowAll(true)
+      .withLabelFilter(Set.of("lighthouse-builder-container"))
+      .exec()
+      .forEach(container -> client.removeContainerCmd(container.getId()).exec());
+  }
+
+  @Override
+  public void rebuild(String group, List<LighthouseContainerUpdate> updates, Consumer<String> progress)
+    throws InterruptedException {
+    List<String> command = updates.stream()
+      .map(LighthouseContainerUpdate::names)
+      .flatMap(Collection::stream)
+      .distinct()
+      .collect(Collectors.toCollection(ArrayList::new));
+    command.addFirst(updaterEntrypoint);
+
+    pullUpdaterImageIfNecessary();
+    callRebuildScript(group, command, progress);
+  }
+
+  private void callRebuildScript(String group, List<String> command, Consumer<String> progress)
+    throws InterruptedException {
+    CreateContainerResponse containerResponse = client.createContainerCmd(updaterDockerImage)
+      .withLabels(Map.of("lighthouse-builder-container", "true"))
+      .withHostConfig(HostConfig.newHostConfig().withBinds(updaterMounts).withAutoRemove(true))
+      .withCmd(command)
+      .exec();
+    LOGGER.info("Started updater for {} has ID {}", group, containerResponse.getId());
+
+    UpdaterLogStream output = new UpdaterLogStream(group, progress);
+    Adapter<Frame> attached = client.attachContainerCmd(containerResponse.getId())
+      .withFollowStream(true)
+      .withLogs(true)
+      .withStdOut(true)
+      .withStdErr(true)
+      .exec(new Adapter<>() {
+        @Override
+        public void onNext(Frame object) {
+          output.accept(object.getPayload(), object.getStreamType() == StreamType.STDERR);
+        }
+      });
+
+    client.startContainerCmd(containerResponse.getId()).exec();
+    WaitContainerResultCallback waitCallback = client.waitContainerCmd(containerResponse.getId()).start();
+
+    try (attached) {
+      int statusCode = waitCallback.awaitStatusCode();
+      // The exit status can arrive before the last frames
+      attached.awaitCompletion(5, TimeUnit.SECONDS);
+      output.flush();
+
+      if (statusCode != 0) {
+        LOGGER.warn("Rebuild of {} failed with exit code {}", group, statusCode);
+        throw new RebuildFailedException("Rebuild script failed, exit code: " + statusCode, output.tail());
+      } else {
+        LOGGER.info("Rebuild of {} successful", group);
+      }
+    } catch (DockerClientException | IOException e) {
+      LOGGER.info("Wait operation failed, updater status unknown", e);
+      throw new RebuildFailedException("Waiting for rebuild script failed", output.tail(), e);
+    }
+  }
+
+  private void pullUpdaterImageIfNecessary() throws InterruptedException {
+    String updaterImageWithTag = updaterDockerImage.contains(":") ? updaterDockerImage : updaterDockerImage + ":latest";
+    boolean needsToPullUpdater = client.listImagesCmd()
+      .withReferenceFilter(updaterImageWithTag)
+      .exec()
+      .isEmpty();
+
+    if (needsToPullUpdater) {
+      LOGGER.info("Updater image not present locally, pulling");
+      client.pullImageCmd(updaterImageWithTag.split(":")[0])
+        .withTag(updaterImageWithTag.split(":")[1])
+        .exec(new PullImageResultCallback())
+        .awaitCompletion(5, TimeUnit.MINUTES);
+    }
+  }
+
+  private static List<Bind> mountsToBinds(List<String> updaterMounts) {
+    return updaterMounts.stream().map(ScriptRebuildEngine::mountToBind).toList();
+  }
+
+  private static Bind mountToBind(String mount) {
+    String[] parts = mount.split(":");
+    if (parts.length != 2) {
+      throw new IllegalArgumentException("Mount '" + mount + "' did not conform to 'source:dest' format.");
+    }
+    return new Bind(parts[0], new Volume(parts[1]));
+  }
+}
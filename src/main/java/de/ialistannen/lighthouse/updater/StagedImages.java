@@ -0,0 +1,155 @@
+package de.ialistannen.lighthouse.updater;
+
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.api.exception.NotFoundException;
+import com.github.dockerjava.api.model.Image;
+import de.ialistannen.lighthouse.metrics.Counter;
+import de.ialistannen.lighthouse.metrics.MetricsRegistry;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps track of images built ahead of time under a staging tag ({@value #REPOSITORY_PREFIX}{@code <container>}).
+ * <p>
+ * A staged image is removed when a newer one for the same container replaces it, when it was not applied within its
+ * time to live, and on startup, as we lost track of the images of the previous run.
+ */
+public class StagedImages {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(StagedImages.class);
+  private static final String REPOSITORY_PREFIX = "lighthouse-staging/";
+
+  private final DockerClient client;
+  private final Duration ttl;
+  private final Map<String, StagedImage> images;
+  private final Counter lookups;
+
+  /**
+   * @param client the docker client
+   * @param ttl how long to keep staged images that were not applied
+   * @param metrics the registry to record hits and misses in
+   */
+  public StagedImages(DockerClient client, Duration ttl, MetricsRegistry metrics) {
+    this.client = client;
+    this.ttl = ttl;
+    this.images = new ConcurrentHashMap<>();
+    this.lookups = metrics.counter(
+      "lighthouse_cache_requests_total",
+      "Lookups of reusable work, by whether it could be reused",
+      "cache", "result"
+    );
+  }
+
+  /**
+   * Removes all staging images, e.g. left over from a previous run.
+   */
+  public void removeAll() {
+    for (Image image : client.listImagesCmd().withReferenceFilter(REPOSITORY_PREFIX + "*").exec()) {
+      if (image.getRepoTags() == null) {
+        continue;
+      }
+      for (String tag : image.getRepoTags()) {
+        LOGGER.info("Removing leftover staging image {}", tag);
+        remove(tag);
+      }
+    }
+  }
+
+  /**
+   * @param containerName the name of the container
+   * @param baseDigest the digest of the base image the image is built on
+   * @return the staging tag for the container and base image
+   */
+  String stagingTag(String containerName, String baseDigest) {
+    String repository = containerName.toLowerCase(Locale.ROOT).replaceAll("[^a-z0-9._-]", "-");
+    String digest = baseDigest.substring(baseDigest.indexOf(':') + 1);
+    return REPOSITORY_PREFIX + repository + ":" + digest.substring(0, Math.min(12, digest.length()));
+  }
+
+  /**
+   * Records a staged image, removing the one it supersedes.
+   *
+   * @param containerName the name of the container
+   * @param baseDigest the digest of the base image it was built on
+   * @param tag the staging tag
+   */
+  void put(String containerName, String baseDigest, String tag) {
+    StagedImage previous = images.put(containerName, new StagedImage(baseDigest, tag, Instant.now()));
+    if (previous != null && !previous.tag().equals(tag)) {
+      LOGGER.info("Removing superseded staging image {}", previous.tag());
+      remove(previous.tag());
+    }
+  }
+
+  /**
+   * Takes the staged image for a container, if it was built on the given base image.
+   *
+   * @param containerName the name of the container
+   * @param baseDigest the digest of the wanted base image
+   * @return the staging tag of the image
+   */
+  Optional<String> take(String containerName, String baseDigest) {
+    StagedImage image = images.get(containerName);
+    if (image == null || !image.baseDigest().equals(baseDigest)) {
+      lookups.increment("pre-build", "miss");
+      return Optional.empty();
+    }
+    lookups.increment("pre-build", "hit");
+    images.remove(containerName, image);
+    return Optional.of(image.tag());
+  }
+
+  /**
+   * @param containerName the name of the container
+   * @param baseDigest the digest of the base image
+   * @return true if a staged image built on the base image is ready
+   */
+  boolean isStaged(String containerName, String baseDigest) {
+    StagedImage image = images.get(containerName);
+    return image != null && image.baseDigest().equals(baseDigest);
+  }
+
+  /**
+   * Removes the staging tag of an applied image. The image itself stays, as it is tagged as the real image now.
+   *
+   * @param tag the staging tag
+   */
+  void release(String tag) {
+    remove(tag);
+  }
+
+  /**
+   * Removes staged images that were not applied within their time to live.
+   */
+  public void collectGarbage() {
+    Instant expiry = Instant.now().minus(ttl);
+    images.entrySet().removeIf(entry -> {
+      if (entry.getValue().builtAt().isAfter(expiry)) {
+        return false;
+      }
+      LOGGER.info("Removing staging image {}, it was never applied", entry.getValue().tag());
+      remove(entry.getValue().tag());
+      return true;
+    });
+  }
+
+  private void remove(String tag) {
+    try {
+      client.removeImageCmd(tag).exec();
+    } catch (NotFoundException e) {
+      LOGGER.debug("Staging image {} was already gone", tag);
+    } catch (RuntimeException e) {
+      LOGGER.warn("Failed to remove staging image {}", tag, e);
+    }
+  }
+
+  private record StagedImage(String baseDigest, String tag, Instant builtAt) {
+
+  }
+}
@@ -0,0 +1,290 @@
+package de.ialistannen.lighthouse.updater;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.google.common.util.concurrent.Striped;
+import de.ialistannen.lighthouse.model.ImageIdentifier;
+import de.ialistannen.lighthouse.model.LighthouseContainerUpdate;
+import de.ialistannen.lighthouse.model.LighthouseImageUpdate;
+import de.ialistannen.lighthouse.notifier.Notifier;
+import de.ialistannen.lighthouse.storage.AtomicFiles;
+import de.ialistannen.lighthouse.storage.UpdateHistory;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Consumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs update requests as jobs, so concurrent requests (e.g. two button presses, or a ntfy message during an update
+ * started from discord) never rebuild the same container twice at once.
+ * <p>
+ * Each job locks the containers it updates through striped locks, so jobs for different containers run concurrently.
+ * Containers that are already part of a queued or running job are not added to another one. Queued jobs are persisted,
+ * so they are resumed after a restart. This includes restarts caused by lighthouse updating itself: Applied updates are
+ * recorded in the {@link UpdateHistory} before lighthouse goes down and are skipped when resuming.
+ */
+public class UpdateJobQueue {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(UpdateJobQueue.class);
+  private static final int LOCK_STRIPES = 64;
+
+  private final DockerUpdater updater;
+  private final UpdateHistory history;
+  private final Notifier notifier;
+  private final Path storagePath;
+  private final ObjectMapper objectMapper;
+  private final Striped<Lock> containerLocks;
+  private final ExecutorService executor;
+  private final Map<String, Job> jobs;
+
+  /**
+   * @param updater the updater running the jobs
+   * @param history the history, used to skip already applied updates when resuming
+   * @param notifier notified about failures of resumed jobs, as nobody else is waiting for them
+   * @param storagePath the file to persist queued jobs in
+   */
+  public UpdateJobQueue(DockerUpdater updater, UpdateHistory history, Notifier notifier, Path storagePath) {
+    this.updater = updater;
+    this.history = history;
+    this.notifier = notifier;
+    this.storagePath = storagePath;
+    this.objectMapper = new ObjectMapper()
+      .registerModule(new JavaTimeModule())
+      .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+    this.containerLocks = Striped.lock(LOCK_STRIPES);
+    this.executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("update-job-", 0).factory());
+    this.jobs = new LinkedHashMap<>();
+  }
+
+  /**
+   * Resumes the jobs persisted by a previous run.
+   *
+   * @throws IOException if reading the persisted jobs fails
+   */
+  public void resume() throws IOException {
+    if (Files.notExists(storagePath)) {
+      return;
+    }
+    List<StoredJob> storedJobs = objectMapper.readValue(
+      Files.readString(storagePath),
+      new TypeReference<List<StoredJob>>() {
+      }
+    );
+
+    for (StoredJob storedJob : storedJobs) {
+      List<LighthouseContainerUpdate> updates = storedJob.updates()
+        .stream()
+        .filter(it -> !isApplied(it))
+        .map(StoredUpdate::toUpdate)
+        .toList();
+      if (updates.isEmpty()) {
+        LOGGER.info("Update job {} was completed before the restart", storedJob.id());
+        continue;
+      }
+      LOGGER.info("Resuming update job {} for {} container(s)", storedJob.id(), updates.size());
+      submit(updates, LOGGER::info, _ -> {
+      }).exceptionally(throwable -> {
+        LOGGER.warn("Resumed update job {} failed", storedJob.id(), throwable);
+        notifier.notify(throwable);
+        return null;
+      });
+    }
+    // Drop jobs that were already completed
+    synchronized (this) {
+      persist();
+    }
+  }
+
+  private boolean isApplied(StoredUpdate update) {
+    return update.names()
+      .stream()
+      .allMatch(name -> history.entry(name, update.remoteManifestDigest())
+        .map(it -> it.appliedAt() != null)
+        .orElse(false)
+      );
+  }
+
+  /**
+   * Queues an update request. Containers already part of a queued or running job for the same update are not updated
+   * again, the returned future then also waits for those jobs.
+   *
+   * @param updates the updates to apply
+   * @param successHook called with status messages of the job, see
+   *   {@link DockerUpdater#rebuildContainers(List, Consumer, Consumer)}
+   * @param progressHook receives progress lines of the job
+   * @return a future completing once all requested containers were updated
+   */
+  public synchronized CompletableFuture<Void> submit(
+    List<LighthouseContainerUpdate> updates,
+    Consumer<String> successHook,
+    Consumer<String> progressHook
+  ) {
+    List<CompletableFuture<Void>> waitingFor = new ArrayList<>();
+    List<LighthouseContainerUpdate> remaining = new ArrayList<>();
+
+    for (LighthouseContainerUpdate update : updates) {
+      Optional<Job> existing = jobs.values().stream().filter(it -> it.contains(update)).findFirst();
+      if (existing.isPresent()) {
+        LOGGER.info("Update of {} is already part of job {}", update.names(), existing.get().id());
+        if (!waitingFor.contains(existing.get().done())) {
+          waitingFor.add(existing.get().done());
+        }
+      } else {
+        remaining.add(update);
+      }
+    }
+
+    if (!remaining.isEmpty()) {
+      Job job = new Job(UUID.randomUUID().toString(), remaining, Instant.now(), new CompletableFuture<>());
+      jobs.put(job.id(), job);
+      persist();
+      waitingFor.add(job.done());
+      executor.execute(() -> run(job, successHook, progressHook));
+    } else {
+      successHook.accept("Already updating");
+    }
+
+    return CompletableFuture.allOf(waitingFor.toArray(CompletableFuture[]::new));
+  }
+
+  /**
+   * @return the jobs currently queued or running, oldest first
+   */
+  public synchronized List<Job> jobs() {
+    return List.copyOf(jobs.values());
+  }
+
+  private void run(Job job, Consumer<String> successHook, Consumer<String> progressHook) {
+    // bulkGet returns the locks in a consistent order, so overlapping jobs can not deadlock
+    Iterable<Lock> locks = containerLocks.bulkGet(job.containerNames());
+    List<Lock> acquired = new ArrayList<>();
+    try {
+      for (Lock lock : locks) {
+        lock.lockInterruptibly();
+        acquired.add(lock);
+      }
+      LOGGER.info("Running update job {} for {}", job.id(), job.containerNames());
+      updater.rebuildContainers(job.updates(), successHook, progressHook);
+      job.done().complete(null);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      job.done().completeExceptionally(e);
+    } catch (RuntimeException e) {
+      job.done().completeExceptionally(e);
+    } finally {
+      acquired.reversed().forEach(Lock::unlock);
+      synchronized (this) {
+        jobs.remove(job.id());
+        persist();
+      }
+    }
+  }
+
+  private void persist() {
+    List<StoredJob> storedJobs = jobs.values()
+      .stream()
+      .map(it -> new StoredJob(it.id(), it.queuedAt(), it.updates().stream().map(StoredUpdate::fromUpdate).toList()))
+      .toList();
+    try {
+      AtomicFiles.writeAtomically(storagePath, objectMapper.writeValueAsBytes(storedJobs));
+    } catch (IOException e) {
+      LOGGER.warn("Failed to persist update jobs to {}", storagePath, e);
+    }
+  }
+
+  /**
+   * A queued or running update job.
+   *
+   * @param id the id of the job
+   * @param updates the updates it applies
+   * @param queuedAt when the job was queued
+   * @param done completed once the job finished
+   */
+  public record Job(
+    String id,
+    List<LighthouseContainerUpdate> updates,
+    Instant queuedAt,
+    CompletableFuture<Void> done
+  ) {
+
+    public List<String> containerNames() {
+      return updates.stream().flatMap(it -> it.names().stream()).distinct().toList();
+    }
+
+    boolean contains(LighthouseContainerUpdate update) {
+      return updates.stream().anyMatch(it ->
+        it.names().equals(update.names())
+        && it.imageUpdate().remoteManifestDigest().equals(update.imageUpdate().remoteManifestDigest())
+      );
+    }
+  }
+
+  @JsonSerialize
+  @JsonDeserialize
+  record StoredJob(String id, Instant queuedAt, List<StoredUpdate> updates) {
+
+  }
+
+  /**
+   * A {@link LighthouseContainerUpdate} without the remote metadata, which is only needed for notifications.
+   */
+  @JsonSerialize
+  @JsonDeserialize
+  record StoredUpdate(
+    List<String> names,
+    String sourceImageId,
+    List<String> sourceImageNames,
+    String remoteManifestDigest,
+    String image,
+    String tag,
+    boolean myself,
+    Map<String, String> labels
+  ) {
+
+    static StoredUpdate fromUpdate(LighthouseContainerUpdate update) {
+      LighthouseImageUpdate imageUpdate = update.imageUpdate();
+      return new StoredUpdate(
+        update.names(),
+        imageUpdate.sourceImageId(),
+        imageUpdate.sourceImageNames(),
+        imageUpdate.remoteManifestDigest(),
+        imageUpdate.imageIdentifier().image(),
+        imageUpdate.imageIdentifier().tag(),
+        update.isMyself(),
+        update.labels()
+      );
+    }
+
+    LighthouseContainerUpdate toUpdate() {
+      return new LighthouseContainerUpdate(
+        names,
+        new LighthouseImageUpdate(
+          sourceImageId,
+          sourceImageNames,
+          remoteManifestDigest,
+          new ImageIdentifier(image, tag),
+          Optional.empty()
+        ),
+        myself,
+        labels
+      );
+    }
+  }
+}
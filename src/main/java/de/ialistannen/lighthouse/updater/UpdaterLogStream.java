@@ -0,0 +1,198 @@
+package de.ialistannen.lighthouse.updater;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Assembles the output of an updater into lines, logs them and keeps the last lines around for error reports.
+ * <p>
+ * Docker delivers output in frames that do not respect line boundaries. Bytes are collected in a reused buffer per
+ * stream until a line is complete, so each line is decoded exactly once. Logging is rate limited, as verbose builds
+ * can produce tens of thousands of lines, and the progress consumer only receives a line every
+ * {@link #PROGRESS_INTERVAL}.
+ */
+class UpdaterLogStream {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(UpdaterLogStream.class);
+
+  static final int TAIL_LINES = 30;
+  private static final int MAX_LINE_BYTES = 8 * 1024;
+  private static final int MAX_LOG_LINES_PER_SECOND = 50;
+  private static final Duration PROGRESS_INTERVAL = Duration.ofSeconds(2);
+
+  private final String source;
+  private final Consumer<String> progress;
+  private final LineBuffer stdout;
+  private final LineBuffer stderr;
+  private final String[] tail;
+  private int tailStart;
+  private int tailSize;
+
+  private long logWindowStart;
+  private int loggedInWindow;
+  private int suppressedLines;
+  private long lastProgress;
+  private String pendingProgress;
+
+  /**
+   * @param source the name of the updater, used as log prefix
+   * @param progress receives a line every now and then
+   */
+  UpdaterLogStream(String source, Consumer<String> progress) {
+    this.source = source;
+    this.progress = progress;
+    this.stdout = new LineBuffer(false);
+    this.stderr = new LineBuffer(true);
+    this.tail = new String[TAIL_LINES];
+    this.lastProgress = System.nanoTime() - PROGRESS_INTERVAL.toNanos();
+  }
+
+  /**
+   * Appends raw output.
+   *
+   * @param payload the bytes of a frame
+   * @param error whether it was written to stderr
+   */
+  synchronized void accept(byte[] payload, boolean error) {
+    (error ? stderr : stdout).append(payload);
+  }
+
+  /**
+   * Appends already decoded output, e.g. from a build stream.
+   *
+   * @param text the text
+   * @param error whether it is an error
+   */
+  void accept(String text, boolean error) {
+    accept(text.getBytes(StandardCharsets.UTF_8), error);
+  }
+
+  /**
+   * Emits incomplete trailing lines and reports suppressed lines. Call this once the updater finished.
+   */
+  synchronized void flush() {
+    stdout.flush();
+    stderr.flush();
+    reportSuppressed();
+    if (pendingProgress != null) {
+      progress.accept(pendingProgress);
+      pendingProgress = null;
+    }
+  }
+
+  /**
+   * @return the last {@value #TAIL_LINES} lines of output, oldest first
+   */
+  synchronized List<String> tail() {
+    List<String> lines = new ArrayList<>(tailSize);
+    for (int i = 0; i < tailSize; i++) {
+      lines.add(tail[(tailStart + i) % tail.length]);
+    }
+    return lines;
+  }
+
+  private void onLine(String line, boolean error) {
+    if (line.isBlank()) {
+      return;
+    }
+    if (tailSize < tail.length) {
+      tail[(tailStart + tailSize) % tail.length] = line;
+      tailSize++;
+    } else {
+      tail[tailStart] = line;
+      tailStart = (tailStart + 1) % tail.length;
+    }
+
+    long now = System.nanoTime();
+    log(line, error, now);
+
+    if (now - lastProgress >= PROGRESS_INTERVAL.toNanos()) {
+      lastProgress = now;
+      pendingProgress = null;
+      progress.accept(line);
+    } else {
+      pendingProgress = line;
+    }
+  }
+
+  private void log(String line, boolean error, long now) {
+    if (now - logWindowStart >= Duration.ofSeconds(1).toNanos()) {
+      reportSuppressed();
+      logWindowStart = now;
+      loggedInWindow = 0;
+    }
+    if (loggedInWindow >= MAX_LOG_LINES_PER_SECOND) {
+      suppressedLines++;
+      return;
+    }
+    loggedInWindow++;
+
+    if (error) {
+      LOGGER.warn("[updater {}] {}", source, line);
+    } else {
+      LOGGER.info("[updater {}] {}", source, line);
+    }
+  }
+
+  private void reportSuppressed() {
+    if (suppressedLines > 0) {
+      LOGGER.info("[updater {}] ... {} line(s) not logged", source, suppressedLines);
+      suppressedLines = 0;
+    }
+  }
+
+  /**
+   * Collects the bytes of the current line of one stream. The buffer is reused for all lines.
+   */
+  private class LineBuffer {
+
+    private final boolean error;
+    private byte[] buffer;
+    private int length;
+
+    private LineBuffer(boolean error) {
+      this.error = error;
+      this.buffer = new byte[256];
+    }
+
+    void append(byte[] payload) {
+      for (byte b : payload) {
+        if (b == '\n') {
+          emit();
+          continue;
+        }
+        if (length == buffer.length) {
+          if (buffer.length >= MAX_LINE_BYTES) {
+            // Overlong lines (e.g. progress bars without newlines) are split instead of growing without bound
+            emit();
+          } else {
+            buffer = Arrays.copyOf(buffer, Math.min(buffer.length * 2, MAX_LINE_BYTES));
+          }
+        }
+        buffer[length++] = b;
+      }
+    }
+
+    void flush() {
+      if (length > 0) {
+        emit();
+      }
+    }
+
+    private void emit() {
+      int end = length;
+      if (end > 0 && buffer[end - 1] == '\r') {
+        end--;
+      }
+      String line = new String(buffer, 0, end, StandardCharsets.UTF_8);
+      length = 0;
+      onLine(line, error);
+    }
+  }
+}
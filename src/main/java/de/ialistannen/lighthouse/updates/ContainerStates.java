@@ -0,0 +1,101 @@
+package de.ialistannen.lighthouse.updates;
+
+import de.ialistannen.lighthouse.model.LighthouseContainerUpdate;
+import de.ialistannen.lighthouse.storage.UpdateHistory;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers the result of the last check of every container, so it can be queried without checking again.
+ * <p>
+ * Updates that the {@link UpdateHistory} marks as applied since are hidden, so an update is not offered (and applied)
+ * again until the next check.
+ */
+public class ContainerStates {
+
+  private final Map<String, ContainerState> states;
+  private final UpdateHistory history;
+
+  /**
+   * @param history the history that knows which updates were applied
+   */
+  public ContainerStates(UpdateHistory history) {
+    this.states = new ConcurrentHashMap<>();
+    this.history = history;
+  }
+
+  /**
+   * Records the result of a check.
+   *
+   * @param checkedAt when the check started
+   * @param checkedNames the names of all checked containers
+   * @param updates the updates found for them, before any filtering
+   */
+  public void record(Instant checkedAt, Collection<String> checkedNames, List<LighthouseContainerUpdate> updates) {
+    for (String name : checkedNames) {
+      Optional<LighthouseContainerUpdate> update = updates.stream()
+        .filter(it -> it.names().contains(name))
+        .findFirst();
+      states.put(name, new ContainerState(name, checkedAt, update));
+    }
+  }
+
+  /**
+   * @return the state of every container checked so far, sorted by name
+   */
+  public List<ContainerState> states() {
+    return states.values()
+      .stream()
+      .map(this::withoutApplied)
+      .sorted(Comparator.comparing(ContainerState::name))
+      .toList();
+  }
+
+  /**
+   * @return the updates found for outdated containers in their last check
+   */
+  public List<LighthouseContainerUpdate> outdated() {
+    return states.values()
+      .stream()
+      .map(this::withoutApplied)
+      .flatMap(it -> it.update().stream())
+      .distinct()
+      .toList();
+  }
+
+  /**
+   * @param name the name of the container
+   * @return the update found for the container in its last check, if it was outdated
+   */
+  public Optional<LighthouseContainerUpdate> update(String name) {
+    return Optional.ofNullable(states.get(name)).map(this::withoutApplied).flatMap(ContainerState::update);
+  }
+
+  private ContainerState withoutApplied(ContainerState state) {
+    if (state.update().isEmpty()) {
+      return state;
+    }
+    String digest = state.update().get().imageUpdate().remoteManifestDigest();
+    boolean applied = history.entry(state.name(), digest).map(it -> it.appliedAt() != null).orElse(false);
+    if (!applied) {
+      return state;
+    }
+    return new ContainerState(state.name(), state.lastChecked(), Optional.empty());
+  }
+
+  /**
+   * The result of the last check of a container.
+   *
+   * @param name the name of the container
+   * @param lastChecked when it was last checked
+   * @param update the update found, empty if it was up to date
+   */
+  public record ContainerState(String name, Instant lastChecked, Optional<LighthouseContainerUpdate> update) {
+
+  }
+}
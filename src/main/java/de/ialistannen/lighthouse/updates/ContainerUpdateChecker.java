@@ -17,6 +17,8 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -45,16 +47,18 @@ public class ContainerUpdateChecker {
   /**
    * Finds all out-of-date images and all containers using them.
    *
+   * @param shouldCheck which (participating) containers to check
    * @return all container updates that should be applied
    * @throws IOException if an error happens looking up remote information
    * @throws URISyntaxException if the base image contains invalid characters
    * @throws InterruptedException ?
    * @throws DigestFetchException if the remote denied serving the digest
    * @throws TokenFetchException if the auth token could not be retrieved
-   * @see ImageUpdateChecker#check()
+   * @see ImageUpdateChecker#check(Predicate)
    */
-  public List<LighthouseContainerUpdate> check() throws IOException, URISyntaxException, InterruptedException {
-    Collection<LighthouseImageUpdate> imageUpdates = imageUpdateChecker.check();
+  public List<LighthouseContainerUpdate> check(Predicate<Container> shouldCheck)
+    throws IOException, URISyntaxException, InterruptedException {
+    Collection<LighthouseImageUpdate> imageUpdates = imageUpdateChecker.check(shouldCheck);
     List<LighthouseContainerUpdate> updates = new ArrayList<>();
 
     Map<String, LighthouseImageUpdate> imageMap = imageUpdates.stream().collect(Collectors.toMap(
@@ -82,7 +86,8 @@ public class ContainerUpdateChecker {
         new LighthouseContainerUpdate(
           getContainerNames(container),
           update,
-          LighthouseDetector.isLighthouse(container)
+          LighthouseDetector.isLighthouse(container),
+          Objects.requireNonNullElse(container.getLabels(), Map.of())
         )
       );
     }
@@ -7,19 +7,25 @@ import com.github.dockerjava.api.command.InspectImageResponse;
 import com.github.dockerjava.api.command.PullImageResultCallback;
 import com.github.dockerjava.api.model.Container;
 import de.ialistannen.lighthouse.metadata.MetadataFetcher;
+import de.ialistannen.lighthouse.metrics.Counter;
+import de.ialistannen.lighthouse.metrics.Histogram;
+import de.ialistannen.lighthouse.metrics.MetricsRegistry;
 import de.ialistannen.lighthouse.model.BaseImageUpdateStrategy;
 import de.ialistannen.lighthouse.model.EnrollmentMode;
 import de.ialistannen.lighthouse.model.ImageIdentifier;
 import de.ialistannen.lighthouse.model.LighthouseImageUpdate;
 import de.ialistannen.lighthouse.model.LighthouseTagUpdate;
-import de.ialistannen.lighthouse.notifier.Notifier;
+import de.ialistannen.lighthouse.notifier.ErrorAggregator;
 import de.ialistannen.lighthouse.registry.DigestFetchException;
 import de.ialistannen.lighthouse.registry.DockerLibraryHelper;
 import de.ialistannen.lighthouse.registry.DockerRegistry;
 import de.ialistannen.lighthouse.registry.TokenFetchException;
+import de.ialistannen.lighthouse.storage.UpdateCadenceTracker;
+import de.ialistannen.lighthouse.timing.CheckSpreader;
 import de.ialistannen.lighthouse.versioning.VersionParser;
 import java.io.IOException;
 import java.net.URISyntaxException;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -31,8 +37,10 @@ import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Predicate;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import org.semver4j.Semver;
@@ -52,7 +60,12 @@ public class ImageUpdateChecker {
   private final EnrollmentMode enrollmentMode;
   private final DockerLibraryHelper libraryHelper;
   private final BaseImageUpdateStrategy baseImageUpdateStrategy;
-  private final Notifier notifier;
+  private final ErrorAggregator errors;
+  private final CheckSpreader checkSpreader;
+  private final UpdateCadenceTracker cadenceTracker;
+  private final Histogram phases;
+  private final Counter failedChecks;
+  private final Map<String, String> baseImagesByContainer;
 
   public ImageUpdateChecker(
     DockerClient client,
@@ -61,7 +74,10 @@ public class ImageUpdateChecker {
     EnrollmentMode enrollmentMode,
     DockerLibraryHelper libraryHelper,
     BaseImageUpdateStrategy baseImageUpdateStrategy,
-    Notifier notifier
+    ErrorAggregator errors,
+    CheckSpreader checkSpreader,
+    UpdateCadenceTracker cadenceTracker,
+    MetricsRegistry metrics
   ) {
     this.client = client;
     this.dockerRegistry = dockerRegistry;
@@ -69,7 +85,62 @@ public class ImageUpdateChecker {
     this.enrollmentMode = enrollmentMode;
     this.libraryHelper = libraryHelper;
     this.baseImageUpdateStrategy = baseImageUpdateStrategy;
-    this.notifier = notifier;
+    this.errors = errors;
+    this.checkSpreader = checkSpreader;
+    this.cadenceTracker = cadenceTracker;
+    this.phases = metrics.histogram(
+      "lighthouse_check_phase_seconds",
+      "Time spent in the phases of a check cycle",
+      "phase"
+    );
+    this.failedChecks = metrics.counter(
+      "lighthouse_container_check_failures_total",
+      "Containers whose remote information could not be fetched"
+    );
+    this.baseImagesByContainer = new ConcurrentHashMap<>();
+  }
+
+  /**
+   * Returns the base image a container was last checked against. This is the image whose remote digest is reported to
+   * the {@link UpdateCadenceTracker}.
+   *
+   * @param containerId the id of the container
+   * @return the base image ({@code image:tag}), empty if the container was not checked yet
+   */
+  public Optional<String> checkedBaseImage(String containerId) {
+    return Optional.ofNullable(baseImagesByContainer.get(containerId));
+  }
+
+  /**
+   * Returns the registry lookups a check of the given containers will perform, grouped by the order they are performed
+   * in. Used to plan them with a {@link CheckSpreader}.
+   *
+   * @param shouldCheck which (participating) containers will be checked
+   * @param includeTags whether tag updates will be checked as well
+   * @return the keys of all digest lookups, followed by the keys of all tag lookups
+   */
+  public List<Set<String>> plannedRegistryLookups(Predicate<Container> shouldCheck, boolean includeTags) {
+    Set<ContainerWithBase> containers = new HashSet<>(getParticipatingBaseTaggedContainers(shouldCheck));
+    containers.addAll(getParticipatingBasicContainers(shouldCheck));
+
+    Set<String> digestLookups = containers.stream()
+      .map(it -> digestLookupKey(it.baseImage()))
+      .collect(Collectors.toSet());
+    Set<String> tagLookups = containers.stream()
+      .filter(_ -> includeTags)
+      .filter(it -> it.container().getLabels().containsKey("lighthouse.tag-check.strategy"))
+      .map(it -> tagLookupKey(it.baseImage().image()))
+      .collect(Collectors.toSet());
+
+    return List.of(digestLookups, tagLookups);
+  }
+
+  private static String digestLookupKey(ImageIdentifier image) {
+    return "digest:" + image.nameWithTag();
+  }
+
+  private static String tagLookupKey(String image) {
+    return "tags:" + image;
   }
 
   /**
@@ -81,6 +152,7 @@ public class ImageUpdateChecker {
    *   <li>check if the container uses the up-to-date base image</li>
    * </ol>
    *
+   * @param shouldCheck which (participating) containers to check
    * @return all found image updates
    * @throws IOException if an error happens looking up remote information
    * @throws URISyntaxException if the base image contains invalid characters
@@ -88,22 +160,24 @@ public class ImageUpdateChecker {
    * @throws DigestFetchException if the remote denied serving the digest
    * @throws TokenFetchException if the auth token could not be retrieved
    */
-  public Collection<LighthouseImageUpdate> check() throws IOException, URISyntaxException, InterruptedException {
-    Set<LighthouseImageUpdate> updates = new HashSet<>(checkBaseTaggedContainers());
-    updates.addAll(checkBasicContainers());
+  public Collection<LighthouseImageUpdate> check(Predicate<Container> shouldCheck)
+    throws IOException, URISyntaxException, InterruptedException {
+    Set<LighthouseImageUpdate> updates = new HashSet<>(checkBaseTaggedContainers(shouldCheck));
+    updates.addAll(checkBasicContainers(shouldCheck));
     return updates;
   }
 
-  public List<LighthouseTagUpdate> checkTags() throws IOException, URISyntaxException, InterruptedException {
+  public List<LighthouseTagUpdate> checkTags(Predicate<Container> shouldCheck)
+    throws IOException, URISyntaxException, InterruptedException {
     LOGGER.info("Checking for tag updates...");
-    Set<ContainerWithBase> containers = new HashSet<>(getParticipatingBaseTaggedContainers());
-    containers.addAll(getParticipatingBasicContainers());
+    Set<ContainerWithBase> containers = new HashSet<>(getParticipatingBaseTaggedContainers(shouldCheck));
+    containers.addAll(getParticipatingBasicContainers(shouldCheck));
 
     List<LighthouseTagUpdate> updates = new ArrayList<>();
 
     Map<String, List<String>> tagsPerImage = new HashMap<>();
 
-    for (var info : containers) {
+    for (var info : checkSpreader.inSlotOrder(containers, it -> tagLookupKey(it.baseImage().image()))) {
       String strategyString = info.container().getLabels().get("lighthouse.tag-check.strategy");
       if (strategyString == null) {
         LOGGER.debug("No tag check strategy for container '{}'", Arrays.toString(info.container().getNames()));
@@ -141,6 +215,7 @@ public class ImageUpdateChecker {
       if (!tagsPerImage.containsKey(info.baseImage().image())) {
         String image = info.baseImage().image();
         try {
+          checkSpreader.awaitSlot(tagLookupKey(image));
           List<String> tags = dockerRegistry.getTags(image);
           tagsPerImage.put(image, tags);
         } catch (Exception e) {
@@ -149,34 +224,15 @@ public class ImageUpdateChecker {
         }
       }
 
-      List<String> availableTags = new ArrayList<>(tagsPerImage.getOrDefault(info.baseImage().image(), List.of()));
+      List<String> availableTags = tagsPerImage.getOrDefault(info.baseImage().image(), List.of());
       LOGGER.debug("Found tags {} for image '{}'", availableTags, info.baseImage().image());
 
-      String keepRegex = info.container().getLabels().get("lighthouse.tag-check.keep");
-      if (keepRegex != null) {
-        availableTags.removeIf(it -> !it.matches(keepRegex));
-      }
-      String ignoreRegex = info.container().getLabels().get("lighthouse.tag-check.ignore");
-      if (ignoreRegex != null) {
-        availableTags.removeIf(it -> it.matches(ignoreRegex));
-      }
-
-      Optional<Map.Entry<Semver, String>> newestVersion = availableTags.stream()
-        .distinct()
-        .flatMap(it -> {
-          try {
-            return Stream.of(Map.entry(versionParser.parse(it), it));
-          } catch (IllegalArgumentException e) {
-            LOGGER.debug(
-              "Skipping tag '{}' for container '{}' as it could not be parsed with strategy '{}'",
-              it,
-              Arrays.toString(info.container().getNames()),
-              strategyString
-            );
-            return Stream.empty();
-          }
-        })
-        .max(Entry.comparingByKey());
+      Optional<Map.Entry<Semver, String>> newestVersion = newestTag(
+        availableTags,
+        versionParser,
+        info.container().getLabels().get("lighthouse.tag-check.keep"),
+        info.container().getLabels().get("lighthouse.tag-check.ignore")
+      );
       if (newestVersion.isEmpty()) {
         continue;
       }
@@ -208,12 +264,46 @@ public class ImageUpdateChecker {
     return updates;
   }
 
-  private Collection<LighthouseImageUpdate> checkBasicContainers()
+  /**
+   * Selects the newest tag according to a version parser.
+   *
+   * @param tags the available tags
+   * @param versionParser the parser for the tags. Tags it can not parse are skipped.
+   * @param keepRegex if not null, only tags matching this regex are considered
+   * @param ignoreRegex if not null, tags matching this regex are skipped
+   * @return the newest tag and its parsed version, empty if no tag could be parsed
+   */
+  public static Optional<Entry<Semver, String>> newestTag(
+    Collection<String> tags,
+    VersionParser versionParser,
+    String keepRegex,
+    String ignoreRegex
+  ) {
+    // Compiled once instead of once per tag, as images can have thousands of tags
+    Pattern keep = keepRegex == null ? null : Pattern.compile(keepRegex);
+    Pattern ignore = ignoreRegex == null ? null : Pattern.compile(ignoreRegex);
+
+    return tags.stream()
+      .distinct()
+      .filter(it -> keep == null || keep.matcher(it).matches())
+      .filter(it -> ignore == null || !ignore.matcher(it).matches())
+      .flatMap(it -> {
+        try {
+          return Stream.of(Map.entry(versionParser.parse(it), it));
+        } catch (IllegalArgumentException e) {
+          LOGGER.debug("Skipping tag '{}' as it could not be parsed with {}", it, versionParser);
+          return Stream.empty();
+        }
+      })
+      .max(Entry.comparingByKey());
+  }
+
+  private Collection<LighthouseImageUpdate> checkBasicContainers(Predicate<Container> shouldCheck)
     throws IOException, URISyntaxException, InterruptedException {
     List<LighthouseImageUpdate> updates = new ArrayList<>();
 
-    for (ContainerWithRemoteInfo info : getContainersWithRemoteInfo(getParticipatingBasicContainers())) {
-      if (info.baseImageOutdated()) {
+    for (ContainerWithRemoteInfo info : getContainersWithRemoteInfo(getParticipatingBasicContainers(shouldCheck))) {
+      if (info.containerImageOutdated()) {
         LOGGER.info(
           "Base image '{}' for {} is out of date",
           info.containerImage().getRepoTags(),
@@ -232,12 +322,12 @@ public class ImageUpdateChecker {
     return updates;
   }
 
-  private List<LighthouseImageUpdate> checkBaseTaggedContainers()
+  private List<LighthouseImageUpdate> checkBaseTaggedContainers(Predicate<Container> shouldCheck)
     throws InterruptedException, IOException, URISyntaxException {
 
     List<LighthouseImageUpdate> updates = new ArrayList<>();
 
-    Collection<ContainerWithBase> participatingContainers = getParticipatingBaseTaggedContainers();
+    Collection<ContainerWithBase> participatingContainers = getParticipatingBaseTaggedContainers(shouldCheck);
     pullUnknownBaseImages(participatingContainers);
 
     for (ContainerWithRemoteInfo info : getContainersWithRemoteInfo(participatingContainers)) {
@@ -274,10 +364,22 @@ public class ImageUpdateChecker {
 
   @SuppressWarnings("ConstantConditions")
   private boolean isContainerUpToDate(ContainerWithRemoteInfo info) {
-    Set<String> containerLayers = new HashSet<>(info.containerImage().getRootFS().getLayers());
+    return containsAllLayers(
+      info.containerImage().getRootFS().getLayers(),
+      info.localBaseImage().getRootFS().getLayers()
+    );
+  }
+
+  /**
+   * @param containerLayers the layers of the container image
+   * @param baseLayers the layers of the base image
+   * @return true if the container image contains every layer of the base image, i.e. is built on it
+   */
+  public static boolean containsAllLayers(List<String> containerLayers, List<String> baseLayers) {
+    Set<String> containerLayerSet = new HashSet<>(containerLayers);
 
-    for (String layer : info.localBaseImage().getRootFS().getLayers()) {
-      if (!containerLayers.contains(layer)) {
+    for (String layer : baseLayers) {
+      if (!containerLayerSet.contains(layer)) {
         LOGGER.debug("Layer '{}' is missing in container, marking it as outdated", layer);
         return false;
       }
@@ -291,24 +393,34 @@ public class ImageUpdateChecker {
   ) {
     Collection<ContainerWithRemoteInfo> result = new HashSet<>();
 
-    for (ContainerWithBase withBase : containers) {
+    for (ContainerWithBase withBase : checkSpreader.inSlotOrder(containers, it -> digestLookupKey(it.baseImage()))) {
       Container container = withBase.container();
       if (container.getImageId() == null) {
         LOGGER.warn("Container '{}' has no image id", Arrays.toString(container.getNames()));
         continue;
       }
 
-      InspectImageResponse inspect = client
-        .inspectImageCmd(withBase.baseImageRepoTag())
-        .exec();
+      InspectImageResponse inspect;
+      try (var _ = phases.labels("inspect").startTimer()) {
+        inspect = client.inspectImageCmd(withBase.baseImageRepoTag()).exec();
+      }
       if (inspect.getRepoDigests() == null || inspect.getRepoDigests().isEmpty()) {
         LOGGER.warn("Could not find repo digest for image '{}'", withBase.baseImageRepoTag());
         continue;
       }
 
+      errors.markChecked(dockerRegistry.getRegistryHost(withBase.baseImage().image()));
       try {
-        String remoteDigest = dockerRegistry.getDigest(withBase.baseImage().image(), withBase.baseImage().tag());
-        InspectImageResponse localBaseImage = client.inspectImageCmd(container.getImageId()).exec();
+        checkSpreader.awaitSlot(digestLookupKey(withBase.baseImage()));
+        String remoteDigest;
+        try (var _ = phases.labels("resolve").startTimer()) {
+          remoteDigest = dockerRegistry.getDigest(withBase.baseImage().image(), withBase.baseImage().tag());
+        }
+        cadenceTracker.observe(withBase.baseImageRepoTag(), remoteDigest, Instant.now());
+        InspectImageResponse localBaseImage;
+        try (var _ = phases.labels("inspect").startTimer()) {
+          localBaseImage = client.inspectImageCmd(container.getImageId()).exec();
+        }
         result.add(new ContainerWithRemoteInfo(
           withBase,
           remoteDigest,
@@ -317,7 +429,8 @@ public class ImageUpdateChecker {
         ));
       } catch (Exception e) {
         LOGGER.warn("Failed to fetch remote info for {}", Arrays.toString(container.getNames()), e);
-        notifier.notify(e);
+        failedChecks.increment();
+        errors.record(e, dockerRegistry.getRegistryHost(withBase.baseImage().image()));
       }
     }
 
@@ -374,12 +487,11 @@ public class ImageUpdateChecker {
     return info;
   }
 
-  private Collection<ContainerWithBase> getParticipatingBaseTaggedContainers() {
-    return client.listContainersCmd()
-      .withShowAll(true)
-      .exec()
+  private Collection<ContainerWithBase> getParticipatingBaseTaggedContainers(Predicate<Container> shouldCheck) {
+    return listContainers()
       .stream()
       .filter(enrollmentMode::isParticipating)
+      .filter(shouldCheck)
       .filter(ContainerWithBaseUtils::isTaggedWithBase)
       .flatMap(container -> withBase(container).stream())
       .collect(Collectors.toMap(
@@ -389,12 +501,11 @@ public class ImageUpdateChecker {
       )).values();
   }
 
-  private Collection<ContainerWithBase> getParticipatingBasicContainers() {
-    return client.listContainersCmd()
-      .withShowAll(true)
-      .exec()
+  private Collection<ContainerWithBase> getParticipatingBasicContainers(Predicate<Container> shouldCheck) {
+    return listContainers()
       .stream()
       .filter(enrollmentMode::isParticipating)
+      .filter(shouldCheck)
       .filter(Predicate.not(ContainerWithBaseUtils::isTaggedWithBase))
       .flatMap(container -> withBase(container).stream())
       .collect(Collectors.toMap(
@@ -404,7 +515,24 @@ public class ImageUpdateChecker {
       )).values();
   }
 
+  private List<Container> listContainers() {
+    List<Container> containers;
+    try (var _ = phases.labels("list").startTimer()) {
+      containers = client.listContainersCmd().withShowAll(true).exec();
+    }
+    Set<String> ids = containers.stream().map(Container::getId).collect(Collectors.toSet());
+    baseImagesByContainer.keySet().retainAll(ids);
+
+    return containers;
+  }
+
   private Optional<ContainerWithBase> withBase(Container container) {
+    Optional<ContainerWithBase> withBase = resolveBase(container);
+    withBase.ifPresent(it -> baseImagesByContainer.put(container.getId(), it.baseImageRepoTag()));
+    return withBase;
+  }
+
+  private Optional<ContainerWithBase> resolveBase(Container container) {
     if (ContainerWithBaseUtils.isTaggedWithBase(container)) {
       return Optional.of(
         new ContainerWithBase(
@@ -414,16 +542,25 @@ public class ImageUpdateChecker {
       );
     }
     LOGGER.debug("Looking at base image for '{}' ({})", container.getNames(), container.getImage());
-    InspectImageResponse imageResponse = client.inspectImageCmd(container.getImage()).exec();
+    InspectImageResponse imageResponse;
+    try (var _ = phases.labels("inspect").startTimer()) {
+      imageResponse = client.inspectImageCmd(container.getImage()).exec();
+    }
     LOGGER.debug("Found base image for '{}': {}", container.getNames(), imageResponse.getRepoTags());
-    if (imageResponse.getRepoTags() == null || imageResponse.getRepoTags().isEmpty()) {
+    String repoTag;
+    if (imageResponse.getRepoTags() != null && !imageResponse.getRepoTags().isEmpty()) {
+      repoTag = imageResponse.getRepoTags().getFirst();
+    } else {
+      // The tag was moved to a newer image (e.g. by pulling it), but the container still knows what it was created from
+      repoTag = client.inspectContainerCmd(container.getId()).exec().getConfig().getImage();
+    }
+    if (repoTag == null || repoTag.startsWith("sha256:")) {
       LOGGER.warn(
         "Enrolled container '{}' has an unlabeled image and no 'lighthouse.base' tag",
         (Object) container.getNames()
       );
       return Optional.empty();
     }
-    String repoTag = imageResponse.getRepoTags().getFirst();
     ImageIdentifier baseImage = ImageIdentifier.fromString(repoTag).friendly(libraryHelper);
 
     return Optional.of(new ContainerWithBase(container, baseImage));
@@ -442,6 +579,19 @@ public class ImageUpdateChecker {
         .noneMatch(it -> it.endsWith(currentRemoteDigest()));
     }
 
+    /**
+     * For containers without a base label, the image of the container is the base image. Its own digests are checked
+     * instead of the local tag's, as the tag might already point to a newer image than the container runs, e.g. after
+     * pre-pulling it.
+     *
+     * @return true if the image of the container is not the current remote image
+     */
+    public boolean containerImageOutdated() {
+      return Objects.requireNonNullElse(containerImage().getRepoDigests(), List.<String>of())
+        .stream()
+        .noneMatch(it -> it.endsWith(currentRemoteDigest()));
+    }
+
     public LighthouseImageUpdate toUpdate(MetadataFetcher metadataFetcher)
       throws IOException, URISyntaxException, InterruptedException {
 
@@ -0,0 +1,157 @@
+package de.ialistannen.lighthouse.updates;
+
+import de.ialistannen.lighthouse.model.LighthouseContainerUpdate;
+import de.ialistannen.lighthouse.util.DurationParser;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Predicate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Holds back new updates for a while, so several upstream builds of an image in quick succession result in a single
+ * notification.
+ * <p>
+ * The first new update of an image opens a window. Updates of that image seen until the window closes replace the held
+ * ones, so only the latest build is notified. The window is flushed when it closes or as soon as a container with
+ * {@value #PRIORITY_LABEL}{@code =high} has an update. Containers can override the window length with the
+ * {@value #WINDOW_LABEL} label.
+ */
+public class UpdateCoalescer {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(UpdateCoalescer.class);
+
+  public static final String WINDOW_LABEL = "lighthouse.coalesce-window";
+  public static final String PRIORITY_LABEL = "lighthouse.notify-priority";
+
+  private final Duration defaultWindow;
+  private final Map<String, Window> windows;
+
+  /**
+   * @param defaultWindow the window for containers without a {@value #WINDOW_LABEL} label. Zero disables coalescing
+   *   for them.
+   */
+  public UpdateCoalescer(Duration defaultWindow) {
+    this.defaultWindow = defaultWindow;
+    this.windows = new HashMap<>();
+  }
+
+  /**
+   * Adds the updates found in this cycle and returns everything that should be notified now.
+   *
+   * @param updates the new updates found in this cycle
+   * @param wasChecked whether a container (by name) was checked in this cycle. Held updates of checked containers
+   *   without a current update are dropped, as they were applied in the meantime.
+   * @param now the current time
+   * @return the updates to notify now
+   */
+  public synchronized List<LighthouseContainerUpdate> coalesce(
+    List<LighthouseContainerUpdate> updates,
+    Predicate<String> wasChecked,
+    Instant now
+  ) {
+    for (Window window : windows.values()) {
+      window.updates().values().removeIf(it -> it.names().stream().anyMatch(wasChecked));
+    }
+
+    List<LighthouseContainerUpdate> ready = new ArrayList<>();
+    for (LighthouseContainerUpdate update : updates) {
+      Duration length = windowFor(update);
+      if (length.isZero()) {
+        ready.add(update);
+        continue;
+      }
+      String image = update.imageUpdate().imageIdentifier().nameWithTag();
+      Window window = windows.computeIfAbsent(image, _ -> new Window(now.plus(length)));
+      window.updates().put(String.join(",", update.names()), update);
+      window.digests().add(update.imageUpdate().remoteManifestDigest());
+    }
+
+    Iterator<Map.Entry<String, Window>> iterator = windows.entrySet().iterator();
+    while (iterator.hasNext()) {
+      Map.Entry<String, Window> entry = iterator.next();
+      Window window = entry.getValue();
+      if (window.updates().isEmpty()) {
+        iterator.remove();
+        continue;
+      }
+      boolean priority = window.updates().values().stream().anyMatch(UpdateCoalescer::isPriority);
+      if (!priority && window.closesAt().isAfter(now)) {
+        LOGGER.info(
+          "Holding back {} update(s) of '{}' until {}",
+          window.updates().size(),
+          entry.getKey(),
+          window.closesAt()
+        );
+        continue;
+      }
+
+      LOGGER.info(
+        "Flushing {} update(s) of '{}', coalesced {} build(s){}",
+        window.updates().size(),
+        entry.getKey(),
+        window.digests().size(),
+        priority ? " (priority)" : ""
+      );
+      ready.addAll(window.updates().values());
+      iterator.remove();
+    }
+
+    return ready;
+  }
+
+  /**
+   * @param now the current time
+   * @return true if a held update should be flushed by now
+   */
+  public synchronized boolean hasDueFlush(Instant now) {
+    return windows.values().stream().anyMatch(it -> !it.closesAt().isAfter(now));
+  }
+
+  /**
+   * @return when the next window closes, if any is open
+   */
+  public synchronized Optional<Instant> nextFlush() {
+    return windows.values().stream().map(Window::closesAt).min(Instant::compareTo);
+  }
+
+  private Duration windowFor(LighthouseContainerUpdate update) {
+    String label = update.labels().get(WINDOW_LABEL);
+    if (label == null) {
+      return defaultWindow;
+    }
+    try {
+      return DurationParser.parse(label);
+    } catch (IllegalArgumentException e) {
+      LOGGER.warn("Container '{}' has an invalid '{}' label ('{}')", update.names(), WINDOW_LABEL, label);
+      return defaultWindow;
+    }
+  }
+
+  private static boolean isPriority(LighthouseContainerUpdate update) {
+    return "high".equalsIgnoreCase(update.labels().get(PRIORITY_LABEL));
+  }
+
+  /**
+   * An open coalescing window.
+   *
+   * @param closesAt when the window closes
+   * @param updates the held updates by container
+   * @param digests all remote digests seen in the window
+   */
+  private record Window(Instant closesAt, Map<String, LighthouseContainerUpdate> updates, Set<String> digests) {
+
+    Window(Instant closesAt) {
+      this(closesAt, new LinkedHashMap<>(), new HashSet<>());
+    }
+  }
+}
@@ -0,0 +1,61 @@
+package de.ialistannen.lighthouse.util;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Formats durations for humans.
+ */
+public class DurationFormatter {
+
+  /**
+   * Formats a duration like {@code "2 days, 3 hours, 4 minutes"}. Zero parts are omitted.
+   *
+   * @param duration the duration to format
+   * @return the formatted duration
+   */
+  public static String formatHuman(Duration duration) {
+    List<String> parts = new ArrayList<>();
+    if (duration.toDaysPart() > 0) {
+      parts.add(duration.toDaysPart() + " days");
+    }
+    if (duration.toHoursPart() > 0) {
+      parts.add(duration.toHoursPart() + " hours");
+    }
+    if (duration.toMinutesPart() > 0) {
+      parts.add(duration.toMinutesPart() + " minutes");
+    }
+    if (duration.toSecondsPart() > 0) {
+      parts.add(duration.toSecondsPart() + " seconds");
+    }
+    if (parts.isEmpty()) {
+      return "0 seconds";
+    }
+
+    return String.join(", ", parts);
+  }
+
+  /**
+   * Formats a duration compactly with its two largest units, like {@code "2d 3h"} or {@code "4m 10s"}.
+   *
+   * @param duration the duration to format
+   * @return the formatted duration
+   */
+  public static String formatShort(Duration duration) {
+    long[] values = {duration.toDays(), duration.toHoursPart(), duration.toMinutesPart(), duration.toSecondsPart()};
+    String[] units = {"d", "h", "m", "s"};
+
+    List<String> parts = new ArrayList<>();
+    for (int i = 0; i < values.length && parts.size() < 2; i++) {
+      if (values[i] > 0 || !parts.isEmpty()) {
+        parts.add(values[i] + units[i]);
+      }
+    }
+    if (parts.isEmpty()) {
+      return "0s";
+    }
+
+    return String.join(" ", parts);
+  }
+}
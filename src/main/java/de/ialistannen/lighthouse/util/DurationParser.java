@@ -0,0 +1,58 @@
+package de.ialistannen.lighthouse.util;
+
+import java.time.Duration;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Parses human-friendly durations like {@code "90s"}, {@code "1h30m"} or {@code "7d"}.
+ */
+public class DurationParser {
+
+  private static final Pattern FULL_PATTERN = Pattern.compile("(\\d+(ms|d|h|m|s))+");
+  private static final Pattern PART_PATTERN = Pattern.compile("(\\d+)(ms|d|h|m|s)");
+
+  /**
+   * Parses a duration. Accepts a sequence of {@code <number><unit>} parts (units: {@code d}, {@code h}, {@code m},
+   * {@code s}, {@code ms}) or an ISO-8601 duration ({@code PT1H}).
+   *
+   * @param input the input string
+   * @return the parsed duration
+   * @throws IllegalArgumentException if the input is no valid duration
+   */
+  public static Duration parse(String input) {
+    String normalized = input.strip().toLowerCase(Locale.ROOT);
+
+    if (normalized.startsWith("p")) {
+      try {
+        return Duration.parse(input.strip());
+      } catch (DateTimeParseException e) {
+        throw new IllegalArgumentException("Invalid ISO-8601 duration: '" + input + "'", e);
+      }
+    }
+    if (normalized.equals("0")) {
+      return Duration.ZERO;
+    }
+    if (!FULL_PATTERN.matcher(normalized).matches()) {
+      throw new IllegalArgumentException("Invalid duration: '" + input + "'. Expected something like '1h30m'");
+    }
+
+    Duration result = Duration.ZERO;
+    Matcher matcher = PART_PATTERN.matcher(normalized);
+    while (matcher.find()) {
+      long amount = Long.parseLong(matcher.group(1));
+      result = result.plus(switch (matcher.group(2)) {
+        case "d" -> Duration.ofDays(amount);
+        case "h" -> Duration.ofHours(amount);
+        case "m" -> Duration.ofMinutes(amount);
+        case "s" -> Duration.ofSeconds(amount);
+        case "ms" -> Duration.ofMillis(amount);
+        default -> throw new IllegalArgumentException("Unknown unit in '" + input + "'");
+      });
+    }
+
+    return result;
+  }
+}
@@ -0,0 +1,61 @@
+package de.ialistannen.lighthouse.util;
+
+import java.time.LocalTime;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeParseException;
+
+/**
+ * A daily time window, e.g. {@code 01:00-06:00}. Windows may wrap around midnight ({@code 22:00-04:00}).
+ *
+ * @param start the start of the window (inclusive)
+ * @param end the end of the window (exclusive)
+ */
+public record TimeWindow(LocalTime start, LocalTime end) {
+
+  /**
+   * Parses a window of the form {@code HH:MM-HH:MM}.
+   *
+   * @param input the input
+   * @return the parsed window
+   * @throws IllegalArgumentException if the input is no valid window
+   */
+  public static TimeWindow parse(String input) {
+    String[] parts = input.strip().split("-");
+    if (parts.length != 2) {
+      throw new IllegalArgumentException("Invalid time window: '" + input + "'. Expected something like '01:00-06:00'");
+    }
+    try {
+      return new TimeWindow(LocalTime.parse(parts[0].strip()), LocalTime.parse(parts[1].strip()));
+    } catch (DateTimeParseException e) {
+      throw new IllegalArgumentException("Invalid time window: '" + input + "'", e);
+    }
+  }
+
+  /**
+   * @param time the time to check
+   * @return true if the time lies within the window
+   */
+  public boolean contains(LocalTime time) {
+    if (start.isBefore(end)) {
+      return !time.isBefore(start) && time.isBefore(end);
+    }
+    return !time.isBefore(start) || time.isBefore(end);
+  }
+
+  /**
+   * @param now the current time
+   * @return the next time the window opens, {@code now} if it is currently open
+   */
+  public ZonedDateTime nextOpening(ZonedDateTime now) {
+    if (contains(now.toLocalTime())) {
+      return now;
+    }
+    ZonedDateTime today = now.with(start);
+    return today.isAfter(now) ? today : today.plusDays(1);
+  }
+
+  @Override
+  public String toString() {
+    return start + "-" + end;
+  }
+}
@@ -0,0 +1,55 @@
+package de.ialistannen.lighthouse.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+class InstrumentedDockerHttpClientTest {
+
+  @Test
+  void keepsTopLevelEndpoints() {
+    assertEquals("GET /_ping", InstrumentedDockerHttpClient.command("GET", "/_ping"));
+    assertEquals("GET /version", InstrumentedDockerHttpClient.command("GET", "/v1.41/version"));
+    assertEquals("GET /", InstrumentedDockerHttpClient.command("GET", ""));
+  }
+
+  @Test
+  void keepsCollectionOperations() {
+    assertEquals("GET /containers/json", InstrumentedDockerHttpClient.command("GET", "/v1.41/containers/json?all=1"));
+    assertEquals("POST /images/create", InstrumentedDockerHttpClient.command("POST", "/images/create?fromImage=nginx"));
+  }
+
+  @Test
+  void replacesIdsBeforeOperations() {
+    assertEquals(
+      "GET /containers/{id}/json",
+      InstrumentedDockerHttpClient.command("GET", "/v1.41/containers/abc123/json")
+    );
+    assertEquals(
+      "POST /containers/{id}/start",
+      InstrumentedDockerHttpClient.command("POST", "/containers/abc123/start")
+    );
+    assertEquals("DELETE /containers/{id}", InstrumentedDockerHttpClient.command("DELETE", "/containers/abc123"));
+  }
+
+  @Test
+  void replacesImageNamesWithSlashes() {
+    assertEquals(
+      "GET /images/{id}/json",
+      InstrumentedDockerHttpClient.command("GET", "/images/ghcr.io/owner/app:latest/json")
+    );
+    assertEquals(
+      "POST /images/{id}/tag",
+      InstrumentedDockerHttpClient.command("POST", "/images/library/nginx/tag?repo=nginx&tag=old")
+    );
+  }
+
+  @Test
+  void doesNotTreatLastImageNameSegmentAsOperation() {
+    assertEquals("DELETE /images/{id}", InstrumentedDockerHttpClient.command("DELETE", "/v1.41/images/library/nginx"));
+    assertEquals(
+      "DELETE /images/{id}",
+      InstrumentedDockerHttpClient.command("DELETE", "/images/lighthouse-staging/web:abc?force=1")
+    );
+  }
+}
@@ -0,0 +1,66 @@
+package de.ialistannen.lighthouse.notifier;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import de.ialistannen.lighthouse.metrics.MetricsRegistry;
+import de.ialistannen.lighthouse.model.LighthouseContainerUpdate;
+import de.ialistannen.lighthouse.model.LighthouseTagUpdate;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class CompositeNotifierTest {
+
+  private static final Duration TIMEOUT = Duration.ofMillis(300);
+
+  @Test
+  void slowBackendDoesNotFailTheNotification() {
+    MetricsRegistry metrics = new MetricsRegistry();
+    CompositeNotifier notifier = new CompositeNotifier(metrics)
+      .addBackend("fast", new SleepingNotifier(Duration.ZERO), TIMEOUT)
+      .addBackend("slow", new SleepingNotifier(Duration.ofSeconds(2)), TIMEOUT);
+
+    notifier.notify(List.of());
+
+    assertTrue(notifier.lastResults().get("fast").successful());
+    assertFalse(notifier.lastResults().get("slow").successful());
+    assertTrue(metrics.scrape().contains("lighthouse_notifier_backend_last_delivery_success{backend=\"slow\"} 0"));
+  }
+
+  @Test
+  void backendsAreAwaitedConcurrently() {
+    CompositeNotifier notifier = new CompositeNotifier(new MetricsRegistry());
+    for (int i = 0; i < 4; i++) {
+      notifier.addBackend("slow-" + i, new SleepingNotifier(Duration.ofSeconds(2)), TIMEOUT);
+    }
+
+    Instant start = Instant.now();
+    assertThrows(RuntimeException.class, () -> notifier.notify(List.of()));
+
+    // Awaiting them one after another would take four timeouts
+    assertTrue(Duration.between(start, Instant.now()).compareTo(TIMEOUT.multipliedBy(2)) < 0);
+  }
+
+  private record SleepingNotifier(Duration delay) implements Notifier {
+
+    @Override
+    public void notify(List<LighthouseContainerUpdate> updates) {
+      try {
+        Thread.sleep(delay);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    @Override
+    public void notifyTags(List<LighthouseTagUpdate> tagUpdates) {
+    }
+
+    @Override
+    public void notify(Throwable e) {
+    }
+  }
+}
@@ -0,0 +1,105 @@
+package de.ialistannen.lighthouse.notifier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import de.ialistannen.lighthouse.model.LighthouseContainerUpdate;
+import de.ialistannen.lighthouse.model.LighthouseTagUpdate;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class ErrorAggregatorTest {
+
+  private List<Throwable> sent;
+  private ErrorAggregator errors;
+
+  @BeforeEach
+  void setUp() {
+    sent = new ArrayList<>();
+    errors = new ErrorAggregator(new RecordingNotifier(sent));
+  }
+
+  @Test
+  void errorsOutsideCycleAreSentImmediately() {
+    errors.notify(new IOException("boom"));
+
+    assertEquals(1, sent.size());
+    assertTrue(sent.getFirst().getMessage().contains("boom"));
+  }
+
+  @Test
+  void errorsInCycleAreSummarized() {
+    errors.beginCycle();
+    errors.record(new IOException("timeout after 1000 ms"), "ghcr.io");
+    errors.record(new IOException("timeout after 2000 ms"), "ghcr.io");
+    errors.record(new IOException("denied"), "quay.io");
+    assertEquals(0, sent.size());
+    errors.endCycle();
+
+    assertEquals(1, sent.size());
+    String message = sent.getFirst().getMessage();
+    assertTrue(message.startsWith("2 error(s)"), message);
+    assertTrue(message.contains("[2x]"), message);
+    // The real message is shown, not the normalized fingerprint
+    assertTrue(message.contains("timeout after 1000 ms"), message);
+  }
+
+  @Test
+  void repeatedErrorsAreSuppressed() {
+    failIn("ghcr.io");
+    failIn("ghcr.io");
+    failIn("ghcr.io");
+
+    assertEquals(1, sent.size());
+  }
+
+  @Test
+  void errorsAreResolvedWhenTheirRegistryWasChecked() {
+    failIn("ghcr.io");
+
+    errors.beginCycle();
+    errors.markChecked("ghcr.io");
+    errors.endCycle();
+
+    failIn("ghcr.io");
+    assertEquals(2, sent.size());
+  }
+
+  @Test
+  void errorsAreNotResolvedByCyclesNotCheckingTheirRegistry() {
+    failIn("ghcr.io");
+
+    errors.beginCycle();
+    errors.markChecked("quay.io");
+    errors.endCycle();
+
+    failIn("ghcr.io");
+    assertEquals(1, sent.size());
+  }
+
+  private void failIn(String registry) {
+    errors.beginCycle();
+    errors.markChecked(registry);
+    errors.record(new IOException("unreachable"), registry);
+    errors.endCycle();
+  }
+
+  private record RecordingNotifier(List<Throwable> sent) implements Notifier {
+
+    @Override
+    public void notify(List<LighthouseContainerUpdate> updates) {
+    }
+
+    @Override
+    public void notifyTags(List<LighthouseTagUpdate> tagUpdates) {
+    }
+
+    @Override
+    public void notify(Throwable e) {
+      sent.add(e);
+    }
+  }
+}
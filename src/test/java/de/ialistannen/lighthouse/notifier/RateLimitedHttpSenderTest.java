@@ -0,0 +1,91 @@
+package de.ialistannen.lighthouse.notifier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class RateLimitedHttpSenderTest {
+
+  private HttpServer server;
+  private Deque<Integer> statuses;
+  private AtomicInteger requests;
+  private String retryAfter;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    statuses = new ArrayDeque<>();
+    requests = new AtomicInteger();
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    server.createContext("/", exchange -> {
+      try (exchange) {
+        requests.incrementAndGet();
+        int status = statuses.isEmpty() ? 204 : statuses.poll();
+        if (retryAfter != null) {
+          exchange.getResponseHeaders().set("Retry-After", retryAfter);
+        }
+        exchange.sendResponseHeaders(status, -1);
+      }
+    });
+    server.start();
+  }
+
+  @AfterEach
+  void tearDown() {
+    server.stop(0);
+  }
+
+  @Test
+  void retriesServerErrors() throws Exception {
+    statuses.addAll(List.of(503));
+
+    assertEquals(204, newSender().send(request()).statusCode());
+    assertEquals(2, requests.get());
+  }
+
+  @Test
+  void doesNotRetryClientErrors() {
+    statuses.addAll(List.of(400, 204));
+
+    assertThrows(IOException.class, () -> newSender().send(request()));
+    assertEquals(1, requests.get());
+  }
+
+  @Test
+  void givesUpInsteadOfWaitingPastSendTime() {
+    statuses.addAll(List.of(429, 204));
+    // Far beyond the time a cycle waits for its notifications
+    retryAfter = "1500";
+
+    Instant start = Instant.now();
+    assertThrows(IOException.class, () -> newSender().send(request()));
+
+    assertEquals(1, requests.get());
+    assertTrue(Duration.between(start, Instant.now()).compareTo(Duration.ofSeconds(10)) < 0);
+  }
+
+  private RateLimitedHttpSender newSender() {
+    return new RateLimitedHttpSender(HttpClient.newHttpClient());
+  }
+
+  private HttpRequest request() {
+    URI uri = URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/");
+    return HttpRequest.newBuilder(uri).POST(HttpRequest.BodyPublishers.ofString("{}")).build();
+  }
+}
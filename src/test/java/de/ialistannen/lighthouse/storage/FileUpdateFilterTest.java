@@ -0,0 +1,80 @@
+package de.ialistannen.lighthouse.storage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import de.ialistannen.lighthouse.model.ImageIdentifier;
+import de.ialistannen.lighthouse.model.LighthouseContainerUpdate;
+import de.ialistannen.lighthouse.model.LighthouseImageUpdate;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class FileUpdateFilterTest {
+
+  @TempDir
+  Path tempDir;
+
+  @Test
+  void remembersCommittedUpdatesAcrossRestarts() throws Exception {
+    LighthouseContainerUpdate update = update("web", "sha256:1");
+
+    FileUpdateFilter filter = newFilter();
+    assertEquals(List.of(update), filter.filter(List.of(update)));
+    filter.commit();
+
+    assertEquals(List.of(), newFilter().filter(List.of(update)));
+  }
+
+  @Test
+  void keepsFirstEntryAppendedAfterTornLine() throws Exception {
+    LighthouseContainerUpdate before = update("web", "sha256:1");
+    LighthouseContainerUpdate after = update("db", "sha256:2");
+
+    FileUpdateFilter filter = newFilter();
+    filter.filter(List.of(before));
+    filter.commit();
+    // A crash in the middle of an append
+    Files.writeString(
+      journalPath(),
+      "{\"knownUpdate\":{\"remoteManifest\":\"sha256:",
+      StandardCharsets.UTF_8,
+      StandardOpenOption.APPEND
+    );
+
+    FileUpdateFilter restarted = newFilter();
+    assertEquals(List.of(after), restarted.filter(List.of(before, after)));
+    restarted.commit();
+
+    assertEquals(List.of(), newFilter().filter(List.of(before, after)));
+  }
+
+  private FileUpdateFilter newFilter() {
+    return new FileUpdateFilter(tempDir.resolve("known-images.json"), Duration.ofDays(30), _ -> true);
+  }
+
+  private Path journalPath() {
+    return tempDir.resolve("known-images.json.journal");
+  }
+
+  private static LighthouseContainerUpdate update(String name, String digest) {
+    return new LighthouseContainerUpdate(
+      List.of(name),
+      new LighthouseImageUpdate(
+        "sha256:local-" + name,
+        List.of("nginx:stable"),
+        digest,
+        new ImageIdentifier("nginx", "stable"),
+        Optional.empty()
+      ),
+      false,
+      Map.of()
+    );
+  }
+}
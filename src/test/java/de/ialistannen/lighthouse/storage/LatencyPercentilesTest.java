@@ -0,0 +1,62 @@
+package de.ialistannen.lighthouse.storage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+
+class LatencyPercentilesTest {
+
+  @Test
+  void isEmptyWithoutDelays() {
+    assertTrue(LatencyPercentiles.of(List.of()).isEmpty());
+  }
+
+  @Test
+  void singleDelayIsEveryPercentile() {
+    Duration delay = Duration.ofMinutes(3);
+
+    assertEquals(
+      Optional.of(new LatencyPercentiles(1, delay, delay, delay, delay)),
+      LatencyPercentiles.of(List.of(delay))
+    );
+  }
+
+  @Test
+  void usesNearestRankOfUnsortedDelays() {
+    List<Duration> delays = new ArrayList<>(
+      IntStream.rangeClosed(1, 100).mapToObj(Duration::ofMinutes).toList()
+    );
+    Collections.shuffle(delays, new Random(42));
+
+    assertEquals(
+      Optional.of(new LatencyPercentiles(
+        100,
+        Duration.ofMinutes(50),
+        Duration.ofMinutes(90),
+        Duration.ofMinutes(99),
+        Duration.ofMinutes(100)
+      )),
+      LatencyPercentiles.of(delays)
+    );
+  }
+
+  @Test
+  void roundsRanksUp() {
+    List<Duration> delays = IntStream.rangeClosed(1, 10).mapToObj(Duration::ofSeconds).toList();
+
+    LatencyPercentiles percentiles = LatencyPercentiles.of(delays).orElseThrow();
+
+    assertEquals(Duration.ofSeconds(5), percentiles.p50());
+    assertEquals(Duration.ofSeconds(9), percentiles.p90());
+    // The 99th percentile of ten samples is the largest one
+    assertEquals(Duration.ofSeconds(10), percentiles.p99());
+  }
+}
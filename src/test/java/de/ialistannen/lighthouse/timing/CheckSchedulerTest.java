@@ -0,0 +1,111 @@
+package de.ialistannen.lighthouse.timing;
+
+import static java.time.ZoneOffset.UTC;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.dockerjava.api.model.Container;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+
+class CheckSchedulerTest {
+
+  private static final Instant START = Instant.parse("2024-01-01T00:00:00Z");
+  // Far away, so only per-container intervals matter
+  private static final Schedule FALLBACK = _ -> START.plus(Duration.ofDays(365));
+
+  @Test
+  void labelledContainerIsCheckedInItsInterval() {
+    CheckScheduler scheduler = new CheckScheduler(FALLBACK, IntervalProvider.none());
+    List<Container> containers = List.of(container("a", Map.of(CheckScheduler.CHECK_INTERVAL_LABEL, "1h")));
+
+    assertEquals(Set.of("a"), scheduler.takeDue(containers, START, true));
+    assertEquals(START.plus(Duration.ofHours(1)), scheduler.nextExecution(START.atZone(UTC)));
+
+    assertEquals(Set.of(), scheduler.takeDue(containers, START.plus(Duration.ofMinutes(59)), false));
+    assertEquals(Set.of("a"), scheduler.takeDue(containers, START.plus(Duration.ofMinutes(60)), false));
+  }
+
+  @Test
+  void containersWithoutIntervalFollowTheFallback() {
+    CheckScheduler scheduler = new CheckScheduler(FALLBACK, IntervalProvider.none());
+    List<Container> containers = List.of(
+      container("a", Map.of(CheckScheduler.CHECK_INTERVAL_LABEL, "1h")),
+      container("b", Map.of())
+    );
+
+    assertEquals(Set.of("a", "b"), scheduler.takeDue(containers, START, true));
+    assertEquals(Set.of("a"), scheduler.takeDue(containers, START.plus(Duration.ofHours(1)), false));
+  }
+
+  @Test
+  void invalidAndTooShortLabelsFallBack() {
+    CheckScheduler scheduler = new CheckScheduler(FALLBACK, IntervalProvider.none());
+    List<Container> containers = List.of(
+      container("a", Map.of(CheckScheduler.CHECK_INTERVAL_LABEL, "10s")),
+      container("b", Map.of(CheckScheduler.CHECK_INTERVAL_LABEL, "soon"))
+    );
+
+    scheduler.takeDue(containers, START, true);
+    assertEquals(Set.of(), scheduler.takeDue(containers, START.plus(Duration.ofHours(1)), false));
+  }
+
+  @Test
+  void driftingIntervalDoesNotPostponeTheCheck() {
+    // Grows by a minute on every call, like an estimate based on how long an image has been stable
+    Map<String, Duration> intervals = new HashMap<>(Map.of("a", Duration.ofHours(1)));
+    IntervalProvider drifting = container -> Optional.of(
+      intervals.merge(container.getId(), Duration.ofMinutes(1), Duration::plus)
+    );
+    CheckScheduler scheduler = new CheckScheduler(FALLBACK, drifting);
+    List<Container> containers = List.of(container("a", Map.of()));
+
+    scheduler.takeDue(containers, START, true);
+    Instant dueAt = scheduler.nextExecution(START.atZone(UTC));
+
+    // Other wakeups in between must not move the check
+    for (int minute = 10; minute < 60; minute += 10) {
+      assertEquals(Set.of(), scheduler.takeDue(containers, START.plus(Duration.ofMinutes(minute)), false));
+    }
+    assertEquals(dueAt, scheduler.nextExecution(START.atZone(UTC)));
+    assertEquals(Set.of("a"), scheduler.takeDue(containers, dueAt, false));
+  }
+
+  @Test
+  void shorterIntervalAppliesImmediately() {
+    Map<String, Duration> intervals = new HashMap<>(Map.of("a", Duration.ofHours(10)));
+    CheckScheduler scheduler = new CheckScheduler(FALLBACK, container -> Optional.of(intervals.get(container.getId())));
+    List<Container> containers = List.of(container("a", Map.of()));
+
+    scheduler.takeDue(containers, START, true);
+    intervals.put("a", Duration.ofHours(1));
+
+    assertEquals(Set.of(), scheduler.takeDue(containers, START.plus(Duration.ofMinutes(30)), false));
+    assertEquals(Set.of("a"), scheduler.takeDue(containers, START.plus(Duration.ofHours(1)), false));
+  }
+
+  @Test
+  void removedContainersAreForgotten() {
+    CheckScheduler scheduler = new CheckScheduler(FALLBACK, IntervalProvider.none());
+    List<Container> containers = List.of(container("a", Map.of(CheckScheduler.CHECK_INTERVAL_LABEL, "1h")));
+
+    scheduler.takeDue(containers, START, true);
+    scheduler.takeDue(List.of(), START.plus(Duration.ofMinutes(1)), false);
+
+    assertTrue(scheduler.nextExecution(START.atZone(UTC)).isAfter(START.plus(Duration.ofDays(1))));
+  }
+
+  private static Container container(String id, Map<String, String> labels) {
+    return new ObjectMapper().convertValue(
+      Map.of("Id", id, "Names", List.of("/" + id), "Labels", labels),
+      Container.class
+    );
+  }
+}
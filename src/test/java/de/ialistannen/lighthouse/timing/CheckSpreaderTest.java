@@ -0,0 +1,40 @@
+package de.ialistannen.lighthouse.timing;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+import org.junit.jupiter.api.Test;
+
+class CheckSpreaderTest {
+
+  @Test
+  void ordersLookupsByPhaseAndSlot() {
+    CheckSpreader spreader = new CheckSpreader(Duration.ofMinutes(10), "salt");
+    Set<String> digests = Set.of("digest:a", "digest:b", "digest:c", "digest:d");
+    Set<String> tags = Set.of("tags:a", "tags:b");
+    spreader.startCycle(Instant.now(), List.of(digests, tags));
+
+    List<String> ordered = spreader.inSlotOrder(
+      List.of("tags:b", "digest:a", "unplanned", "tags:a", "digest:b", "digest:c", "digest:d"),
+      Function.identity()
+    );
+
+    assertEquals("unplanned", ordered.getFirst());
+    assertEquals(digests, Set.copyOf(ordered.subList(1, 5)));
+    assertEquals(tags, Set.copyOf(ordered.subList(5, 7)));
+    // Stable between calls, independent of the input order
+    assertEquals(ordered, spreader.inSlotOrder(ordered.reversed(), Function.identity()));
+  }
+
+  @Test
+  void disabledSpreaderKeepsTheOrder() {
+    CheckSpreader spreader = new CheckSpreader(Duration.ZERO, "salt");
+    spreader.startCycle(Instant.now(), List.of(Set.of("a", "b")));
+
+    assertEquals(List.of("b", "a", "c"), spreader.inSlotOrder(List.of("b", "a", "c"), Function.identity()));
+  }
+}
@@ -0,0 +1,113 @@
+package de.ialistannen.lighthouse.updater;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+
+class UpdaterLogStreamTest {
+
+  @Test
+  void assemblesLinesSplitAcrossFrames() {
+    UpdaterLogStream stream = new UpdaterLogStream("test", _ -> {
+    });
+
+    stream.accept("Step 1/3 : FROM ng", false);
+    stream.accept("inx\nStep 2/3", false);
+    stream.accept(" : RUN true\n", false);
+
+    assertEquals(List.of("Step 1/3 : FROM nginx", "Step 2/3 : RUN true"), stream.tail());
+  }
+
+  @Test
+  void decodesCharactersSplitAcrossFrames() {
+    byte[] bytes = "größer\n".getBytes(StandardCharsets.UTF_8);
+    UpdaterLogStream stream = new UpdaterLogStream("test", _ -> {
+    });
+
+    // Split in the middle of the two byte 'ö'
+    stream.accept(Arrays.copyOfRange(bytes, 0, 3), false);
+    stream.accept(Arrays.copyOfRange(bytes, 3, bytes.length), false);
+
+    assertEquals(List.of("größer"), stream.tail());
+  }
+
+  @Test
+  void keepsStreamsApart() {
+    UpdaterLogStream stream = new UpdaterLogStream("test", _ -> {
+    });
+
+    stream.accept("out", false);
+    stream.accept("err\n", true);
+    stream.accept("put\n", false);
+
+    assertEquals(List.of("err", "output"), stream.tail());
+  }
+
+  @Test
+  void stripsCarriageReturnsAndSkipsBlankLines() {
+    UpdaterLogStream stream = new UpdaterLogStream("test", _ -> {
+    });
+
+    stream.accept("first\r\n\r\n  \nsecond\r\n", false);
+
+    assertEquals(List.of("first", "second"), stream.tail());
+  }
+
+  @Test
+  void flushEmitsIncompleteLastLine() {
+    UpdaterLogStream stream = new UpdaterLogStream("test", _ -> {
+    });
+
+    stream.accept("done without newline", false);
+    assertEquals(List.of(), stream.tail());
+
+    stream.flush();
+    assertEquals(List.of("done without newline"), stream.tail());
+  }
+
+  @Test
+  void tailKeepsLastLinesInOrder() {
+    UpdaterLogStream stream = new UpdaterLogStream("test", _ -> {
+    });
+    int lines = UpdaterLogStream.TAIL_LINES + 5;
+
+    for (int i = 0; i < lines; i++) {
+      stream.accept("line " + i + "\n", false);
+    }
+
+    List<String> expected = IntStream.range(lines - UpdaterLogStream.TAIL_LINES, lines)
+      .mapToObj(i -> "line " + i)
+      .toList();
+    assertEquals(expected, stream.tail());
+  }
+
+  @Test
+  void splitsOverlongLines() {
+    UpdaterLogStream stream = new UpdaterLogStream("test", _ -> {
+    });
+
+    stream.accept("x".repeat(8 * 1024 + 10) + "\n", false);
+
+    List<String> tail = stream.tail();
+    assertEquals(2, tail.size());
+    assertEquals(8 * 1024, tail.get(0).length());
+    assertEquals(10, tail.get(1).length());
+  }
+
+  @Test
+  void progressGetsFirstLineAndLatestOnFlush() {
+    List<String> progress = new ArrayList<>();
+    UpdaterLogStream stream = new UpdaterLogStream("test", progress::add);
+
+    stream.accept("first\nsecond\nthird\n", false);
+    assertEquals(List.of("first"), progress);
+
+    stream.flush();
+    assertEquals(List.of("first", "third"), progress);
+  }
+}
@@ -0,0 +1,88 @@
+package de.ialistannen.lighthouse.updates;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import de.ialistannen.lighthouse.model.ImageIdentifier;
+import de.ialistannen.lighthouse.model.LighthouseContainerUpdate;
+import de.ialistannen.lighthouse.model.LighthouseImageUpdate;
+import de.ialistannen.lighthouse.storage.UpdateHistory;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ContainerStatesTest {
+
+  private static final Instant NOW = Instant.parse("2024-05-01T12:00:00Z");
+
+  @TempDir
+  Path tempDir;
+
+  private UpdateHistory history;
+  private ContainerStates states;
+
+  @BeforeEach
+  void setUp() {
+    history = new UpdateHistory(tempDir.resolve("history.jsonl"), Duration.ofDays(90));
+    states = new ContainerStates(history);
+  }
+
+  @Test
+  void remembersUpdatesOfLastCheck() {
+    LighthouseContainerUpdate update = update("web", "sha256:new");
+
+    states.record(NOW, List.of("web", "db"), List.of(update));
+
+    assertEquals(Optional.of(update), states.update("web"));
+    assertEquals(Optional.empty(), states.update("db"));
+    assertEquals(List.of(update), states.outdated());
+  }
+
+  @Test
+  void hidesAppliedUpdates() {
+    LighthouseContainerUpdate update = update("web", "sha256:new");
+    history.recordCycle(NOW, NOW, List.of(update));
+    states.record(NOW, List.of("web"), List.of(update));
+
+    history.recordApplied(List.of(update), NOW.plusSeconds(60));
+
+    assertEquals(Optional.empty(), states.update("web"));
+    assertEquals(List.of(), states.outdated());
+    assertFalse(states.states().getFirst().update().isPresent());
+  }
+
+  @Test
+  void keepsUpdatesWithNewerDigestThanApplied() {
+    LighthouseContainerUpdate applied = update("web", "sha256:old");
+    history.recordCycle(NOW, NOW, List.of(applied));
+    history.recordApplied(List.of(applied), NOW.plusSeconds(60));
+
+    LighthouseContainerUpdate newer = update("web", "sha256:new");
+    states.record(NOW.plusSeconds(120), List.of("web"), List.of(newer));
+
+    assertEquals(Optional.of(newer), states.update("web"));
+    assertTrue(states.states().getFirst().update().isPresent());
+  }
+
+  private static LighthouseContainerUpdate update(String name, String digest) {
+    return new LighthouseContainerUpdate(
+      List.of(name),
+      new LighthouseImageUpdate(
+        "sha256:local",
+        List.of("nginx:stable"),
+        digest,
+        new ImageIdentifier("nginx", "stable"),
+        Optional.empty()
+      ),
+      false,
+      Map.of()
+    );
+  }
+}
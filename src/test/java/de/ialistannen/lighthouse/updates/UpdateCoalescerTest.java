@@ -0,0 +1,147 @@
+package de.ialistannen.lighthouse.updates;
+
+import static de.ialistannen.lighthouse.updates.UpdateCoalescer.WINDOW_LABEL;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import de.ialistannen.lighthouse.model.ImageIdentifier;
+import de.ialistannen.lighthouse.model.LighthouseContainerUpdate;
+import de.ialistannen.lighthouse.model.LighthouseImageUpdate;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+
+class UpdateCoalescerTest {
+
+  private static final Instant START = Instant.parse("2024-05-01T12:00:00Z");
+  private static final Duration WINDOW = Duration.ofMinutes(10);
+
+  @Test
+  void passesUpdatesThroughWithoutWindow() {
+    UpdateCoalescer coalescer = new UpdateCoalescer(Duration.ZERO);
+    LighthouseContainerUpdate update = update("web", "nginx", "sha256:1", Map.of());
+
+    assertEquals(List.of(update), coalescer.coalesce(List.of(update), Set.of("web")::contains, START));
+    assertEquals(Optional.empty(), coalescer.nextFlush());
+  }
+
+  @Test
+  void holdsUpdatesUntilWindowCloses() {
+    UpdateCoalescer coalescer = new UpdateCoalescer(WINDOW);
+    LighthouseContainerUpdate update = update("web", "nginx", "sha256:1", Map.of());
+
+    assertEquals(List.of(), coalescer.coalesce(List.of(update), Set.of("web")::contains, START));
+    assertEquals(Optional.of(START.plus(WINDOW)), coalescer.nextFlush());
+    assertFalse(coalescer.hasDueFlush(START.plus(WINDOW).minusSeconds(1)));
+    assertTrue(coalescer.hasDueFlush(START.plus(WINDOW)));
+
+    assertEquals(List.of(update), coalescer.coalesce(List.of(update), Set.of("web")::contains, START.plus(WINDOW)));
+    assertEquals(Optional.empty(), coalescer.nextFlush());
+  }
+
+  @Test
+  void keepsOnlyLatestBuildOfWindow() {
+    UpdateCoalescer coalescer = new UpdateCoalescer(WINDOW);
+    LighthouseContainerUpdate first = update("web", "nginx", "sha256:1", Map.of());
+    LighthouseContainerUpdate second = update("web", "nginx", "sha256:2", Map.of());
+
+    coalescer.coalesce(List.of(first), Set.of("web")::contains, START);
+    coalescer.coalesce(List.of(second), Set.of("web")::contains, START.plusSeconds(60));
+
+    // The window is not extended by later builds
+    assertEquals(List.of(second), coalescer.coalesce(List.of(second), Set.of("web")::contains, START.plus(WINDOW)));
+  }
+
+  @Test
+  void flushesHeldUpdateWhileHoldingNewOneInSameCycle() {
+    UpdateCoalescer coalescer = new UpdateCoalescer(WINDOW);
+    LighthouseContainerUpdate held = update("web", "nginx", "sha256:1", Map.of());
+    LighthouseContainerUpdate fresh = update("db", "postgres", "sha256:2", Map.of());
+
+    coalescer.coalesce(List.of(held), Set.of("web")::contains, START);
+
+    // Only "db" is checked this cycle, "web" keeps its held update and its window flushes
+    List<LighthouseContainerUpdate> ready = coalescer.coalesce(
+      List.of(fresh),
+      Set.of("db")::contains,
+      START.plus(WINDOW)
+    );
+
+    assertEquals(List.of(held), ready);
+    assertEquals(Optional.of(START.plus(WINDOW).plus(WINDOW)), coalescer.nextFlush());
+  }
+
+  @Test
+  void dropsHeldUpdateOfCheckedContainerWithoutUpdate() {
+    UpdateCoalescer coalescer = new UpdateCoalescer(WINDOW);
+    LighthouseContainerUpdate update = update("web", "nginx", "sha256:1", Map.of());
+
+    coalescer.coalesce(List.of(update), Set.of("web")::contains, START);
+
+    // Checked again without an update, so it was applied in the meantime
+    assertEquals(List.of(), coalescer.coalesce(List.of(), Set.of("web")::contains, START.plus(WINDOW)));
+    assertEquals(Optional.empty(), coalescer.nextFlush());
+  }
+
+  @Test
+  void flushesImmediatelyForPriorityContainers() {
+    UpdateCoalescer coalescer = new UpdateCoalescer(WINDOW);
+    LighthouseContainerUpdate normal = update("web", "nginx", "sha256:1", Map.of());
+    LighthouseContainerUpdate priority = update(
+      "proxy",
+      "nginx",
+      "sha256:1",
+      Map.of(UpdateCoalescer.PRIORITY_LABEL, "high")
+    );
+
+    coalescer.coalesce(List.of(normal), Set.of("web")::contains, START);
+    List<LighthouseContainerUpdate> ready = coalescer.coalesce(
+      List.of(priority),
+      Set.of("proxy")::contains,
+      START.plusSeconds(60)
+    );
+
+    assertEquals(List.of(normal, priority), ready);
+  }
+
+  @Test
+  void usesWindowLabel() {
+    UpdateCoalescer coalescer = new UpdateCoalescer(WINDOW);
+    LighthouseContainerUpdate immediate = update("web", "nginx", "sha256:1", Map.of(WINDOW_LABEL, "0s"));
+    LighthouseContainerUpdate longer = update("db", "postgres", "sha256:2", Map.of(WINDOW_LABEL, "1h"));
+
+    List<LighthouseContainerUpdate> ready = coalescer.coalesce(
+      List.of(immediate, longer),
+      Set.of("web", "db")::contains,
+      START
+    );
+
+    assertEquals(List.of(immediate), ready);
+    assertEquals(Optional.of(START.plus(Duration.ofHours(1))), coalescer.nextFlush());
+  }
+
+  private static LighthouseContainerUpdate update(
+    String name,
+    String image,
+    String digest,
+    Map<String, String> labels
+  ) {
+    return new LighthouseContainerUpdate(
+      List.of(name),
+      new LighthouseImageUpdate(
+        "sha256:local-" + name,
+        List.of(image + ":latest"),
+        digest,
+        new ImageIdentifier(image, "latest"),
+        Optional.empty()
+      ),
+      false,
+      labels
+    );
+  }
+}
@@ -0,0 +1,55 @@
+package de.ialistannen.lighthouse.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.Duration;
+import org.junit.jupiter.api.Test;
+
+class DurationParserTest {
+
+  @Test
+  void parsesSingleUnits() {
+    assertEquals(Duration.ofDays(7), DurationParser.parse("7d"));
+    assertEquals(Duration.ofHours(2), DurationParser.parse("2h"));
+    assertEquals(Duration.ofMinutes(15), DurationParser.parse("15m"));
+    assertEquals(Duration.ofSeconds(90), DurationParser.parse("90s"));
+  }
+
+  @Test
+  void parsesMillisecondsAsMilliseconds() {
+    assertEquals(Duration.ofMillis(500), DurationParser.parse("500ms"));
+    assertEquals(Duration.ofMillis(100), DurationParser.parse("100ms"));
+  }
+
+  @Test
+  void parsesCombinedUnits() {
+    assertEquals(Duration.ofMinutes(90), DurationParser.parse("1h30m"));
+    assertEquals(Duration.ofSeconds(61).plusMillis(500), DurationParser.parse("1m1s500ms"));
+    assertEquals(Duration.ofMinutes(5).plusMillis(10), DurationParser.parse("5m10ms"));
+  }
+
+  @Test
+  void ignoresCaseAndSurroundingWhitespace() {
+    assertEquals(Duration.ofHours(1), DurationParser.parse(" 1H "));
+  }
+
+  @Test
+  void parsesZero() {
+    assertEquals(Duration.ZERO, DurationParser.parse("0"));
+  }
+
+  @Test
+  void parsesIso8601() {
+    assertEquals(Duration.ofHours(1).plusMinutes(30), DurationParser.parse("PT1H30M"));
+  }
+
+  @Test
+  void rejectsInvalidInput() {
+    assertThrows(IllegalArgumentException.class, () -> DurationParser.parse(""));
+    assertThrows(IllegalArgumentException.class, () -> DurationParser.parse("10"));
+    assertThrows(IllegalArgumentException.class, () -> DurationParser.parse("10x"));
+    assertThrows(IllegalArgumentException.class, () -> DurationParser.parse("h10"));
+    assertThrows(IllegalArgumentException.class, () -> DurationParser.parse("PTfoo"));
+  }
+}
@@ -0,0 +1,71 @@
+package de.ialistannen.lighthouse.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import org.junit.jupiter.api.Test;
+
+class TimeWindowTest {
+
+  @Test
+  void parsesWindow() {
+    assertEquals(new TimeWindow(LocalTime.of(1, 0), LocalTime.of(6, 30)), TimeWindow.parse(" 01:00 - 06:30 "));
+  }
+
+  @Test
+  void rejectsInvalidWindows() {
+    assertThrows(IllegalArgumentException.class, () -> TimeWindow.parse("01:00"));
+    assertThrows(IllegalArgumentException.class, () -> TimeWindow.parse("01:00-06:00-07:00"));
+    assertThrows(IllegalArgumentException.class, () -> TimeWindow.parse("1am-6am"));
+  }
+
+  @Test
+  void containsStartButNotEnd() {
+    TimeWindow window = TimeWindow.parse("01:00-06:00");
+
+    assertTrue(window.contains(LocalTime.of(1, 0)));
+    assertTrue(window.contains(LocalTime.of(5, 59)));
+    assertFalse(window.contains(LocalTime.of(6, 0)));
+    assertFalse(window.contains(LocalTime.of(0, 59)));
+  }
+
+  @Test
+  void wrapsAroundMidnight() {
+    TimeWindow window = TimeWindow.parse("22:00-04:00");
+
+    assertTrue(window.contains(LocalTime.of(23, 0)));
+    assertTrue(window.contains(LocalTime.of(0, 0)));
+    assertTrue(window.contains(LocalTime.of(3, 59)));
+    assertFalse(window.contains(LocalTime.of(4, 0)));
+    assertFalse(window.contains(LocalTime.of(12, 0)));
+  }
+
+  @Test
+  void nextOpeningIsNowWhileOpen() {
+    ZonedDateTime now = ZonedDateTime.of(2024, 5, 1, 2, 0, 0, 0, ZoneOffset.UTC);
+
+    assertEquals(now, TimeWindow.parse("01:00-06:00").nextOpening(now));
+  }
+
+  @Test
+  void nextOpeningIsTodayBeforeTheWindow() {
+    ZonedDateTime now = ZonedDateTime.of(2024, 5, 1, 0, 30, 0, 0, ZoneOffset.UTC);
+
+    assertEquals(now.withHour(1).withMinute(0), TimeWindow.parse("01:00-06:00").nextOpening(now));
+  }
+
+  @Test
+  void nextOpeningIsTomorrowAfterTheWindow() {
+    ZonedDateTime now = ZonedDateTime.of(2024, 5, 1, 7, 0, 0, 0, ZoneOffset.UTC);
+
+    assertEquals(
+      ZonedDateTime.of(2024, 5, 2, 1, 0, 0, 0, ZoneOffset.UTC),
+      TimeWindow.parse("01:00-06:00").nextOpening(now)
+    );
+  }
+}